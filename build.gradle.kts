@@ -1,10 +1,18 @@
 plugins {
     id("java")
+    id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.hlianole.jetbrains.internship"
 version = "1.0.0"
 
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(22)
+    }
+}
+
 repositories {
     mavenCentral()
 }
@@ -14,6 +22,38 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter")
 }
 
+application {
+    mainClass = "com.hlianole.jetbrains.internship.Main"
+}
+
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+jmh {
+    jmhVersion = "1.37"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    findProperty("jmhThreads")?.let { threads = it.toString().toInt() }
+    findProperty("jmhIncludes")?.let { includes = listOf(it.toString()) }
+}
+
+tasks.register<JavaExec>("jmhScaling") {
+    group = "benchmark"
+    description = "Runs the benchmarks with 1, 2, 4, ... up to the number of available processors threads"
+    classpath = files(tasks.named("jmhJar"))
+    mainClass = "com.hlianole.jetbrains.internship.benchmark.ScalingRunner"
+    args = listOfNotNull(findProperty("jmhIncludes")?.toString())
+}
+
+tasks.register<JavaExec>("jmhFootprint") {
+    group = "benchmark"
+    description = "Prints the bytes per entry of every tree implementation"
+    classpath = files(tasks.named("jmhJar"))
+    mainClass = "com.hlianole.jetbrains.internship.benchmark.FootprintReport"
+    maxHeapSize = "4g"
+    args = listOfNotNull(findProperty("entries")?.toString())
+}
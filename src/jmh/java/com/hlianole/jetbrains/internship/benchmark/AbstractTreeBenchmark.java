@@ -0,0 +1,91 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.Tree;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+
+/**
+ * The common state of the tree benchmarks: a tree filled with random keys
+ * and a precomputed sequence of the keys to be accessed
+ * */
+@State(Scope.Benchmark)
+public abstract class AbstractTreeBenchmark {
+
+    private static final long SEED = 42;
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+
+    @Param({"AVL", "OFF_HEAP", "COMPACT", "PERSISTENT", "SHARDED", "SKIP_LIST"})
+    public TreeFactory implementation;
+
+    @Param({"1000000"})
+    public int treeSize;
+
+    @Param({"16", "64", "200"})
+    public int keySize;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    protected Tree tree;
+    protected byte[][] keys;
+    protected byte[] value;
+
+    private int[] sequence;
+
+    @Setup(Level.Trial)
+    public void setUpTree() {
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        keys = new byte[treeSize][];
+        for (int i = 0; i < treeSize; i++) {
+            keys[i] = new byte[keySize];
+            random.nextBytes(keys[i]);
+        }
+        value = new byte[valueSize];
+        random.nextBytes(value);
+
+        tree = implementation.create();
+        for (byte[] key : keys) {
+            tree.put(key, value);
+        }
+
+        sequence = distribution.sequence(treeSize, SEQUENCE_LENGTH, SEED);
+    }
+
+    /**
+     * @return the next key to be accessed by the thread
+     * */
+    protected byte[] nextKey(Cursor cursor) {
+        return keys[sequence[cursor.next() & (SEQUENCE_LENGTH - 1)]];
+    }
+
+    /**
+     * The position of the thread in the sequence of the keys. Threads start at random positions,
+     * so they do not access the same keys at the same time
+     * */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private final SplittableRandom random = new SplittableRandom();
+        private int position = random.nextInt();
+
+        int next() {
+            return position++;
+        }
+
+        /**
+         * @return a random number in [0, 100)
+         * */
+        int nextPercent() {
+            return random.nextInt(100);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.BloomFilterTree;
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lookups of absent and present keys in a {@link ConcurrentAVLTree}
+ * with and without a {@link BloomFilterTree} in front of it
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BloomFilterBenchmark {
+
+    private static final long SEED = 42;
+    private static final int TREE_SIZE = 1 << 20;
+
+    @Param({"false", "true"})
+    public boolean filtered;
+
+    private Tree tree;
+    private byte[][] keys;
+    private byte[][] absentKeys;
+
+    @Setup(Level.Trial)
+    public void setUpTree() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        keys = new byte[TREE_SIZE][];
+        absentKeys = new byte[TREE_SIZE][];
+        for (int i = 0; i < TREE_SIZE; i++) {
+            keys[i] = new byte[16];
+            random.nextBytes(keys[i]);
+            absentKeys[i] = new byte[16];
+            random.nextBytes(absentKeys[i]);
+        }
+        byte[] value = new byte[16];
+
+        ConcurrentAVLTree inner = new ConcurrentAVLTree();
+        for (byte[] key : keys) {
+            inner.put(key, value);
+        }
+        tree = filtered ? new BloomFilterTree(inner, TREE_SIZE, 0.01) : inner;
+    }
+
+    @Benchmark
+    public boolean getAbsent(AbstractTreeBenchmark.Cursor cursor) {
+        return tree.get(absentKeys[cursor.next() & (TREE_SIZE - 1)]).isPresent();
+    }
+
+    @Benchmark
+    public boolean getPresent(AbstractTreeBenchmark.Cursor cursor) {
+        return tree.get(keys[cursor.next() & (TREE_SIZE - 1)]).isPresent();
+    }
+}
@@ -0,0 +1,87 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.Tree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading of a whole batch into an empty tree: the loop of puts, {@link Tree#putAll(Iterable)}
+ * and {@link ConcurrentAVLTree#fromSorted(Iterable)}
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkLoadBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"100000", "1000000"})
+    public int batchSize;
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    private List<Entry> shuffled;
+    private List<Entry> sorted;
+
+    @Setup(Level.Trial)
+    public void setUpBatch() {
+        Random random = new Random(SEED);
+        byte[] value = new byte[16];
+        random.nextBytes(value);
+
+        shuffled = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            byte[] key = new byte[keySize];
+            random.nextBytes(key);
+            shuffled.add(new Entry(key, value));
+        }
+
+        List<Entry> copy = new ArrayList<>(shuffled);
+        copy.sort((first, second) -> Arrays.compareUnsigned(first.key(), second.key()));
+        sorted = new ArrayList<>(copy.size());
+        for (Entry entry : copy) {
+            if (sorted.isEmpty() || !Arrays.equals(sorted.get(sorted.size() - 1).key(), entry.key())) {
+                sorted.add(entry);
+            }
+        }
+        Collections.shuffle(shuffled, random);
+    }
+
+    @Benchmark
+    public Tree putLoop() {
+        Tree tree = new ConcurrentAVLTree();
+        for (Entry entry : shuffled) {
+            tree.put(entry.key(), entry.value());
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public Tree putAll() {
+        Tree tree = new ConcurrentAVLTree();
+        tree.putAll(shuffled);
+        return tree;
+    }
+
+    @Benchmark
+    public Tree fromSorted() {
+        return ConcurrentAVLTree.fromSorted(sorted);
+    }
+}
@@ -0,0 +1,53 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.CompactAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the flat-combined puts of {@link CompactAVLTree}, blocking and asynchronous.
+ * Run with {@code jmhScaling} to see how they behave under contention
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CombiningPutBenchmark {
+
+    @Param({"16"})
+    public int keySize;
+
+    private CompactAVLTree tree;
+    private byte[] value;
+
+    @Setup(Level.Iteration)
+    public void setUpTree() {
+        tree = new CompactAVLTree();
+        value = new byte[16];
+    }
+
+    @Benchmark
+    public void put() {
+        tree.put(randomKey(), value);
+    }
+
+    @Benchmark
+    public void putAsync() {
+        tree.putAsync(randomKey(), value).join();
+    }
+
+    private byte[] randomKey() {
+        byte[] key = new byte[keySize];
+        ThreadLocalRandom.current().nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,74 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.DurableTree;
+import com.hlianole.jetbrains.internship.tree.Tree;
+import com.hlianole.jetbrains.internship.tree.wal.WriteAheadLog.SyncPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks puts of random keys into a {@link DurableTree} with every {@link SyncPolicy}
+ * against the in-memory {@link ConcurrentAVLTree}. Run with several threads
+ * ({@code -PjmhThreads}) to see the forces shared by the group commit
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DurablePutBenchmark {
+
+    @Param({"MEMORY", "NONE", "PERIODIC", "EVERY_WRITE"})
+    public String durability;
+
+    @Param({"16"})
+    public int keySize;
+
+    @Param({"100"})
+    public int valueSize;
+
+    private Path directory;
+    private Tree tree;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        value = new byte[valueSize];
+        if (durability.equals("MEMORY")) {
+            tree = new ConcurrentAVLTree();
+            return;
+        }
+        directory = Files.createTempDirectory("durable-put");
+        tree = DurableTree.open(directory.resolve("tree.log"), SyncPolicy.valueOf(durability), Duration.ofMillis(10));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (tree instanceof DurableTree durable) {
+            durable.close();
+            Files.deleteIfExists(directory.resolve("tree.log"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        byte[] key = new byte[keySize];
+        ThreadLocalRandom.current().nextBytes(key);
+        tree.put(key, value);
+    }
+}
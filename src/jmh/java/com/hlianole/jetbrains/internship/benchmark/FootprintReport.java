@@ -0,0 +1,63 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.OffHeapAVLTree;
+import com.hlianole.jetbrains.internship.tree.Tree;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.SplittableRandom;
+
+/**
+ * Prints how many bytes an entry costs in every {@link TreeFactory} implementation: the retained heap
+ * after a full GC plus the off-heap memory of an {@link OffHeapAVLTree}, divided by the number of entries.
+ * The keys and values are random, every entry gets its own arrays, as if it came from the network
+ * */
+public class FootprintReport {
+
+    private static final int[][] SIZES = {{16, 16}, {64, 16}, {16, 1024}, {200, 1024}};
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        System.out.printf("%-10s %8s %10s %16s %14s%n", "tree", "key", "value", "bytes/entry", "overhead");
+        for (int[] size : SIZES) {
+            for (TreeFactory factory : TreeFactory.values()) {
+                double bytes = measure(factory, entries, size[0], size[1]);
+                System.out.printf("%-10s %8d %10d %16.1f %14.1f%n",
+                        factory, size[0], size[1], bytes, bytes - size[0] - size[1]);
+            }
+        }
+    }
+
+    private static double measure(TreeFactory factory, int entries, int keySize, int valueSize) {
+        long before = usedHeap();
+
+        Tree tree = factory.create();
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < entries; i++) {
+            byte[] key = new byte[keySize];
+            byte[] value = new byte[valueSize];
+            random.nextBytes(key);
+            random.nextBytes(value);
+            tree.put(key, value);
+        }
+
+        long used = usedHeap() - before;
+        if (tree instanceof OffHeapAVLTree offHeap) {
+            used += offHeap.offHeapBytes();
+            offHeap.close();
+        }
+        double bytes = (double) used / entries;
+        tree = null;
+        return bytes;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,74 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.CachedTree;
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lookups of a {@link ConcurrentAVLTree} with and without a {@link CachedTree} in front of it.
+ * The hit rate of the cache is printed after every trial
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HotKeyCacheBenchmark {
+
+    private static final long SEED = 42;
+    private static final int TREE_SIZE = 1 << 20;
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+
+    /**
+     * The capacity of the cache, 0 for no cache
+     * */
+    @Param({"0", "10000"})
+    public int cacheSize;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private Tree tree;
+    private byte[][] keys;
+    private int[] sequence;
+
+    @Setup(Level.Trial)
+    public void setUpTree() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        keys = new byte[TREE_SIZE][];
+        for (int i = 0; i < TREE_SIZE; i++) {
+            keys[i] = new byte[16];
+            random.nextBytes(keys[i]);
+        }
+        byte[] value = new byte[16];
+
+        tree = cacheSize == 0 ? new ConcurrentAVLTree() : new CachedTree(new ConcurrentAVLTree(), cacheSize);
+        for (byte[] key : keys) {
+            tree.put(key, value);
+        }
+        sequence = distribution.sequence(TREE_SIZE, SEQUENCE_LENGTH, SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void printHitRate() {
+        if (tree instanceof CachedTree cached) {
+            System.out.printf("%nhit rate %.3f%n", cached.stats().hitRate());
+        }
+    }
+
+    @Benchmark
+    public boolean get(AbstractTreeBenchmark.Cursor cursor) {
+        return tree.get(keys[sequence[cursor.next() & (SEQUENCE_LENGTH - 1)]]).isPresent();
+    }
+}
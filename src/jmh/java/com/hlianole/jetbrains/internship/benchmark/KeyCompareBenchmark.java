@@ -0,0 +1,86 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.data.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link Key#compare(Key)} against the byte-at-a-time loop it replaced
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyCompareBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    /**
+     * SHORT: 16 random bytes. LONG: 200 random bytes. SHARED_PREFIX: 200 bytes differing only in the last 8 bytes
+     * */
+    @Param({"SHORT", "LONG", "SHARED_PREFIX"})
+    public String shape;
+
+    private Key[] first;
+    private Key[] second;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        SplittableRandom random = new SplittableRandom(42);
+        int length = shape.equals("SHORT") ? 16 : 200;
+        byte[] sharedPrefix = new byte[length - 8];
+        random.nextBytes(sharedPrefix);
+
+        first = new Key[PAIRS];
+        second = new Key[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            first[i] = new Key(randomKey(random, length, sharedPrefix));
+            second[i] = new Key(randomKey(random, length, sharedPrefix));
+        }
+    }
+
+    @Benchmark
+    public int compare() {
+        int i = position++ & (PAIRS - 1);
+        return first[i].compare(second[i]);
+    }
+
+    @Benchmark
+    public int byteLoop() {
+        int i = position++ & (PAIRS - 1);
+        return byteLoop(first[i].getBytes(), second[i].getBytes());
+    }
+
+    /**
+     * The previous implementation of {@link Key#compare(Key)}
+     * */
+    private static int byteLoop(byte[] me, byte[] oth) {
+        int len = Math.min(me.length, oth.length);
+        for (int i = 0; i < len; i++) {
+            int cmp = (oth[i] & 0xff) - (me[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return oth.length - me.length;
+    }
+
+    private byte[] randomKey(SplittableRandom random, int length, byte[] sharedPrefix) {
+        byte[] key = new byte[length];
+        random.nextBytes(key);
+        if (shape.equals("SHARED_PREFIX")) {
+            System.arraycopy(sharedPrefix, 0, key, 0, sharedPrefix.length);
+        }
+        return key;
+    }
+}
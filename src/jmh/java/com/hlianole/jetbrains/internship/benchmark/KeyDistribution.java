@@ -0,0 +1,57 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.load.KeyChooser;
+import com.hlianole.jetbrains.internship.load.ZipfianGenerator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distributions of the accessed keys. A distribution generates a sequence of key indexes in advance,
+ * so the cost of sampling does not take part in the measurement
+ * */
+public enum KeyDistribution {
+
+    /**
+     * Every key is accessed with the same probability
+     * */
+    UNIFORM {
+        @Override
+        public int[] sequence(int items, int length, long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = random.nextInt(items);
+            }
+            return sequence;
+        }
+    },
+
+    /**
+     * A few keys are accessed much more often than the others (YCSB scrambled Zipfian, theta = 0.99).
+     * The hot keys are scattered over the whole key space instead of being the least keys
+     * */
+    ZIPFIAN {
+        @Override
+        public int[] sequence(int items, int length, long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            ZipfianGenerator generator = new ZipfianGenerator(items);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = scramble(generator.next(random.nextDouble()), items);
+            }
+            return sequence;
+        }
+    };
+
+    /**
+     * @return a sequence of key indexes in [0, items)
+     * */
+    public abstract int[] sequence(int items, int length, long seed);
+
+    /**
+     * Maps the rank of the key to its index, see {@link KeyChooser#scramble(long)}
+     * */
+    private static int scramble(long rank, int items) {
+        return (int) Math.floorMod(KeyChooser.scramble(rank), (long) items);
+    }
+}
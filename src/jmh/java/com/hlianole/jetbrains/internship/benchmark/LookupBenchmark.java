@@ -0,0 +1,101 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lookups by keys that are a part of a larger buffer, as they arrive from the network.
+ * Run with {@code -prof gc}: the {@code containsKey} and {@code getInto} lookups of the tree
+ * must show no allocation per operation, unlike {@code get} wrapping the value into an {@link Optional}
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark extends AbstractTreeBenchmark {
+
+    /**
+     * The offset of the key in the frame, as if it followed a message header
+     * */
+    private static final int KEY_OFFSET = 7;
+
+    @Benchmark
+    public Optional<byte[]> get(Cursor cursor) {
+        return tree.get(nextKey(cursor));
+    }
+
+    @Benchmark
+    public Optional<byte[]> getSlice(Cursor cursor, Frame frame) {
+        return tree.get(frame.array, KEY_OFFSET, frame.fill(nextKey(cursor)));
+    }
+
+    @Benchmark
+    public boolean containsKeySlice(Cursor cursor, Frame frame) {
+        return tree.containsKey(frame.array, KEY_OFFSET, frame.fill(nextKey(cursor)));
+    }
+
+    @Benchmark
+    public boolean containsKeyDirect(Cursor cursor, Frame frame) {
+        return tree.containsKey(frame.fillDirect(nextKey(cursor)));
+    }
+
+    @Benchmark
+    public int getInto(Cursor cursor, Frame frame) {
+        frame.out.clear();
+        return tree.getInto(nextKey(cursor), frame.out);
+    }
+
+    @Benchmark
+    public int getIntoFromDirect(Cursor cursor, Frame frame) {
+        frame.out.clear();
+        return tree.getInto(frame.fillDirect(nextKey(cursor)), frame.out);
+    }
+
+    /**
+     * The per-thread receive buffers: a heap frame, a direct frame and a direct buffer for the values
+     * */
+    @State(Scope.Thread)
+    public static class Frame {
+
+        private static final int FRAME_SIZE = 4096;
+
+        byte[] array;
+        ByteBuffer direct;
+        ByteBuffer out;
+
+        @Setup
+        public void setUp() {
+            array = new byte[FRAME_SIZE];
+            direct = ByteBuffer.allocateDirect(FRAME_SIZE);
+            out = ByteBuffer.allocateDirect(FRAME_SIZE);
+        }
+
+        /**
+         * Copies the key into the heap frame at {@link LookupBenchmark#KEY_OFFSET}
+         *
+         * @return the length of the key
+         * */
+        int fill(byte[] key) {
+            System.arraycopy(key, 0, array, KEY_OFFSET, key.length);
+            return key.length;
+        }
+
+        /**
+         * Copies the key into the direct frame at {@link LookupBenchmark#KEY_OFFSET}
+         *
+         * @return the direct frame limited to the key
+         * */
+        ByteBuffer fillDirect(byte[] key) {
+            direct.clear().put(KEY_OFFSET, key).position(KEY_OFFSET).limit(KEY_OFFSET + key.length);
+            return direct;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cost of the {@link com.hlianole.jetbrains.internship.tree.metrics.TreeMetrics}
+ * of {@link ConcurrentAVLTree}. Without the metrics and without a flight recording, the instrumented
+ * operations are expected to run as fast as before the instrumentation. Add {@code -prof jfr}
+ * to see the cost of a running recording
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsOverheadBenchmark {
+
+    private static final long SEED = 42;
+    private static final int TREE_SIZE = 1 << 20;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private ConcurrentAVLTree tree;
+    private byte[][] keys;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUpTree() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        keys = new byte[TREE_SIZE][];
+        for (int i = 0; i < TREE_SIZE; i++) {
+            keys[i] = new byte[16];
+            random.nextBytes(keys[i]);
+        }
+        value = new byte[16];
+
+        tree = metrics ? ConcurrentAVLTree.withMetrics() : new ConcurrentAVLTree();
+        for (byte[] key : keys) {
+            tree.put(key, value);
+        }
+    }
+
+    @Benchmark
+    public boolean get(AbstractTreeBenchmark.Cursor cursor) {
+        return tree.containsKey(keys[cursor.next() & (TREE_SIZE - 1)]);
+    }
+
+    @Benchmark
+    public void put(AbstractTreeBenchmark.Cursor cursor) {
+        tree.put(keys[cursor.next() & (TREE_SIZE - 1)], value);
+    }
+}
@@ -0,0 +1,35 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a mix of reads and writes. A write replaces the key structurally (remove followed by put),
+ * so readers run concurrently with unlinking and rotations, not only with value updates
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MixedBenchmark extends AbstractTreeBenchmark {
+
+    @Param({"0", "10", "50"})
+    public int writePercent;
+
+    @Benchmark
+    public Object mixed(Cursor cursor) {
+        byte[] key = nextKey(cursor);
+        if (cursor.nextPercent() < writePercent) {
+            tree.remove(key);
+            tree.put(key, value);
+            return key;
+        }
+        return tree.get(key);
+    }
+}
@@ -0,0 +1,40 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the benchmarks with 1, 2, 4, ... threads up to the number of available processors,
+ * writing the JSON results for every thread count to build/results/jmh
+ * */
+public class ScalingRunner {
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = args.length > 0 ? args[0] : MixedBenchmark.class.getSimpleName();
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        Path results = Files.createDirectories(Path.of("build", "results", "jmh"));
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(results.resolve("scaling-" + threads + ".json").toString())
+                    .build();
+            new Runner(options).run();
+
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+}
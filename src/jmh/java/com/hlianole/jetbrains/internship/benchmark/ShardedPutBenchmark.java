@@ -0,0 +1,47 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.ShardedTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the write throughput of {@link ShardedTree} depending on the number of shards.
+ * Run with {@code jmhScaling} to see how it scales with the number of threads
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShardedPutBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int shards;
+
+    @Param({"16"})
+    public int keySize;
+
+    private ShardedTree tree;
+    private byte[] value;
+
+    @Setup(Level.Iteration)
+    public void setUpTree() {
+        tree = new ShardedTree(shards);
+        value = new byte[16];
+    }
+
+    @Benchmark
+    public void put() {
+        byte[] key = new byte[keySize];
+        ThreadLocalRandom.current().nextBytes(key);
+        tree.put(key, value);
+    }
+}
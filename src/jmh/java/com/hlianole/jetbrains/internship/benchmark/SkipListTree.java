@@ -0,0 +1,131 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.Tree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * The baseline for the benchmarks: {@link ConcurrentSkipListMap} ordering the keys
+ * with the same unsigned lexicographic comparison as the tree
+ * */
+public class SkipListTree implements Tree {
+
+    private final ConcurrentSkipListMap<byte[], byte[]> map = new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) {
+        return Optional.ofNullable(map.get(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) {
+        map.put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) {
+        return Optional.ofNullable(map.remove(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) {
+        byte[] value = map.get(key);
+        return value != null && Arrays.equals(value, expectedValue) && map.remove(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction) {
+        return Optional.ofNullable(map.compute(key, remappingFunction));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) {
+        return Optional.ofNullable(map.floorKey(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) {
+        return Optional.ofNullable(map.ceilingKey(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) {
+        return Optional.ofNullable(map.higherKey(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) {
+        return Optional.ofNullable(map.lowerKey(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        Map.Entry<byte[], byte[]> first = map.firstEntry();
+        return first == null ? Optional.empty() : Optional.of(first.getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        Map.Entry<byte[], byte[]> last = map.lastEntry();
+        return last == null ? Optional.empty() : Optional.of(last.getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        NavigableMap<byte[], byte[]> range = map;
+        if (fromKey != null) {
+            range = range.tailMap(fromKey, true);
+        }
+        if (toKey != null) {
+            range = range.headMap(toKey, false);
+        }
+        return range.entrySet().stream()
+                .map(entry -> new Entry(entry.getKey(), entry.getValue()))
+                .iterator();
+    }
+}
@@ -0,0 +1,63 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a full-tree aggregation, a checksum of all the values, over a sequential and a parallel stream
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"1000000"})
+    public int treeSize;
+
+    private Tree tree;
+
+    @Setup(Level.Trial)
+    public void setUpTree() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        tree = new ConcurrentAVLTree();
+        for (int i = 0; i < treeSize; i++) {
+            byte[] key = new byte[16];
+            random.nextBytes(key);
+            byte[] value = new byte[16];
+            random.nextBytes(value);
+            tree.put(key, value);
+        }
+    }
+
+    @Benchmark
+    public long sequential() {
+        return tree.stream().mapToLong(entry -> checksum(entry.value())).sum();
+    }
+
+    @Benchmark
+    public long parallel() {
+        return tree.parallelStream().mapToLong(entry -> checksum(entry.value())).sum();
+    }
+
+    private static long checksum(byte[] value) {
+        long checksum = 0;
+        for (byte b : value) {
+            checksum = 31 * checksum + b;
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,54 @@
+package com.hlianole.jetbrains.internship.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the single operations of the tree. The size of the tree stays the same:
+ * puts update existing keys, and every removed key is put back by the same operation
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TreeBenchmark extends AbstractTreeBenchmark {
+
+    @Benchmark
+    public Optional<byte[]> get(Cursor cursor) {
+        return tree.get(nextKey(cursor));
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public void put(Cursor cursor) {
+        tree.put(nextKey(cursor), value);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public Optional<byte[]> removeAndPut(Cursor cursor) {
+        byte[] key = nextKey(cursor);
+        Optional<byte[]> removed = tree.remove(key);
+        tree.put(key, value);
+        return removed;
+    }
+
+    @Benchmark
+    public void getAndPut(Cursor cursor) {
+        byte[] key = nextKey(cursor);
+        if (tree.get(key).isPresent()) {
+            tree.put(key, value);
+        }
+    }
+
+    @Benchmark
+    public Optional<byte[]> compute(Cursor cursor) {
+        return tree.compute(nextKey(cursor), (key, current) -> current == null ? null : value);
+    }
+}
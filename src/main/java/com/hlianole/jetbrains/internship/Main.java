@@ -1,7 +1,23 @@
 package com.hlianole.jetbrains.internship;
 
+import com.hlianole.jetbrains.internship.load.LoadDriver;
+import com.hlianole.jetbrains.internship.load.LoadOptions;
+
+/**
+ * Runs the {@link LoadDriver} with the options of the command line, see {@link LoadOptions#USAGE}
+ * */
 public class Main {
-    public static void main(String[] args) {
-        System.out.println("Hello World");
+    public static void main(String[] args) throws InterruptedException {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        LoadDriver.run(options).print(System.out);
     }
 }
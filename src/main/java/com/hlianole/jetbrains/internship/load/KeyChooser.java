@@ -0,0 +1,71 @@
+package com.hlianole.jetbrains.internship.load;
+
+import java.util.SplittableRandom;
+
+/**
+ * Chooses the indexes of the existing keys the operations access. Safe to share between threads,
+ * every thread passes its own random generator
+ * */
+public final class KeyChooser {
+
+    public enum Distribution {
+
+        /**
+         * Every key is accessed with the same probability
+         * */
+        UNIFORM,
+
+        /**
+         * A few keys are accessed much more often than the others (YCSB scrambled Zipfian, theta = 0.99).
+         * The hot keys are scattered over the whole key space
+         * */
+        ZIPFIAN,
+
+        /**
+         * The most recently inserted keys are the most popular, with Zipfian popularity by age (YCSB latest)
+         * */
+        LATEST
+    }
+
+    private final Distribution distribution;
+
+    /**
+     * Sized for the loaded keys, {@code null} for the uniform distribution
+     * */
+    private final ZipfianGenerator zipfian;
+
+    /**
+     * @param records the number of loaded keys, the popularity ranks are drawn from
+     * */
+    public KeyChooser(Distribution distribution, long records) {
+        if (records <= 0) {
+            throw new IllegalArgumentException("Records must be positive");
+        }
+        this.distribution = distribution;
+        this.zipfian = distribution == Distribution.UNIFORM ? null : new ZipfianGenerator(records);
+    }
+
+    /**
+     * @param keys the number of keys inserted so far, the keys are indexed in the insertion order
+     * @return the index of the key to access, in [0, keys)
+     * */
+    public long next(SplittableRandom random, long keys) {
+        return switch (distribution) {
+            case UNIFORM -> random.nextLong(keys);
+            case ZIPFIAN -> Math.floorMod(scramble(zipfian.next(random.nextDouble())), keys);
+            case LATEST -> Math.max(0, keys - 1 - zipfian.next(random.nextDouble()));
+        };
+    }
+
+    /**
+     * Maps the rank of the key to its index with the FNV-1a hash
+     * */
+    public static long scramble(long rank) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (rank >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
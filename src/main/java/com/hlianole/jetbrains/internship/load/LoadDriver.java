@@ -0,0 +1,245 @@
+package com.hlianole.jetbrains.internship.load;
+
+import com.hlianole.jetbrains.internship.load.Workload.Operation;
+import com.hlianole.jetbrains.internship.tree.Tree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a YCSB-style workload against a {@link Tree} and measures the latencies of its operations.
+ * <p>
+ * The tree is loaded with {@link LoadOptions#records()} keys first, then the threads run the operations of the
+ * workload for the warmup and the measured duration. Key {@code i} is {@code "user"} followed by 19 digits
+ * of the hash of {@code i}, so consecutive keys are scattered over the tree, and new keys get the next indexes.
+ * <p>
+ * With a target rate (open loop), every thread issues its operations on a fixed schedule, and the latency of an
+ * operation is measured from the time it was scheduled for, not from the time it started. An operation delayed
+ * by a slow one before it counts the delay, so a stall shows up in the percentiles for every operation it held up
+ * (no coordinated omission). The time from the start of the operation is reported separately as the service time.
+ * Without a target rate (closed loop), the two are the same
+ * */
+public final class LoadDriver {
+
+    private static final long SEED = 42;
+    private static final int MAX_SCAN_LENGTH = 100;
+    private static final String KEY_PREFIX = "user";
+    private static final int KEY_DIGITS = 19;
+
+    /**
+     * Waits shorter than this spin instead of parking, parking is not precise enough for them
+     * */
+    private static final long SPIN_NANOS = 20_000;
+
+    private LoadDriver() {
+    }
+
+    /**
+     * Creates the tree, loads it, runs the workload and closes the tree
+     *
+     * @return the throughput and the latencies of the measured duration
+     * */
+    public static LoadReport run(LoadOptions options) throws InterruptedException {
+        Tree tree = options.tree().create();
+        try {
+            return run(tree, options);
+        } finally {
+            if (tree instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Cannot close the tree", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the given empty tree and runs the workload against it
+     *
+     * @return the throughput and the latencies of the measured duration
+     * */
+    public static LoadReport run(Tree tree, LoadOptions options) throws InterruptedException {
+        byte[] value = new byte[options.valueSize()];
+        new SplittableRandom(SEED).nextBytes(value);
+
+        long loadStart = System.nanoTime();
+        for (long i = 0; i < options.records(); i++) {
+            tree.put(key(i), value);
+        }
+        long loadNanos = System.nanoTime() - loadStart;
+
+        KeyChooser chooser = new KeyChooser(options.distribution(), options.records());
+        AtomicLong keys = new AtomicLong(options.records());
+        long start = System.nanoTime();
+        long measureStart = start + options.warmup().toNanos();
+        long end = measureStart + options.duration().toNanos();
+
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        Thread.Builder builder = options.virtualThreads()
+                ? Thread.ofVirtual().name("load-", 0)
+                : Thread.ofPlatform().name("load-", 0);
+        for (int i = 0; i < options.threads(); i++) {
+            Worker worker = new Worker(tree, options, chooser, keys, value, i, start, measureStart, end);
+            workers.add(worker);
+            threads.add(builder.start(worker));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<Operation, LogLinearHistogram> responseTimes = histograms();
+        Map<Operation, LogLinearHistogram> serviceTimes = histograms();
+        long lastCompletion = end;
+        for (Worker worker : workers) {
+            if (worker.failure != null) {
+                throw new IllegalStateException("The workload failed", worker.failure);
+            }
+            for (Operation operation : Operation.values()) {
+                responseTimes.get(operation).add(worker.responseTimes.get(operation));
+                serviceTimes.get(operation).add(worker.serviceTimes.get(operation));
+            }
+            lastCompletion = Math.max(lastCompletion, worker.lastCompletion);
+        }
+
+        return new LoadReport(options, loadNanos, lastCompletion - measureStart, responseTimes, serviceTimes);
+    }
+
+    /**
+     * @return the key with the given index
+     * */
+    public static byte[] key(long index) {
+        byte[] key = new byte[KEY_PREFIX.length() + KEY_DIGITS];
+        for (int i = 0; i < KEY_PREFIX.length(); i++) {
+            key[i] = (byte) KEY_PREFIX.charAt(i);
+        }
+        long digits = KeyChooser.scramble(index) & Long.MAX_VALUE;
+        for (int i = key.length - 1; i >= KEY_PREFIX.length(); i--) {
+            key[i] = (byte) ('0' + digits % 10);
+            digits /= 10;
+        }
+        return key;
+    }
+
+    private static Map<Operation, LogLinearHistogram> histograms() {
+        Map<Operation, LogLinearHistogram> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new LogLinearHistogram());
+        }
+        return histograms;
+    }
+
+    /**
+     * Issues the operations of one thread and records their latencies into its own histograms
+     * */
+    private static final class Worker implements Runnable {
+
+        private final Tree tree;
+        private final Workload workload;
+        private final KeyChooser chooser;
+        private final AtomicLong keys;
+        private final byte[] value;
+        private final SplittableRandom random;
+
+        /**
+         * The time between the scheduled operations of the thread, 0 in the closed loop
+         * */
+        private final long interval;
+        private final long firstOperation;
+        private final long measureStart;
+        private final long end;
+
+        private final Map<Operation, LogLinearHistogram> responseTimes = histograms();
+        private final Map<Operation, LogLinearHistogram> serviceTimes = histograms();
+        private long lastCompletion;
+        private Throwable failure;
+
+        Worker(Tree tree, LoadOptions options, KeyChooser chooser, AtomicLong keys, byte[] value,
+               int index, long start, long measureStart, long end) {
+            this.tree = tree;
+            this.workload = options.workload();
+            this.chooser = chooser;
+            this.keys = keys;
+            this.value = value;
+            this.random = new SplittableRandom(SEED + index);
+            this.interval = options.rate() == 0 ? 0 : Math.max(1, options.threads() * 1_000_000_000L / options.rate());
+            this.firstOperation = start + interval * index / options.threads();
+            this.measureStart = measureStart;
+            this.end = end;
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public void run() {
+            try {
+                long scheduled = firstOperation;
+                while (true) {
+                    if (interval == 0) {
+                        scheduled = System.nanoTime();
+                    } else {
+                        awaitTime(scheduled);
+                    }
+                    if (scheduled >= end) {
+                        return;
+                    }
+
+                    Operation operation = workload.choose(random.nextInt(100));
+                    long begin = System.nanoTime();
+                    perform(operation);
+                    long completion = System.nanoTime();
+
+                    if (scheduled >= measureStart) {
+                        responseTimes.get(operation).record(completion - scheduled);
+                        serviceTimes.get(operation).record(completion - begin);
+                        lastCompletion = completion;
+                    }
+                    scheduled += interval;
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        private void perform(Operation operation) {
+            switch (operation) {
+                case READ -> tree.get(key(chooser.next(random, keys.get())));
+                case UPDATE -> tree.put(key(chooser.next(random, keys.get())), value);
+                case INSERT -> tree.put(key(keys.getAndIncrement()), value);
+                case SCAN -> {
+                    int length = 1 + random.nextInt(MAX_SCAN_LENGTH);
+                    Iterator<Entry> entries = tree.scan(key(chooser.next(random, keys.get())), null);
+                    for (int i = 0; i < length && entries.hasNext(); i++) {
+                        entries.next();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parks until shortly before the time, then spins. Returns at once if the thread is behind its schedule
+         * */
+        private static void awaitTime(long time) {
+            while (true) {
+                long remaining = time - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                if (remaining > SPIN_NANOS) {
+                    LockSupport.parkNanos(remaining - SPIN_NANOS);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.hlianole.jetbrains.internship.load;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * The configuration of a {@link LoadDriver} run
+ *
+ * @param records the number of keys loaded before the run
+ * @param threads the number of threads issuing the operations
+ * @param virtualThreads true to run the operations on virtual threads, false on platform threads
+ * @param rate the total target of operations per second, 0 to issue the next operation as soon as
+ *             the previous one completes (closed loop)
+ * @param warmup the time the operations run before the latencies are recorded
+ * @param duration the time the latencies are recorded
+ * @param valueSize the length of the values in bytes
+ * */
+public record LoadOptions(TreeType tree, Workload workload, KeyChooser.Distribution distribution,
+                          long records, int threads, boolean virtualThreads, long rate,
+                          Duration warmup, Duration duration, int valueSize) {
+
+    public static final String USAGE = """
+            Usage: Main [options]
+              --tree AVL|OFF_HEAP|COMPACT|PERSISTENT|SHARDED      (default AVL)
+              --workload READ_HEAVY|UPDATE_HEAVY|SCAN|INSERT_ONLY (default READ_HEAVY)
+              --distribution UNIFORM|ZIPFIAN|LATEST               (default ZIPFIAN)
+              --records <keys loaded before the run>              (default 1000000)
+              --threads <threads>                                 (default the number of processors)
+              --virtual                                           run on virtual threads
+              --rate <operations per second, 0 for closed loop>   (default 0)
+              --warmup <seconds>                                  (default 5)
+              --duration <seconds>                                (default 30)
+              --value-size <bytes>                                (default 100)""";
+
+    public LoadOptions {
+        if (records <= 0 || threads <= 0 || rate < 0 || valueSize < 0) {
+            throw new IllegalArgumentException("Records and threads must be positive, rate and value size non-negative");
+        }
+        if (warmup.isNegative() || duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Duration must be positive and warmup non-negative");
+        }
+    }
+
+    /**
+     * @return the options of the command line, the defaults for the missing ones
+     * @throws IllegalArgumentException if an option is unknown or has an invalid value
+     * */
+    public static LoadOptions parse(String[] args) throws IllegalArgumentException {
+        TreeType tree = TreeType.AVL;
+        Workload workload = Workload.READ_HEAVY;
+        KeyChooser.Distribution distribution = KeyChooser.Distribution.ZIPFIAN;
+        long records = 1_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtualThreads = false;
+        long rate = 0;
+        Duration warmup = Duration.ofSeconds(5);
+        Duration duration = Duration.ofSeconds(30);
+        int valueSize = 100;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--virtual")) {
+                virtualThreads = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + option);
+            }
+
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--tree" -> tree = TreeType.valueOf(constantName(value));
+                    case "--workload" -> workload = Workload.valueOf(constantName(value));
+                    case "--distribution" -> distribution = KeyChooser.Distribution.valueOf(constantName(value));
+                    case "--records" -> records = Long.parseLong(value);
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--rate" -> rate = Long.parseLong(value);
+                    case "--warmup" -> warmup = seconds(value);
+                    case "--duration" -> duration = seconds(value);
+                    case "--value-size" -> valueSize = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value of " + option + ": " + value, e);
+            }
+        }
+
+        return new LoadOptions(tree, workload, distribution, records, threads, virtualThreads, rate,
+                warmup, duration, valueSize);
+    }
+
+    private static String constantName(String value) {
+        return value.toUpperCase(Locale.ROOT).replace('-', '_');
+    }
+
+    private static Duration seconds(String value) {
+        return Duration.ofNanos((long) (Double.parseDouble(value) * 1e9));
+    }
+}
@@ -0,0 +1,68 @@
+package com.hlianole.jetbrains.internship.load;
+
+import com.hlianole.jetbrains.internship.load.Workload.Operation;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * The result of a {@link LoadDriver} run
+ *
+ * @param loadNanos the time the tree was loaded in
+ * @param measuredNanos the time from the start of the measurement to the completion of the last measured operation
+ * @param responseTimes the latencies from the scheduled start of the operations
+ * @param serviceTimes the latencies from the actual start of the operations
+ * */
+public record LoadReport(LoadOptions options, long loadNanos, long measuredNanos,
+                         Map<Operation, LogLinearHistogram> responseTimes,
+                         Map<Operation, LogLinearHistogram> serviceTimes) {
+
+    /**
+     * @return the number of measured operations
+     * */
+    public long operations() {
+        long operations = 0;
+        for (LogLinearHistogram histogram : responseTimes.values()) {
+            operations += histogram.count();
+        }
+        return operations;
+    }
+
+    /**
+     * @return the measured operations per second
+     * */
+    public double throughput() {
+        return measuredNanos <= 0 ? 0 : operations() * 1e9 / measuredNanos;
+    }
+
+    /**
+     * Prints the configuration, the throughput and the latency percentiles in microseconds
+     * */
+    public void print(PrintStream out) {
+        out.printf("tree %s, workload %s, distribution %s, %d %s threads, %s%n",
+                options.tree(), options.workload(), options.distribution(), options.threads(),
+                options.virtualThreads() ? "virtual" : "platform",
+                options.rate() == 0 ? "closed loop" : "target " + options.rate() + " ops/s");
+        out.printf("loaded %d records in %.1f s%n", options.records(), loadNanos / 1e9);
+        out.printf("%d operations in %.1f s: %.0f ops/s%n", operations(), measuredNanos / 1e9, throughput());
+
+        printLatencies(out, options.rate() == 0 ? "latency" : "response time", responseTimes);
+        if (options.rate() != 0) {
+            printLatencies(out, "service time", serviceTimes);
+        }
+    }
+
+    private static void printLatencies(PrintStream out, String title, Map<Operation, LogLinearHistogram> histograms) {
+        out.printf("%n%-10s %12s %10s %10s %10s %10s %10s   (%s, us)%n",
+                "operation", "count", "mean", "p50", "p99", "p99.9", "max", title);
+        for (Map.Entry<Operation, LogLinearHistogram> entry : histograms.entrySet()) {
+            LogLinearHistogram histogram = entry.getValue();
+            if (histogram.count() == 0) {
+                continue;
+            }
+            out.printf("%-10s %12d %10.1f %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), histogram.count(),
+                    histogram.mean() / 1e3, histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3,
+                    histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+        }
+    }
+}
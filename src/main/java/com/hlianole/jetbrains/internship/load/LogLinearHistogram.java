@@ -0,0 +1,103 @@
+package com.hlianole.jetbrains.internship.load;
+
+/**
+ * A histogram of durations in nanoseconds with the layout of HdrHistogram: every power of two is split into
+ * {@link LogLinearHistogram#SUB_BUCKETS} linear buckets, so a percentile is accurate within about 3% at any scale,
+ * from nanoseconds to minutes, in a fixed array of counts.
+ * <p>
+ * The histogram is not thread-safe. Every thread records into its own histogram, they are merged at the end
+ * */
+public final class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+    private long total;
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[indexOf(value)]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the durations recorded by the other histogram
+     * */
+    public void add(LogLinearHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return the number of recorded durations
+     * */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the longest recorded duration in nanoseconds
+     * */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * @return the mean of the recorded durations in nanoseconds, 0 if nothing was recorded
+     * */
+    public double mean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @param percentile the percentile in [0, 100]
+     * @return the upper bound in nanoseconds of the bucket containing the percentile, at most the maximum,
+     * 0 if nothing was recorded
+     * */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in [0, 100]");
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The values below {@code 2 * SUB_BUCKETS} have a bucket each. Above, a value with its highest bit at
+     * position {@code e} falls into the bucket of its {@code SUB_BUCKET_BITS + 1} highest bits
+     * */
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
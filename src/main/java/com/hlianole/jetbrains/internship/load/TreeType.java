@@ -0,0 +1,35 @@
+package com.hlianole.jetbrains.internship.load;
+
+import com.hlianole.jetbrains.internship.tree.CompactAVLTree;
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.OffHeapAVLTree;
+import com.hlianole.jetbrains.internship.tree.PersistentAVLTree;
+import com.hlianole.jetbrains.internship.tree.ShardedTree;
+import com.hlianole.jetbrains.internship.tree.Tree;
+
+import java.util.function.Supplier;
+
+/**
+ * The {@link Tree} implementations the {@link LoadDriver} can run against
+ * */
+public enum TreeType {
+
+    AVL(ConcurrentAVLTree::new),
+    OFF_HEAP(OffHeapAVLTree::new),
+    COMPACT(CompactAVLTree::new),
+    PERSISTENT(PersistentAVLTree::new),
+    SHARDED(ShardedTree::new);
+
+    private final Supplier<Tree> constructor;
+
+    TreeType(Supplier<Tree> constructor) {
+        this.constructor = constructor;
+    }
+
+    /**
+     * @return a new empty tree
+     * */
+    public Tree create() {
+        return constructor.get();
+    }
+}
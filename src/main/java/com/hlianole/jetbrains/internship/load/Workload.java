@@ -0,0 +1,61 @@
+package com.hlianole.jetbrains.internship.load;
+
+/**
+ * The mixes of operations run by the {@link LoadDriver}, after the core workloads of YCSB
+ * */
+public enum Workload {
+
+    /**
+     * 95% reads and 5% updates of existing keys (YCSB B)
+     * */
+    READ_HEAVY(95, 5, 0, 0),
+
+    /**
+     * 50% reads and 50% updates of existing keys (YCSB A)
+     * */
+    UPDATE_HEAVY(50, 50, 0, 0),
+
+    /**
+     * 95% short range scans and 5% inserts of new keys (YCSB E)
+     * */
+    SCAN(0, 0, 5, 95),
+
+    /**
+     * Only inserts of new keys
+     * */
+    INSERT_ONLY(0, 0, 100, 0);
+
+    public enum Operation {
+        READ, UPDATE, INSERT, SCAN
+    }
+
+    private final int readPercent;
+    private final int updatePercent;
+    private final int insertPercent;
+
+    Workload(int readPercent, int updatePercent, int insertPercent, int scanPercent) {
+        if (readPercent + updatePercent + insertPercent + scanPercent != 100) {
+            throw new IllegalArgumentException("Percentages must sum up to 100");
+        }
+        this.readPercent = readPercent;
+        this.updatePercent = updatePercent;
+        this.insertPercent = insertPercent;
+    }
+
+    /**
+     * @param percent a uniformly distributed number in [0, 100)
+     * @return the operation to run
+     * */
+    public Operation choose(int percent) {
+        if (percent < readPercent) {
+            return Operation.READ;
+        }
+        if (percent < readPercent + updatePercent) {
+            return Operation.UPDATE;
+        }
+        if (percent < readPercent + updatePercent + insertPercent) {
+            return Operation.INSERT;
+        }
+        return Operation.SCAN;
+    }
+}
@@ -0,0 +1,51 @@
+package com.hlianole.jetbrains.internship.load;
+
+/**
+ * Generates ranks in [0, items) following the Zipfian distribution, where rank 0 is the most popular one.
+ * The algorithm is the one used by YCSB (Gray et al., "Quickly generating billion-record synthetic databases")
+ * */
+public class ZipfianGenerator {
+
+    public static final double ZIPFIAN_CONSTANT = 0.99;
+
+    private final long items;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+
+    public ZipfianGenerator(long items) {
+        this(items, ZIPFIAN_CONSTANT);
+    }
+
+    public ZipfianGenerator(long items, double theta) {
+        this.items = items;
+        this.theta = theta;
+        this.zetaN = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+    }
+
+    /**
+     * @param uniform a uniformly distributed number in [0, 1)
+     * @return the next rank
+     * */
+    public long next(double uniform) {
+        double uz = uniform * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * uniform - eta + 1, alpha)));
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
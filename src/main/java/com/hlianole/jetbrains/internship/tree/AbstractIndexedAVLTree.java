@@ -0,0 +1,888 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.data.Key;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * A base for AVL trees addressing their nodes by {@code int} ids instead of references,
+ * so the subclasses can keep the nodes in primitive storage without an object per entry.
+ * The subclasses store the node fields and the key and value bytes, this class implements the AVL algorithms over them.
+ * <p>
+ * The keys are ordered like {@link Key}. Readers share the read lock and writers take the write lock,
+ * so the storage of the subclasses does not have to be thread-safe.
+ * <p>
+ * The puts are flat-combined: a put that finds the write lock taken is published to a queue,
+ * and the thread that gets the write lock next applies all the published puts in one pass sorted by key. Under contention the writers mostly wait
+ * for their put to be applied by another thread instead of handing the lock over one by one.
+ * The other writes apply the published puts before their own change, so no write overtakes an earlier put.
+ * */
+public abstract class AbstractIndexedAVLTree implements Tree {
+
+    /**
+     * The id of the absent node
+     * */
+    protected static final int NIL = 0;
+
+    /**
+     * The height of an AVL tree of 2^31 nodes is below 1.45 * 31
+     * */
+    private static final int MAX_HEIGHT = 64;
+
+    /**
+     * How many entries a scan reads under one acquisition of the read lock
+     * */
+    private static final int SCAN_BATCH = 256;
+
+    /**
+     * How many times a put tries to become the combiner before it blocks on the write lock.
+     * Spinning is useless on a single processor, where the combiner cannot run while another thread spins
+     * */
+    private static final int COMBINER_SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+
+    /**
+     * How many puts a combiner applies under one acquisition of the write lock
+     * */
+    private static final int COMBINER_BATCH = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The path from the root to the changed node, used by the writers under the write lock
+     * */
+    private final int[] path = new int[MAX_HEIGHT];
+
+    /**
+     * The puts waiting for a combiner, in the order they were published
+     * */
+    private final ConcurrentLinkedQueue<PendingPut> pendingPuts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a virtual thread is started to combine the puts of {@link AbstractIndexedAVLTree#putAsync(byte[], byte[])}
+     * */
+    private final AtomicBoolean combinerScheduled = new AtomicBoolean();
+
+    private int root = NIL;
+
+    protected abstract int left(int node);
+
+    protected abstract int right(int node);
+
+    protected abstract int height(int node);
+
+    protected abstract void setLeft(int node, int left);
+
+    protected abstract void setRight(int node, int right);
+
+    protected abstract void setHeight(int node, int height);
+
+    /**
+     * Compares the key of the node to a key given as a slice of an array. See {@link Key#compare(long, byte[], int, int)}
+     *
+     * @param prefix the prefix of the slice, see {@link Key#prefix(byte[], int, int)}
+     * @return less than 0 if the slice is less than the key of the node, 0 if they are equal, greater than 0 otherwise
+     * */
+    protected abstract int compareKey(int node, long prefix, byte[] key, int offset, int length);
+
+    protected abstract byte[] key(int node);
+
+    protected abstract byte[] value(int node);
+
+    /**
+     * Copies the value of the node into the buffer if it fits into the remaining space
+     *
+     * @return the length of the value
+     * */
+    protected abstract int copyValue(int node, ByteBuffer out);
+
+    protected abstract boolean valueEquals(int node, byte[] value);
+
+    /**
+     * @return the id of a new leaf node of height 1 with the key and the value
+     * */
+    protected abstract int allocate(byte[] key, byte[] value);
+
+    protected abstract void setValue(int node, byte[] value);
+
+    /**
+     * Moves the key and the value of one node to another node, freeing the old key and value of the other node.
+     * The first node is freed
+     * */
+    protected abstract void moveEntry(int from, int to);
+
+    /**
+     * Frees the node together with its key and value
+     * */
+    protected abstract void free(int node);
+
+    /**
+     * Called under the lock before every operation
+     *
+     * @throws IllegalStateException if the tree can no longer be used
+     * */
+    protected void ensureOpen() throws IllegalStateException {
+    }
+
+    /**
+     * @return the lock the writers take
+     * */
+    protected final Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int node = find(key, offset, length);
+            return node == NIL ? Optional.empty() : Optional.of(value(node));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public int getInto(byte[] key, int offset, int length, ByteBuffer out) throws IllegalArgumentException {
+        if (key == null || out == null) {
+            throw new IllegalArgumentException("Key and output buffer cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int node = find(key, offset, length);
+            return node == NIL ? -1 : copyValue(node, out);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public boolean containsKey(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return find(key, offset, length) != NIL;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        // Puts published earlier, maybe by this thread's putAsync, must be applied first, so the put joins the queue
+        if (pendingPuts.isEmpty() && lock.writeLock().tryLock()) {
+            try {
+                ensureOpen();
+                insert(key, value);
+            } finally {
+                combine();
+            }
+            return;
+        }
+
+        PendingPut put = new PendingPut(key, value);
+        pendingPuts.add(put);
+        for (int spins = 0; !put.done.isDone(); spins++) {
+            if (spins >= COMBINER_SPINS) {
+                lock.writeLock().lock();
+                combine();
+            } else if (lock.writeLock().tryLock()) {
+                combine();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        if (put.failure != null) {
+            throw put.failure;
+        }
+    }
+
+    /**
+     * Puts the key and the value without blocking the calling thread.
+     * The put is applied by the thread holding the write lock, by the calling thread if the lock is free,
+     * or by a virtual thread started to wait for the lock
+     *
+     * @return a future completed when the put is applied, or completed exceptionally if the tree can no longer be used
+     * */
+    public CompletableFuture<Void> putAsync(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        PendingPut put = new PendingPut(key, value);
+        pendingPuts.add(put);
+        if (lock.writeLock().tryLock()) {
+            combine();
+        } else {
+            scheduleCombiner();
+        }
+        return put.done;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The whole batch is inserted under one acquisition of the write lock
+     * */
+    @Override
+    public void putAll(Iterable<Entry> entries) throws IllegalArgumentException {
+        List<PendingPut> combined = lockForWrite();
+        try {
+            ensureOpen();
+            for (Entry entry : entries) {
+                if (entry.key() == null || entry.value() == null) {
+                    throw new IllegalArgumentException("Key and value cannot be null");
+                }
+                insert(entry.key(), entry.value());
+            }
+        } finally {
+            unlockAfterWrite(combined);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        List<PendingPut> combined = lockForWrite();
+        try {
+            ensureOpen();
+            return Optional.ofNullable(delete(key, null));
+        } finally {
+            unlockAfterWrite(combined);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
+
+        List<PendingPut> combined = lockForWrite();
+        try {
+            ensureOpen();
+            return delete(key, expectedValue) != null;
+        } finally {
+            unlockAfterWrite(combined);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The function is called once, under the write lock
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+
+        List<PendingPut> combined = lockForWrite();
+        try {
+            ensureOpen();
+            return Optional.ofNullable(update(key, remappingFunction));
+        } finally {
+            unlockAfterWrite(combined);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return findNearestKey(null, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return findNearestKey(null, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entries are read in batches, each under its own acquisition of the read lock.
+     * The next batch starts after the last returned key
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return new BatchIterator(fromKey, toKey);
+    }
+
+    /**
+     * Applies the published puts in ascending key order and releases the write lock.
+     * The futures are completed after the lock is released, so their callbacks can use the tree
+     * */
+    private void combine() {
+        List<PendingPut> batch;
+        try {
+            batch = applyPendingPuts(COMBINER_BATCH);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        complete(batch);
+        if (batch.size() == COMBINER_BATCH) {
+            scheduleCombiner();
+        }
+    }
+
+    /**
+     * Takes the write lock for a write other than a put. The published puts are applied first,
+     * so a write never overtakes a put published before it, for example by a putAsync of the same thread
+     *
+     * @return the applied puts, to be passed to {@link AbstractIndexedAVLTree#unlockAfterWrite(List)}
+     * */
+    private List<PendingPut> lockForWrite() {
+        lock.writeLock().lock();
+        try {
+            return applyPendingPuts(Integer.MAX_VALUE);
+        } catch (RuntimeException | Error e) {
+            lock.writeLock().unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the write lock taken by {@link AbstractIndexedAVLTree#lockForWrite()} and completes the puts it applied
+     * */
+    private void unlockAfterWrite(List<PendingPut> combined) {
+        lock.writeLock().unlock();
+        complete(combined);
+    }
+
+    /**
+     * Applies up to the limit of the published puts in ascending key order, under the write lock
+     *
+     * @return the applied puts, their futures not completed yet
+     * */
+    private List<PendingPut> applyPendingPuts(int limit) {
+        if (pendingPuts.isEmpty()) {
+            return List.of();
+        }
+
+        List<PendingPut> batch = new ArrayList<>();
+        PendingPut put;
+        while (batch.size() < limit && (put = pendingPuts.poll()) != null) {
+            batch.add(put);
+        }
+        batch.sort((a, b) -> Arrays.compareUnsigned(a.key, b.key));
+
+        try {
+            ensureOpen();
+            for (PendingPut pending : batch) {
+                try {
+                    insert(pending.key, pending.value);
+                } catch (RuntimeException e) {
+                    pending.failure = e;
+                }
+            }
+        } catch (IllegalStateException e) {
+            for (PendingPut pending : batch) {
+                pending.failure = e;
+            }
+        }
+        return batch;
+    }
+
+    private static void complete(List<PendingPut> batch) {
+        for (PendingPut pending : batch) {
+            if (pending.failure == null) {
+                pending.done.complete(null);
+            } else {
+                pending.done.completeExceptionally(pending.failure);
+            }
+        }
+    }
+
+    /**
+     * Starts a virtual thread to wait for the write lock and combine the published puts, unless one is already started.
+     * The flag is cleared before the puts are taken, so a put published after that schedules another thread
+     * */
+    private void scheduleCombiner() {
+        if (combinerScheduled.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("tree-combiner").start(() -> {
+                combinerScheduled.set(false);
+                lock.writeLock().lock();
+                combine();
+            });
+        }
+    }
+
+    private Optional<byte[]> findNearestKey(byte[] key, boolean above, boolean inclusive) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int node = findNearest(key, above, inclusive);
+            return node == NIL ? Optional.empty() : Optional.of(key(node));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the node with the key given as a slice of the array, or {@link AbstractIndexedAVLTree#NIL}
+     * */
+    private int find(byte[] key, int offset, int length) {
+        long prefix = Key.prefix(key, offset, length);
+        int node = root;
+        while (node != NIL) {
+            int comparison = compareKey(node, prefix, key, offset, length);
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? left(node) : right(node);
+        }
+        return NIL;
+    }
+
+    /**
+     * @param key the key to search for, or {@code null} to search for the first or the last node
+     * @param above true to search for the least node greater than the key, false for the greatest node less than the key
+     * @param inclusive true if the node with the key itself can be returned
+     * @return the found node or {@link AbstractIndexedAVLTree#NIL}
+     * */
+    private int findNearest(byte[] key, boolean above, boolean inclusive) {
+        long prefix = key == null ? 0 : Key.prefix(key, 0, key.length);
+        int candidate = NIL;
+        int node = root;
+        while (node != NIL) {
+            int comparison = key == null ? (above ? -1 : 1) : compareKey(node, prefix, key, 0, key.length);
+            if (comparison == 0 && inclusive) {
+                return node;
+            }
+
+            boolean goLeft = above ? comparison < 0 : comparison <= 0;
+            if (goLeft == above) {
+                candidate = node;
+            }
+            node = goLeft ? left(node) : right(node);
+        }
+        return candidate;
+    }
+
+    /**
+     * Inserts the key or updates its value, then rebalances the path from the new node to the root
+     * */
+    private void insert(byte[] key, byte[] value) {
+        long prefix = Key.prefix(key, 0, key.length);
+        int depth = 0;
+        int comparison = 0;
+        int node = root;
+        while (node != NIL) {
+            comparison = compareKey(node, prefix, key, 0, key.length);
+            if (comparison == 0) {
+                setValue(node, value);
+                return;
+            }
+            path[depth++] = node;
+            node = comparison < 0 ? left(node) : right(node);
+        }
+
+        link(depth, comparison, key, value);
+    }
+
+    /**
+     * Sets the value of the key to the result of the function in a single descent, see {@link Tree#compute(byte[], BiFunction)}
+     *
+     * @return the new value, or {@code null} if the key is absent
+     * */
+    private byte[] update(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction) {
+        long prefix = Key.prefix(key, 0, key.length);
+        int depth = 0;
+        int comparison = 0;
+        int node = root;
+        while (node != NIL) {
+            comparison = compareKey(node, prefix, key, 0, key.length);
+            if (comparison == 0) {
+                break;
+            }
+            path[depth++] = node;
+            node = comparison < 0 ? left(node) : right(node);
+        }
+
+        if (node == NIL) {
+            byte[] created = remappingFunction.apply(key, null);
+            if (created != null) {
+                link(depth, comparison, key, created);
+            }
+            return created;
+        }
+
+        byte[] current = value(node);
+        byte[] updated = remappingFunction.apply(key, current);
+        if (updated == null) {
+            unlink(node, depth);
+        } else if (updated != current) {
+            setValue(node, updated);
+        }
+        return updated;
+    }
+
+    /**
+     * Links a new leaf under the last node of the path and rebalances the path
+     *
+     * @param comparison the comparison of the key to the last node of the path
+     * */
+    private void link(int depth, int comparison, byte[] key, byte[] value) {
+        int created = allocate(key, value);
+        if (depth == 0) {
+            root = created;
+            return;
+        }
+        if (comparison < 0) {
+            setLeft(path[depth - 1], created);
+        } else {
+            setRight(path[depth - 1], created);
+        }
+        rebalancePath(depth);
+    }
+
+    /**
+     * Removes the key. A node with two children takes the key and the value of its successor,
+     * and the successor is unlinked instead
+     *
+     * @param expectedValue the value the key must be associated with, or {@code null} to remove any value
+     * @return the removed value, or {@code null} if nothing was removed
+     * */
+    private byte[] delete(byte[] key, byte[] expectedValue) {
+        long prefix = Key.prefix(key, 0, key.length);
+        int depth = 0;
+        int node = root;
+        while (node != NIL) {
+            int comparison = compareKey(node, prefix, key, 0, key.length);
+            if (comparison == 0) {
+                break;
+            }
+            path[depth++] = node;
+            node = comparison < 0 ? left(node) : right(node);
+        }
+
+        if (node == NIL) {
+            return null;
+        }
+        byte[] removed;
+        if (expectedValue == null) {
+            removed = value(node);
+        } else if (valueEquals(node, expectedValue)) {
+            removed = expectedValue;
+        } else {
+            return null;
+        }
+
+        unlink(node, depth);
+        return removed;
+    }
+
+    /**
+     * Unlinks the node found at the end of the path and rebalances the path
+     * */
+    private void unlink(int node, int depth) {
+        if (left(node) != NIL && right(node) != NIL) {
+            path[depth++] = node;
+            int successor = right(node);
+            while (left(successor) != NIL) {
+                path[depth++] = successor;
+                successor = left(successor);
+            }
+            replaceChild(path[depth - 1], successor, right(successor));
+            moveEntry(successor, node);
+        } else {
+            replaceChild(depth == 0 ? NIL : path[depth - 1], node, left(node) != NIL ? left(node) : right(node));
+            free(node);
+        }
+        rebalancePath(depth);
+    }
+
+    /**
+     * Fixes the heights and the balance of the first nodes of the path, going from the deepest one to the root
+     * */
+    private void rebalancePath(int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            int node = path[i];
+            int balanced = balance(node);
+            if (balanced != node) {
+                replaceChild(i == 0 ? NIL : path[i - 1], node, balanced);
+            }
+        }
+    }
+
+    private void replaceChild(int parent, int child, int replacement) {
+        if (parent == NIL) {
+            root = replacement;
+        } else if (left(parent) == child) {
+            setLeft(parent, replacement);
+        } else {
+            setRight(parent, replacement);
+        }
+    }
+
+    /**
+     * @return the root of the balanced subtree
+     * */
+    private int balance(int node) {
+        int balanceFactor = heightOf(left(node)) - heightOf(right(node));
+        if (balanceFactor > 1) {
+            int left = left(node);
+            if (heightOf(left(left)) < heightOf(right(left))) {
+                setLeft(node, rotateLeft(left));
+            }
+            return rotateRight(node);
+        }
+        if (balanceFactor < -1) {
+            int right = right(node);
+            if (heightOf(right(right)) < heightOf(left(right))) {
+                setRight(node, rotateRight(right));
+            }
+            return rotateLeft(node);
+        }
+
+        fixHeight(node);
+        return node;
+    }
+
+    private int rotateRight(int node) {
+        int left = left(node);
+        setLeft(node, right(left));
+        setRight(left, node);
+        fixHeight(node);
+        fixHeight(left);
+        return left;
+    }
+
+    private int rotateLeft(int node) {
+        int right = right(node);
+        setRight(node, left(right));
+        setLeft(right, node);
+        fixHeight(node);
+        fixHeight(right);
+        return right;
+    }
+
+    private void fixHeight(int node) {
+        setHeight(node, Math.max(heightOf(left(node)), heightOf(right(node))) + 1);
+    }
+
+    private int heightOf(int node) {
+        return node == NIL ? 0 : height(node);
+    }
+
+    /**
+     * Collects the entries in ascending key order, starting from the lower bound
+     *
+     * @param from the lower bound or {@code null} to start from the first key
+     * @param to the exclusive upper bound or {@code null}
+     * @return false if there are no more entries after the collected ones
+     * */
+    private boolean collect(byte[] from, boolean inclusive, byte[] to, ArrayDeque<Entry> out) {
+        int[] stack = new int[MAX_HEIGHT];
+        int size = 0;
+
+        long fromPrefix = from == null ? 0 : Key.prefix(from, 0, from.length);
+        int node = root;
+        while (node != NIL) {
+            int comparison = from == null ? -1 : compareKey(node, fromPrefix, from, 0, from.length);
+            if (comparison < 0 || (comparison == 0 && inclusive)) {
+                stack[size++] = node;
+                node = left(node);
+            } else {
+                node = right(node);
+            }
+        }
+
+        long toPrefix = to == null ? 0 : Key.prefix(to, 0, to.length);
+        while (size > 0 && out.size() < SCAN_BATCH) {
+            node = stack[--size];
+            if (to != null && compareKey(node, toPrefix, to, 0, to.length) <= 0) {
+                return false;
+            }
+
+            out.add(new Entry(key(node), value(node)));
+            for (int child = right(node); child != NIL; child = left(child)) {
+                stack[size++] = child;
+            }
+        }
+        return size > 0;
+    }
+
+    /**
+     * A put waiting for a combiner. The failure is set under the write lock and read after the future is completed
+     * */
+    private static final class PendingPut {
+
+        private final byte[] key;
+        private final byte[] value;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private RuntimeException failure;
+
+        PendingPut(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Reads the range in batches of {@link AbstractIndexedAVLTree#SCAN_BATCH} entries
+     * */
+    private class BatchIterator implements Iterator<Entry> {
+
+        private final byte[] toKey;
+        private final ArrayDeque<Entry> batch = new ArrayDeque<>();
+
+        private byte[] lowerBound;
+        private boolean lowerBoundInclusive = true;
+        private boolean exhausted;
+
+        BatchIterator(byte[] fromKey, byte[] toKey) {
+            this.lowerBound = fromKey;
+            this.toKey = toKey;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (batch.isEmpty() && !exhausted) {
+                lock.readLock().lock();
+                try {
+                    ensureOpen();
+                    exhausted = !collect(lowerBound, lowerBoundInclusive, toKey, batch);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (!batch.isEmpty()) {
+                    lowerBound = batch.peekLast().key();
+                    lowerBoundInclusive = false;
+                }
+            }
+            return !batch.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.poll();
+        }
+    }
+}
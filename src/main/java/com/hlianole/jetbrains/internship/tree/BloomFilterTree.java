@@ -0,0 +1,355 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.filter.BloomFilter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * A {@link BloomFilter} over the keys of another tree: a lookup of a key the filter has never seen returns
+ * after reading one cache line of the filter, without descending the tree. Only the false positives,
+ * a fraction of the absent keys set by the target rate, still reach the tree.
+ * <p>
+ * A key is added to the filter before it is written to the tree, so a lookup never misses a key
+ * whose put has completed. Removed keys stay in the filter and only make the false positives more frequent;
+ * {@link BloomFilterTree#rebuildFilter(long)} replaces the filter by one built from a scan of the tree.
+ * The keys put during the rebuild are added to both filters
+ * */
+public class BloomFilterTree implements Tree {
+
+    private final Tree tree;
+    private final double falsePositiveRate;
+
+    /**
+     * The filter answering the lookups
+     * */
+    private volatile BloomFilter filter;
+
+    /**
+     * The filter being rebuilt, the same as {@link BloomFilterTree#filter} when no rebuild is running
+     * */
+    private volatile BloomFilter next;
+
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Builds the filter from the keys already in the tree
+     *
+     * @param expectedKeys the number of keys the filter is sized for
+     * @param falsePositiveRate the fraction of the absent keys allowed to reach the tree
+     * */
+    public BloomFilterTree(Tree tree, long expectedKeys, double falsePositiveRate) {
+        if (tree == null) {
+            throw new IllegalArgumentException("Tree cannot be null");
+        }
+        this.tree = tree;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedKeys, falsePositiveRate);
+        this.next = filter;
+        addKeys(filter);
+    }
+
+    /**
+     * Replaces the filter by a new one sized for the expected number of keys and filled with the keys of the tree,
+     * dropping the removed keys. Lookups keep using the old filter until the scan completes
+     * */
+    public synchronized void rebuildFilter(long expectedKeys) {
+        BloomFilter rebuilt = new BloomFilter(expectedKeys, falsePositiveRate);
+        next = rebuilt;
+        addKeys(rebuilt);
+        filter = rebuilt;
+    }
+
+    /**
+     * @return the lookups answered by the filter alone
+     * */
+    public long filteredLookups() {
+        return filtered.sum();
+    }
+
+    /**
+     * @return the lookups the filter let through for absent keys
+     * */
+    public long falsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return the size of the filter in bytes
+     * */
+    public long filterBytes() {
+        return filter.sizeInBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        if (!filter.mightContain(key, offset, length)) {
+            filtered.increment();
+            return Optional.empty();
+        }
+        Optional<byte[]> value = tree.get(key, offset, length);
+        if (value.isEmpty()) {
+            falsePositives.increment();
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(ByteBuffer key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key.hasArray()) {
+            return get(key.array(), key.arrayOffset() + key.position(), key.remaining());
+        }
+        return Tree.super.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean containsKey(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        if (!filter.mightContain(key, offset, length)) {
+            filtered.increment();
+            return false;
+        }
+        boolean contains = tree.containsKey(key, offset, length);
+        if (!contains) {
+            falsePositives.increment();
+        }
+        return contains;
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+        BloomFilter added = add(key);
+        tree.put(key, value);
+        addAfterWrite(key, added);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void putAll(Iterable<Entry> entries) throws IllegalArgumentException {
+        List<Entry> batch = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.key() == null || entry.value() == null) {
+                throw new IllegalArgumentException("Key and value cannot be null");
+            }
+            batch.add(entry);
+        }
+
+        BloomFilter added = filter;
+        for (Entry entry : batch) {
+            added.add(entry.key(), 0, entry.key().length);
+        }
+        tree.putAll(batch);
+        for (Entry entry : batch) {
+            addAfterWrite(entry.key(), added);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> putIfAbsent(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+        BloomFilter added = add(key);
+        Optional<byte[]> current = tree.putIfAbsent(key, value);
+        addAfterWrite(key, added);
+        return current;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Never adds a key
+     * */
+    @Override
+    public boolean replace(byte[] key, byte[] expectedValue, byte[] newValue) throws IllegalArgumentException {
+        return tree.replace(key, expectedValue, newValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+        BloomFilter added = add(key);
+        Optional<byte[]> computed = tree.compute(key, remappingFunction);
+        addAfterWrite(key, added);
+        return computed;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key stays in the filter until it is rebuilt
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        return tree.remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key stays in the filter until it is rebuilt
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        return tree.remove(key, expectedValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        return tree.floor(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        return tree.ceiling(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        return tree.higher(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        return tree.lower(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return tree.firstKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return tree.lastKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return tree.scan(fromKey, toKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Spliterator<Entry> spliterator() {
+        return tree.spliterator();
+    }
+
+    private void addKeys(BloomFilter target) {
+        Iterator<Entry> entries = tree.scan(null, null);
+        while (entries.hasNext()) {
+            byte[] key = entries.next().key();
+            target.add(key, 0, key.length);
+        }
+    }
+
+    /**
+     * Adds the key to the filter answering the lookups, before the key is written to the tree
+     *
+     * @return the filter the key was added to
+     * */
+    private BloomFilter add(byte[] key) {
+        BloomFilter current = filter;
+        current.add(key, 0, key.length);
+        return current;
+    }
+
+    /**
+     * Adds the key to the filter being rebuilt and to the filter answering the lookups, after the key was written
+     * to the tree, unless it is already in them. A rebuild whose scan may have missed the key has already published
+     * its filter as one of the two, and a rebuild starting later finds the key in its scan
+     * */
+    private void addAfterWrite(byte[] key, BloomFilter added) {
+        BloomFilter rebuilt = next;
+        if (rebuilt != added) {
+            rebuilt.add(key, 0, key.length);
+        }
+        BloomFilter current = filter;
+        if (current != added && current != rebuilt) {
+            current.add(key, 0, key.length);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.cache.CacheStats;
+import com.hlianole.jetbrains.internship.tree.cache.HotKeyCache;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * A read-through {@link HotKeyCache} in front of another tree, for skewed workloads where a few keys take most
+ * of the lookups. A cached lookup is a hash of the key and a probe of one set of slots, instead of a descent
+ * of the tree. The misses read the tree and offer the value to the cache, which only admits the keys
+ * read more often than the entries they would replace.
+ * <p>
+ * Every write goes to the tree and invalidates the key, so a lookup never returns a value older than
+ * the last completed write. The navigation methods and the scans go straight to the tree
+ * */
+public class CachedTree implements Tree {
+
+    private final Tree tree;
+    private final HotKeyCache cache;
+
+    /**
+     * @param capacity the number of entries the cache holds at most
+     * */
+    public CachedTree(Tree tree, int capacity) {
+        if (tree == null) {
+            throw new IllegalArgumentException("Tree cannot be null");
+        }
+        this.tree = tree;
+        this.cache = new HotKeyCache(capacity);
+    }
+
+    /**
+     * @return the hits, misses and admissions of the cache since the tree was created
+     * */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        int hash = HotKeyCache.hash(key, offset, length);
+        byte[] cached = cache.get(hash, key, offset, length);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        long stamp = cache.startRead(hash);
+        Optional<byte[]> value = tree.get(key, offset, length);
+        value.ifPresent(bytes -> cache.fill(hash, key, offset, length, bytes, stamp));
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+        write(key, () -> {
+            tree.put(key, value);
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void putAll(Iterable<Entry> entries) throws IllegalArgumentException {
+        List<Entry> batch = new ArrayList<>();
+        List<Integer> hashes = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.key() == null || entry.value() == null) {
+                throw new IllegalArgumentException("Key and value cannot be null");
+            }
+            batch.add(entry);
+            hashes.add(HotKeyCache.hash(entry.key(), 0, entry.key().length));
+        }
+
+        int started = 0;
+        try {
+            for (int hash : hashes) {
+                cache.startWrite(hash);
+                started++;
+            }
+            tree.putAll(batch);
+        } finally {
+            for (int i = 0; i < started; i++) {
+                cache.finishWrite(hashes.get(i), batch.get(i).key());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return write(key, () -> tree.remove(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
+        return write(key, () -> tree.remove(key, expectedValue));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> putIfAbsent(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+        return write(key, () -> tree.putIfAbsent(key, value));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean replace(byte[] key, byte[] expectedValue, byte[] newValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null || newValue == null) {
+            throw new IllegalArgumentException("Key, expected value and new value cannot be null");
+        }
+        return write(key, () -> tree.replace(key, expectedValue, newValue));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+        return write(key, () -> tree.compute(key, remappingFunction));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        return tree.floor(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        return tree.ceiling(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        return tree.higher(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        return tree.lower(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return tree.firstKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return tree.lastKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return tree.scan(fromKey, toKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Spliterator<Entry> spliterator() {
+        return tree.spliterator();
+    }
+
+    /**
+     * Runs a write of the tree between {@link HotKeyCache#startWrite(int)} and {@link HotKeyCache#finishWrite(int, byte[])}
+     * */
+    private <T> T write(byte[] key, Supplier<T> write) {
+        int hash = HotKeyCache.hash(key, 0, key.length);
+        cache.startWrite(hash);
+        try {
+            return write.get();
+        } finally {
+            cache.finishWrite(hash, key);
+        }
+    }
+}
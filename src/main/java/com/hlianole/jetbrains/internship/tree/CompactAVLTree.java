@@ -0,0 +1,391 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Key;
+import com.hlianole.jetbrains.internship.tree.memory.HeapArena;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Extends {@link AbstractIndexedAVLTree}
+ * <p>
+ * An AVL tree without an object per entry. The node fields are kept in primitive columns indexed by the node id:
+ * the children and the height in {@code int[]}s, the first 8 bytes of the key (see {@link Key})
+ * and the addresses of the key and the value in {@code long[]}s. The key and value bytes are kept
+ * in {@code byte[]} slabs of a {@link HeapArena}. An entry costs 44 bytes of columns plus its rounded-up bytes,
+ * against about 120 bytes of objects and headers for a node of {@link ConcurrentAVLTree}.
+ * <p>
+ * Freed ids are reused through a free list linked through the left child column
+ * <p>
+ * A tree created with {@link CompactAVLTree#CompactAVLTree(byte)} compresses the keys that share prefixes,
+ * like {@code tenant/table/row}: the bytes up to the last separator are interned once in a pool
+ * and only the rest of the key is kept in the arena, the node referring to the prefix by its id.
+ * The order of the keys does not change, a key is compared to the pooled prefix and then to the rest
+ * */
+public class CompactAVLTree extends AbstractIndexedAVLTree {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final HeapArena arena = new HeapArena();
+
+    private int[] left = new int[INITIAL_CAPACITY];
+    private int[] right = new int[INITIAL_CAPACITY];
+    private int[] height = new int[INITIAL_CAPACITY];
+    private long[] keyPrefix = new long[INITIAL_CAPACITY];
+    private long[] keyAddress = new long[INITIAL_CAPACITY];
+    private int[] keyLength = new int[INITIAL_CAPACITY];
+    private long[] valueAddress = new long[INITIAL_CAPACITY];
+    private int[] valueLength = new int[INITIAL_CAPACITY];
+
+    private int nextNode = 1;
+    private int freeNodes = NIL;
+
+    /**
+     * The separator ending the pooled prefixes, -1 if the keys are not compressed
+     * */
+    private final int separator;
+
+    /**
+     * The id of the pooled prefix of the key, {@link AbstractIndexedAVLTree#NIL} if the key has none.
+     * Only allocated if the keys are compressed
+     * */
+    private int[] keyShared;
+
+    /**
+     * The ids of the pooled prefixes by the hash of their bytes, an open-addressing table with linear probing
+     * kept at most half full
+     * */
+    private int[] prefixTable;
+    private int pooledPrefixes;
+    private byte[][] prefixes;
+    private int[] prefixReferences;
+    private int nextPrefix = 1;
+    private int freePrefixes = NIL;
+
+    public CompactAVLTree() {
+        this.separator = -1;
+    }
+
+    /**
+     * Creates a tree compressing the keys: the bytes of a key up to and including the last separator
+     * are kept once for all the keys that start with them
+     *
+     * @param separator the byte ending the shared prefixes, like {@code '/'} or {@code ':'}
+     * */
+    public CompactAVLTree(byte separator) {
+        this.separator = separator & 0xFF;
+        this.keyShared = new int[INITIAL_CAPACITY];
+        this.prefixTable = new int[INITIAL_CAPACITY];
+        this.prefixes = new byte[INITIAL_CAPACITY][];
+        this.prefixReferences = new int[INITIAL_CAPACITY];
+    }
+
+    @Override
+    protected int left(int node) {
+        return left[node];
+    }
+
+    @Override
+    protected int right(int node) {
+        return right[node];
+    }
+
+    @Override
+    protected int height(int node) {
+        return height[node];
+    }
+
+    @Override
+    protected void setLeft(int node, int left) {
+        this.left[node] = left;
+    }
+
+    @Override
+    protected void setRight(int node, int right) {
+        this.right[node] = right;
+    }
+
+    @Override
+    protected void setHeight(int node, int height) {
+        this.height[node] = height;
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected int compareKey(int node, long prefix, byte[] key, int offset, int length) {
+        long nodePrefix = keyPrefix[node];
+        if (nodePrefix != prefix) {
+            return Long.compareUnsigned(prefix, nodePrefix);
+        }
+
+        int nodeLength = keyLength[node];
+        int from = Math.min(Long.BYTES, Math.min(nodeLength, length));
+        int shared = keyShared == null ? NIL : keyShared[node];
+        if (shared == NIL) {
+            return arena.compare(keyAddress[node], nodeLength, from, key, offset, length);
+        }
+
+        byte[] sharedPrefix = prefixes[shared];
+        int end = Math.min(sharedPrefix.length, length);
+        if (from < end) {
+            int comparison = Arrays.compareUnsigned(key, offset + from, offset + end, sharedPrefix, from, end);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        if (length < sharedPrefix.length) {
+            return -1;
+        }
+        return arena.compare(keyAddress[node], nodeLength - sharedPrefix.length, Math.max(0, from - sharedPrefix.length),
+                key, offset + sharedPrefix.length, length - sharedPrefix.length);
+    }
+
+    @Override
+    protected byte[] key(int node) {
+        int shared = keyShared == null ? NIL : keyShared[node];
+        if (shared == NIL) {
+            return arena.read(keyAddress[node], keyLength[node]);
+        }
+
+        byte[] prefix = prefixes[shared];
+        byte[] suffix = arena.read(keyAddress[node], keyLength[node] - prefix.length);
+        byte[] key = Arrays.copyOf(prefix, keyLength[node]);
+        System.arraycopy(suffix, 0, key, prefix.length, suffix.length);
+        return key;
+    }
+
+    @Override
+    protected byte[] value(int node) {
+        return arena.read(valueAddress[node], valueLength[node]);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected int copyValue(int node, ByteBuffer out) {
+        int length = valueLength[node];
+        if (length <= out.remaining()) {
+            arena.copy(valueAddress[node], length, out);
+        }
+        return length;
+    }
+
+    @Override
+    protected boolean valueEquals(int node, byte[] value) {
+        return arena.contentEquals(valueAddress[node], valueLength[node], value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected int allocate(byte[] key, byte[] value) {
+        int node = allocateNode();
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 1;
+
+        int shared = keyShared == null ? NIL : internPrefix(key);
+        byte[] stored = key;
+        if (shared != NIL) {
+            keyShared[node] = shared;
+            stored = Arrays.copyOfRange(key, prefixes[shared].length, key.length);
+        } else if (keyShared != null) {
+            keyShared[node] = NIL;
+        }
+        keyAddress[node] = arena.allocate(stored.length);
+        arena.write(keyAddress[node], stored);
+        keyLength[node] = key.length;
+        keyPrefix[node] = Key.prefix(key, 0, key.length);
+
+        valueAddress[node] = arena.allocate(value.length);
+        arena.write(valueAddress[node], value);
+        valueLength[node] = value.length;
+        return node;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The block of the old value is reused if the new value has the same size class
+     * */
+    @Override
+    protected void setValue(int node, byte[] value) {
+        valueAddress[node] = arena.reallocate(valueAddress[node], valueLength[node], value.length);
+        arena.write(valueAddress[node], value);
+        valueLength[node] = value.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void moveEntry(int from, int to) {
+        freeKey(to);
+        arena.free(valueAddress[to], valueLength[to]);
+        if (keyShared != null) {
+            keyShared[to] = keyShared[from];
+        }
+
+        keyPrefix[to] = keyPrefix[from];
+        keyAddress[to] = keyAddress[from];
+        keyLength[to] = keyLength[from];
+        valueAddress[to] = valueAddress[from];
+        valueLength[to] = valueLength[from];
+        freeNode(from);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void free(int node) {
+        freeKey(node);
+        arena.free(valueAddress[node], valueLength[node]);
+        freeNode(node);
+    }
+
+    private void freeKey(int node) {
+        int shared = keyShared == null ? NIL : keyShared[node];
+        if (shared == NIL) {
+            arena.free(keyAddress[node], keyLength[node]);
+            return;
+        }
+
+        byte[] prefix = prefixes[shared];
+        arena.free(keyAddress[node], keyLength[node] - prefix.length);
+        if (--prefixReferences[shared] == 0) {
+            unlinkPrefix(shared);
+            prefixes[shared] = null;
+            prefixReferences[shared] = freePrefixes;
+            freePrefixes = shared;
+        }
+    }
+
+    /**
+     * Finds or adds the prefix of the key up to and including the last separator, and references it
+     *
+     * @return the id of the pooled prefix, {@link AbstractIndexedAVLTree#NIL} if the key has no separator
+     * */
+    private int internPrefix(byte[] key) {
+        int length = key.length;
+        while (length > 0 && (key[length - 1] & 0xFF) != separator) {
+            length--;
+        }
+        if (length == 0) {
+            return NIL;
+        }
+
+        int hash = hashPrefix(key, length);
+        int mask = prefixTable.length - 1;
+        int slot = hash & mask;
+        for (int id = prefixTable[slot]; id != NIL; id = prefixTable[slot]) {
+            if (Arrays.equals(prefixes[id], 0, prefixes[id].length, key, 0, length)) {
+                prefixReferences[id]++;
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int shared;
+        if (freePrefixes != NIL) {
+            shared = freePrefixes;
+            freePrefixes = prefixReferences[shared];
+        } else {
+            if (nextPrefix == prefixes.length) {
+                prefixes = Arrays.copyOf(prefixes, prefixes.length * 2);
+                prefixReferences = Arrays.copyOf(prefixReferences, prefixReferences.length * 2);
+            }
+            shared = nextPrefix++;
+        }
+        prefixes[shared] = Arrays.copyOf(key, length);
+        prefixReferences[shared] = 0;
+        prefixTable[slot] = shared;
+        if (++pooledPrefixes * 2 > prefixTable.length) {
+            resizePrefixTable();
+        }
+        prefixReferences[shared]++;
+        return shared;
+    }
+
+    /**
+     * Removes the prefix from the table, shifting back the following ids of its probe sequence
+     * */
+    private void unlinkPrefix(int shared) {
+        int mask = prefixTable.length - 1;
+        int slot = hashPrefix(prefixes[shared], prefixes[shared].length) & mask;
+        while (prefixTable[slot] != shared) {
+            slot = (slot + 1) & mask;
+        }
+
+        int next = (slot + 1) & mask;
+        for (int id = prefixTable[next]; id != NIL; id = prefixTable[next]) {
+            int home = hashPrefix(prefixes[id], prefixes[id].length) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                prefixTable[slot] = id;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        prefixTable[slot] = NIL;
+        pooledPrefixes--;
+    }
+
+    private void resizePrefixTable() {
+        int[] table = new int[prefixTable.length * 2];
+        int mask = table.length - 1;
+        for (int id : prefixTable) {
+            if (id != NIL) {
+                int slot = hashPrefix(prefixes[id], prefixes[id].length) & mask;
+                while (table[slot] != NIL) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id;
+            }
+        }
+        prefixTable = table;
+    }
+
+    private static int hashPrefix(byte[] key, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + key[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private int allocateNode() {
+        if (freeNodes != NIL) {
+            int node = freeNodes;
+            freeNodes = left[node];
+            return node;
+        }
+
+        if (nextNode == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many entries");
+        }
+        if (nextNode == left.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE, left.length * 2L);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            height = Arrays.copyOf(height, capacity);
+            keyPrefix = Arrays.copyOf(keyPrefix, capacity);
+            keyAddress = Arrays.copyOf(keyAddress, capacity);
+            keyLength = Arrays.copyOf(keyLength, capacity);
+            valueAddress = Arrays.copyOf(valueAddress, capacity);
+            valueLength = Arrays.copyOf(valueLength, capacity);
+            if (keyShared != null) {
+                keyShared = Arrays.copyOf(keyShared, capacity);
+            }
+        }
+        return nextNode++;
+    }
+
+    private void freeNode(int node) {
+        left[node] = freeNodes;
+        freeNodes = node;
+    }
+}
@@ -1,27 +1,181 @@
 package com.hlianole.jetbrains.internship.tree;
 
+import com.hlianole.jetbrains.internship.tree.data.Entry;
 import com.hlianole.jetbrains.internship.tree.data.Key;
 import com.hlianole.jetbrains.internship.tree.data.Value;
-import com.hlianole.jetbrains.internship.tree.node.EmptyNode;
-import com.hlianole.jetbrains.internship.tree.node.FilledNode;
+import com.hlianole.jetbrains.internship.tree.memory.MemoryBudget;
+import com.hlianole.jetbrains.internship.tree.metrics.RotationEvent;
+import com.hlianole.jetbrains.internship.tree.metrics.TreeMetrics;
+import com.hlianole.jetbrains.internship.tree.metrics.TreeOperationEvent;
 import com.hlianole.jetbrains.internship.tree.node.Node;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Implements {@link Tree}
  * <p>
  * A thread-safe implementation of an AVL tree.
- * This implementation uses a global read-write lock to ensure thread safety during concurrent access.
+ * Readers never lock: they traverse the tree optimistically and validate every step against
+ * the version of the node (see {@link Node#getVersion()}), retrying when a rotation moved
+ * the searched key out of the subtree they are in.
+ * <p>
+ * Writers lock only the nodes they change. A new node is linked under the lock of its parent,
+ * and the tree is rebalanced bottom-up along the parent pointers, locking the parent, the node
+ * and the children taking part in a rotation (always top-down). Puts into different subtrees run in parallel.
+ * The balance is relaxed: the AVL invariant can be temporarily violated while concurrent writers are fixing it.
+ * <p>
+ * A removed key keeps its node as a routing node with a {@code null} value while the node has two children.
+ * Nodes with at most one child are unlinked under the locks of the parent and the node during the rebalancing.
+ * <p>
+ * A tree created by {@link ConcurrentAVLTree#withMetrics()} records {@link TreeMetrics}. Every tree emits
+ * {@link TreeOperationEvent} and {@link RotationEvent} to the JDK Flight Recorder, which cost nothing
+ * while no recording is running
+ * <p>
+ * A tree created by {@link ConcurrentAVLTree#bounded(long)} charges every entry to a {@link MemoryBudget}.
+ * A write which leaves the entries over the capacity evicts entries before it returns, with a clock sweep
+ * approximating LRU: the hand walks the keys in order, a node read since the last pass of the hand
+ * (see {@link Node#markReferenced()}) gets a second chance, the others are removed like
+ * {@link ConcurrentAVLTree#remove(byte[])}, with the same rebalancing
  * */
 public class ConcurrentAVLTree implements Tree {
 
+    /**
+     * How many times a reader spins on a shrinking node before yielding
+     * */
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    /**
+     * Conditions of the node returned by {@link ConcurrentAVLTree#nodeCondition(Node)}.
+     * Any non-negative condition is the new height of the node
+     * */
+    private static final int UNLINK_REQUIRED = -1;
+    private static final int REBALANCE_REQUIRED = -2;
+    private static final int NOTHING_REQUIRED = -3;
+
+    /**
+     * Returned by {@link ConcurrentAVLTree#attemptUpdate(Node, long, Key, Value, UnaryOperator)}
+     * if the update must be restarted. Compared by identity
+     * */
+    private static final Value RETRY = new Value(new byte[0]);
+
+    /**
+     * Returned by the optimistic searches if the search must be restarted. Compared by identity
+     * */
+    private static final Node RETRY_SEARCH = new Node(null, null);
+
+    /**
+     * Per-thread buffer the keys from direct {@link ByteBuffer}s are copied into, so they can be compared
+     * as arrays without allocating on every lookup
+     * */
+    private static final ThreadLocal<byte[]> KEY_BUFFER = ThreadLocal.withInitial(() -> new byte[64]);
+
+    /**
+     * How many passes of the clock hand evict nothing before the eviction gives up: the first pass may only clear
+     * the clock bits, so the budget can only stay exceeded after two passes if the entries are still being written
+     * */
+    private static final int CLOCK_PASSES = 2;
+
     protected volatile Node root;
-    private final ReentrantReadWriteLock rootLock = new ReentrantReadWriteLock();
+
+    /**
+     * Guards the {@link ConcurrentAVLTree#root} link. Plays the role of the parent's lock for the root node
+     * */
+    private final Object rootLock = new Object();
+
+    /**
+     * The metrics of the tree, {@code null} if they are not recorded
+     * */
+    private final TreeMetrics metrics;
+
+    /**
+     * The memory budget of the tree, {@code null} if it is unbounded
+     * */
+    private final MemoryBudget budget;
+
+    /**
+     * Serializes the evictions, so the writers over the capacity wait for one sweep instead of all sweeping
+     * */
+    private final Object evictionLock = new Object();
+
+    /**
+     * The key the clock hand stopped at, {@code null} at the start of the key space. Guarded by the eviction lock
+     * */
+    private Key clockHand;
 
     public ConcurrentAVLTree() {
-        this.root = EmptyNode.getInstance();
+        this(false, null);
+    }
+
+    private ConcurrentAVLTree(boolean recordMetrics, MemoryBudget budget) {
+        this.root = null;
+        this.metrics = recordMetrics ? new TreeMetrics(() -> heightOf(root)) : null;
+        this.budget = budget;
+    }
+
+    /**
+     * Creates an empty tree recording its {@link TreeMetrics}. Recording takes a few
+     * {@link java.util.concurrent.atomic.LongAdder} increments and two {@link System#nanoTime()} calls per operation
+     * */
+    public static ConcurrentAVLTree withMetrics() {
+        return new ConcurrentAVLTree(true, null);
+    }
+
+    /**
+     * Creates an empty tree whose entries use at most the given number of bytes, see {@link MemoryBudget}.
+     * The capacity can be exceeded by the entries of the writes running concurrently with an eviction
+     *
+     * @param capacity the bytes the entries may use
+     * */
+    public static ConcurrentAVLTree bounded(long capacity) {
+        return new ConcurrentAVLTree(false, new MemoryBudget(capacity));
+    }
+
+    /**
+     * Builds a perfectly balanced tree from the entries sorted by key in O(n) without any rotation
+     *
+     * @param sortedEntries entries in strictly ascending key order. Keys and values must not be {@code null}
+     * @throws IllegalArgumentException if the entries are not sorted or contain {@code null}
+     * */
+    public static ConcurrentAVLTree fromSorted(Iterable<Entry> sortedEntries) throws IllegalArgumentException {
+        List<Node> nodes = new ArrayList<>();
+        for (Entry entry : sortedEntries) {
+            Node node = createNode(entry);
+            if (!nodes.isEmpty() && nodes.get(nodes.size() - 1).compareKey(node.getKey()) <= 0) {
+                throw new IllegalArgumentException("Entries must be sorted by key in strictly ascending order");
+            }
+            nodes.add(node);
+        }
+
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        tree.root = link(nodes, 0, nodes.size(), null);
+        return tree;
+    }
+
+    /**
+     * @return the metrics of the tree, if it was created by {@link ConcurrentAVLTree#withMetrics()}
+     * */
+    public Optional<TreeMetrics> metrics() {
+        return Optional.ofNullable(metrics);
+    }
+
+    /**
+     * @return the memory budget of the tree, if it was created by {@link ConcurrentAVLTree#bounded(long)}
+     * */
+    public Optional<MemoryBudget> memoryBudget() {
+        return Optional.ofNullable(budget);
     }
 
     /**
@@ -33,172 +187,1713 @@ public class ConcurrentAVLTree implements Tree {
             throw new IllegalArgumentException("Key cannot be null");
         }
 
-        rootLock.readLock().lock();
-        try {
-            Node found = find(root, new Key(key));
-            if (found == EmptyNode.getInstance()) {
-                return Optional.empty();
-            }
-            return Optional.of(found.getValue().value());
-        } finally {
-            rootLock.readLock().unlock();
+        return toOptional(findValue(key, 0, key.length));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The slice is compared in place, no key is allocated
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
         }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        return toOptional(findValue(key, offset, length));
     }
 
     /**
      * {@inheritDoc}
-     */
+     * <p>
+     * No key is allocated
+     * */
     @Override
-    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
-        if (key == null || value == null) {
-            throw new IllegalArgumentException("Key and value cannot be null");
+    public Optional<byte[]> get(ByteBuffer key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
         }
 
-        rootLock.writeLock().lock();
-        try {
-            root = insert(root, new Key(key), new Value(value), EmptyNode.getInstance());
-        } finally {
-            rootLock.writeLock().unlock();
+        return toOptional(findValue(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public int getInto(byte[] key, int offset, int length, ByteBuffer out) throws IllegalArgumentException {
+        if (key == null || out == null) {
+            throw new IllegalArgumentException("Key and output buffer cannot be null");
         }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        return copyValue(findValue(key, offset, length), out);
     }
 
     /**
-     * Recursively searches for a node with a specific key starting from a given node.
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
      * */
-    private Node find(Node node, Key key) {
-        if (node == EmptyNode.getInstance()) {
-            return EmptyNode.getInstance();
+    @Override
+    public int getInto(ByteBuffer key, ByteBuffer out) throws IllegalArgumentException {
+        if (key == null || out == null) {
+            throw new IllegalArgumentException("Key and output buffer cannot be null");
         }
 
-        int comparison = node.compareKey(key);
-        if (comparison < 0) {
-            return find(node.getLeft(), key);
-        } else if (comparison > 0) {
-            return find(node.getRight(), key);
-        } else {
-            return node;
+        return copyValue(findValue(key), out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public boolean containsKey(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
         }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        return findValue(key, offset, length) != null;
     }
 
     /**
-     * Recursively inserts a key-value pair into the subtree rooted at the specified node.
-     * After insertion, the subtree is rebalanced if necessary to maintain AVL invariants.
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
      * */
-    private Node insert(Node node, Key key, Value value, Node parent) {
-        if (node == EmptyNode.getInstance()) {
-            return createNode(key, value, parent);
+    @Override
+    public boolean containsKey(ByteBuffer key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
         }
 
-        int comparison = node.compareKey(key);
-        if (comparison < 0) {
-            node.setLeft(insert(node.getLeft(), key, value, node));
-        } else if (comparison > 0) {
-            node.setRight(insert(node.getRight(), key, value, node));
-        } else {
-            return node.setValue(value);
+        return findValue(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
+        insert(key, value);
+    }
+
+    /**
+     * Puts the entry, see {@link ConcurrentAVLTree#put(byte[], byte[])}
+     *
+     * @return true if a new entry was created, false if the value of an existing key was replaced
+     * */
+    boolean insert(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        return updateValue(key, new Value(value), null) == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The current value is read in the same traversal which inserts a missing key, an existing key takes no lock
+     * */
+    @Override
+    public Optional<byte[]> putIfAbsent(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
         }
 
-        return balance(node);
+        Value wrappedValue = new Value(value);
+        return toOptional(updateValue(key, null, current -> current == null ? wrappedValue : current));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The value is swapped with a single CAS, without any lock
+     * */
+    @Override
+    public boolean replace(byte[] key, byte[] expectedValue, byte[] newValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null || newValue == null) {
+            throw new IllegalArgumentException("Key, expected value and new value cannot be null");
+        }
+
+        Value wrappedValue = new Value(newValue);
+        Value previous = updateValue(key, null, current ->
+                current != null && Arrays.equals(current.value(), expectedValue) ? wrappedValue : current);
+        return previous != null && Arrays.equals(previous.value(), expectedValue);
+    }
 
     /**
-     * Creates a new {@link FilledNode} instance with provided key, value and parent.
-     * See {@link FilledNode}
+     * {@inheritDoc}
+     * <p>
+     * An existing key gets the new value with a CAS, which is retried with a new call of the function
+     * if the value was changed concurrently. A missing key is inserted like {@link ConcurrentAVLTree#put(byte[], byte[])},
+     * a {@code null} result is removed like {@link ConcurrentAVLTree#remove(byte[])}
      * */
-    private Node createNode(Key key, Value value, Node parent) {
-        return new FilledNode(key, value)
-                .setParent(parent);
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+
+        Value[] computed = new Value[1];
+        updateValue(key, null, current -> {
+            byte[] old = current == null ? null : current.value();
+            byte[] result = remappingFunction.apply(key, old);
+            computed[0] = result == old ? current : (result == null ? null : new Value(result));
+            return computed[0];
+        });
+        return toOptional(computed[0]);
     }
 
     /**
-     * @return balance factor: 0 if left and right subtrees have the same height.
-     * Greater than 0 if the right subtree is higher.
-     * Less than 0 if the left subtree is higher
+     * {@inheritDoc}
+     * <p>
+     * The entries are sorted once, the duplicates are dropped. An empty tree is replaced with a perfectly
+     * balanced one built from the batch without any rotation. Otherwise, the entries are inserted in key order,
+     * so consecutive insertions descend along mostly the same, already cached, path
      * */
-    private int balanceFactor(Node node) {
-        return node.getRight().getHeight() - node.getLeft().getHeight();
+    @Override
+    public void putAll(Iterable<Entry> entries) throws IllegalArgumentException {
+        List<Node> nodes = new ArrayList<>();
+        for (Entry entry : entries) {
+            nodes.add(createNode(entry));
+        }
+        nodes.sort((first, second) -> second.compareKey(first.getKey()));
+
+        List<Node> unique = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i + 1 == nodes.size() || nodes.get(i).compareKey(nodes.get(i + 1).getKey()) != 0) {
+                unique.add(nodes.get(i));
+            }
+        }
+
+        boolean linked = false;
+        if (root == null) {
+            long waitStart = lockWaitStart();
+            synchronized (rootLock) {
+                recordLockWait(waitStart);
+                if (root == null) {
+                    root = link(unique, 0, unique.size(), null);
+                    if (metrics != null) {
+                        metrics.recordInserts(unique.size());
+                    }
+                    if (budget != null) {
+                        for (Node node : unique) {
+                            budget.recordInsert(node.getKey().getBytes().length, node.getValue().value().length);
+                        }
+                    }
+                    linked = true;
+                }
+            }
+        }
+
+        if (!linked) {
+            for (Node node : unique) {
+                update(node.getKey(), node.getValue(), null);
+            }
+        }
+        // Outside the root lock, the eviction takes the node locks
+        evictIfExceeded();
     }
 
     /**
-     * Updates the node's height depending on the node's subtrees. The height is updated from bottom to up
+     * Records the update, see {@link ConcurrentAVLTree#update(Key, Value, UnaryOperator)}
      * */
-    private void updateHeight(Node node) {
-        node.setHeight(
-                Math.max(node.getLeft().getHeight(), node.getRight().getHeight()) + 1
-        );
+    private Value updateValue(byte[] key, Value value, UnaryOperator<Value> remapping) {
+        TreeOperationEvent event = new TreeOperationEvent();
+        event.begin();
+        long start = operationStart();
+
+        Value previous = update(new Key(key), value, remapping);
+        evictIfExceeded();
+
+        recordOperation(TreeMetrics.Operation.PUT, event, start, key.length);
+        return previous;
     }
 
     /**
-     * Left AVL rotation
+     * Sets the value of the key in a single traversal, restarting it every time a concurrent rotation
+     * invalidates the traversed path
      *
-     * @return the node which replaces the given node after rotation
+     * @param value the new value, used if there is no remapping
+     * @param remapping the function computing the new value from the current one, {@code null} if absent.
+     * It returns {@code null} to remove the key, or the current value to leave it unchanged
+     * @return the value the key had right before the update, or {@code null} if the key was absent
      * */
-    private Node rotateLeft(Node node) {
-        Node right = node.getRight();
-        Node rightLeft = right.getLeft();
+    private Value update(Key wrappedKey, Value value, UnaryOperator<Value> remapping) {
+        while (true) {
+            Node node = root;
+            if (node == null) {
+                Value created = remap(null, value, remapping);
+                if (created == null) {
+                    return null;
+                }
 
-        right.setLeft(node);
-        node.setRight(rightLeft);
+                long waitStart = lockWaitStart();
+                synchronized (rootLock) {
+                    recordLockWait(waitStart);
+                    if (root == null) {
+                        root = createNode(wrappedKey, created, null);
+                        recordInsert(wrappedKey, created);
+                        return null;
+                    }
+                }
+                continue;
+            }
 
-        right.setParent(node.getParent());
-        node.setParent(right);
+            long version = node.getVersion();
+            if (isShrinking(version)) {
+                awaitChange(node, version);
+                continue;
+            }
+            if (node != root) {
+                continue;
+            }
 
-        if (rightLeft != EmptyNode.getInstance()) {
-            rightLeft.setParent(node);
+            Value previous = attemptUpdate(node, version, wrappedKey, value, remapping);
+            if (previous != RETRY) {
+                return previous;
+            }
         }
+    }
+
+    private static Value remap(Value current, Value value, UnaryOperator<Value> remapping) {
+        return remapping == null ? value : remapping.apply(current);
+    }
 
-        updateHeight(node);
-        updateHeight(right);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The value is removed without any lock. The node itself is unlinked
+     * if it has at most one child, otherwise it stays in the tree as a routing node
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
 
-        return right;
+        Value removed = removeValue(new Key(key), null);
+        if (removed == null) {
+            return Optional.empty();
+        }
+        return Optional.of(removed.value());
     }
 
     /**
-     * Right AVL rotation
-     *
-     * @return the node which replaces the given node after rotation
+     * {@inheritDoc}
      * */
-    private Node rotateRight(Node node) {
-        Node left = node.getLeft();
-        Node leftRight = left.getRight();
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
 
-        left.setRight(node);
-        node.setLeft(leftRight);
+        return removeValue(new Key(key), expectedValue) != null;
+    }
 
-        left.setParent(node.getParent());
-        node.setParent(left);
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(new Key(key), false, true);
+    }
 
-        if (leftRight != EmptyNode.getInstance()) {
-            leftRight.setParent(node);
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(new Key(key), true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(new Key(key), true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
         }
+        return findNearestKey(new Key(key), false, false);
+    }
 
-        updateHeight(node);
-        updateHeight(left);
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return findNearestKey(null, true, true);
+    }
 
-        return left;
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return findNearestKey(null, false, true);
     }
 
     /**
-     * AVL balancing. Provides height updating for the node and executes single or double rotation depending
-     * on the balance factor if needed.
+     * {@inheritDoc}
+     * <p>
+     * The iterator walks the tree with an explicit stack of the nodes still to be visited.
+     * It never locks: if a rotation changed one of the nodes on the stack, the stack is rebuilt
+     * by one descent from the root to the successor of the last returned key
      * */
-    private Node balance(Node node) {
-        updateHeight(node);
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return new RangeIterator(
+                fromKey == null ? null : new Key(fromKey),
+                toKey == null ? null : new Key(toKey)
+        );
+    }
 
-        int balanceFactor = balanceFactor(node);
-        if (balanceFactor > 1) {
-            if (balanceFactor(node.getRight()) < 0) {
-                node.setRight(rotateRight(node.getRight()));
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The spliterator splits at the keys of the nodes: a range is split at the key of the highest node inside it,
+     * which is the root of the subtree holding the range, without reading any entry. The size is estimated
+     * from the height of that node. Every part is traversed by its own range scan
+     * */
+    @Override
+    public Spliterator<Entry> spliterator() {
+        return new RangeSpliterator(null, null, heightOf(root));
+    }
+
+    /**
+     * Searches for the nearest key, see {@link ConcurrentAVLTree#findNearest(Key, boolean, boolean)}.
+     * Routing nodes of the removed keys are skipped by searching again past their keys
+     * */
+    private Optional<byte[]> findNearestKey(Key key, boolean above, boolean inclusive) {
+        while (true) {
+            Node node = findNearest(key, above, inclusive);
+            if (node == null) {
+                return Optional.empty();
             }
-            return rotateLeft(node);
+            if (node.getValue() != null) {
+                return Optional.of(node.getKey().getBytes());
+            }
+
+            key = node.getKey();
+            inclusive = false;
         }
-        else if (balanceFactor < -1) {
-            if (balanceFactor(node.getLeft()) > 0) {
-                node.setLeft(rotateLeft(node.getLeft()));
+    }
+
+    private static Optional<byte[]> toOptional(Value value) {
+        return value == null ? Optional.empty() : Optional.of(value.value());
+    }
+
+    /**
+     * Copies the value into the buffer if it fits into the remaining space
+     *
+     * @return the length of the value, or -1 if there is no value
+     * */
+    private static int copyValue(Value value, ByteBuffer out) {
+        if (value == null) {
+            return -1;
+        }
+
+        byte[] bytes = value.value();
+        if (bytes.length <= out.remaining()) {
+            out.put(bytes);
+        }
+        return bytes.length;
+    }
+
+    /**
+     * Searches for the value of a key given as the remaining bytes of the buffer, without changing its position.
+     * A heap buffer is searched by its backing array, a direct buffer is copied into the per-thread key buffer first
+     *
+     * @return the value or {@code null} if there is no such key
+     * */
+    private Value findValue(ByteBuffer key) {
+        int length = key.remaining();
+        if (key.hasArray()) {
+            return findValue(key.array(), key.arrayOffset() + key.position(), length);
+        }
+
+        byte[] buffer = KEY_BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+            KEY_BUFFER.set(buffer);
+        }
+        key.get(key.position(), buffer, 0, length);
+        return findValue(buffer, 0, length);
+    }
+
+    /**
+     * @return the value of the key given as a slice of the array, or {@code null} if there is no such key
+     * */
+    private Value findValue(byte[] key, int offset, int length) {
+        TreeOperationEvent event = new TreeOperationEvent();
+        event.begin();
+        long start = operationStart();
+
+        Node found = find(key, offset, length);
+        Value value = found == null ? null : found.getValue();
+        if (budget != null && value != null) {
+            found.markReferenced();
+        }
+
+        recordOperation(TreeMetrics.Operation.GET, event, start, length);
+        return value;
+    }
+
+    /**
+     * Removes the value of the key with a single CAS and unlinks the node if it is not needed for routing
+     *
+     * @param expectedValue the value the key must be associated with, or {@code null} to remove any value
+     * @return the removed value, or {@code null} if nothing was removed
+     * */
+    private Value removeValue(Key key, byte[] expectedValue) {
+        TreeOperationEvent event = new TreeOperationEvent();
+        event.begin();
+        long start = operationStart();
+
+        byte[] bytes = key.getBytes();
+        Node node = find(bytes, 0, bytes.length);
+        Value removed = node == null ? null : removeValue(node, expectedValue);
+
+        recordOperation(TreeMetrics.Operation.REMOVE, event, start, bytes.length);
+        return removed;
+    }
+
+    /**
+     * See {@link ConcurrentAVLTree#removeValue(Key, byte[])}
+     *
+     * @param node the found node of the key
+     * */
+    private Value removeValue(Node node, byte[] expectedValue) {
+        while (true) {
+            Value value = node.getValue();
+            if (value == null) {
+                return null;
+            }
+            if (expectedValue != null && !Arrays.equals(value.value(), expectedValue)) {
+                return null;
+            }
+
+            if (node.compareAndSetValue(value, null)) {
+                recordRemove(node, value, false);
+                fixHeightAndRebalance(node);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Searches for a node with a specific key without locking. The search is restarted from the root
+     * every time a concurrent rotation invalidates the traversed path.
+     * The key is a slice of an array, so the lookups by a part of a larger buffer do not copy the key
+     *
+     * @return the found node or {@code null} if there is no such key
+     * */
+    private Node find(byte[] key, int offset, int length) {
+        long prefix = Key.prefix(key, offset, length);
+        while (true) {
+            Node node = root;
+            if (node == null) {
+                return node;
+            }
+
+            long version = node.getVersion();
+            if (isShrinking(version)) {
+                awaitChange(node, version);
+                continue;
+            }
+            if (node != root) {
+                continue;
+            }
+
+            Node found = attemptFind(node, version, prefix, key, offset, length);
+            if (found != RETRY_SEARCH) {
+                return found;
+            }
+        }
+    }
+
+    /**
+     * Optimistically searches for a key in the subtree of the given node.
+     * Every child is entered only after checking that its parent had not changed
+     * while the child and its version were being read, so the searched key is always
+     * within the range of the node the reader is in.
+     *
+     * @param version the version of the node observed when the node was entered
+     * @param prefix the prefix of the key slice, see {@link Key#prefix(byte[], int, int)}
+     * @return the found node, {@code null} if there is no such key,
+     * or {@link ConcurrentAVLTree#RETRY_SEARCH} if the path was changed by a rotation and the search must be restarted
+     * */
+    private Node attemptFind(Node node, long version, long prefix, byte[] key, int offset, int length) {
+        while (true) {
+            int comparison = node.compareKey(prefix, key, offset, length);
+            if (comparison == 0) {
+                return node;
+            }
+
+            Node child = comparison < 0 ? node.getLeft() : node.getRight();
+            if (node.getVersion() != version) {
+                return RETRY_SEARCH;
+            }
+            if (child == null) {
+                return child;
+            }
+
+            long childVersion = child.getVersion();
+            if (isShrinking(childVersion)) {
+                awaitChange(child, childVersion);
+                if (node.getVersion() != version) {
+                    return RETRY_SEARCH;
+                }
+                continue;
+            }
+            if (child != (comparison < 0 ? node.getLeft() : node.getRight())) {
+                if (node.getVersion() != version) {
+                    return RETRY_SEARCH;
+                }
+                continue;
+            }
+            if (node.getVersion() != version) {
+                return RETRY_SEARCH;
+            }
+
+            node = child;
+            version = childVersion;
+        }
+    }
+
+    /**
+     * Searches for the nearest node to the key without locking, restarting from the root like
+     * {@link ConcurrentAVLTree#find(byte[], int, int)}.
+     *
+     * @param key the key to search for, or {@code null} to search for the first or the last node
+     * @param above true to search for the least node greater than the key, false for the greatest node less than the key
+     * @param inclusive true if the node with the key itself can be returned
+     * @return the found node or {@code null} if there is no such node
+     * */
+    private Node findNearest(Key key, boolean above, boolean inclusive) {
+        while (true) {
+            Node node = root;
+            if (node == null) {
+                return node;
+            }
+
+            long version = node.getVersion();
+            if (isShrinking(version)) {
+                awaitChange(node, version);
+                continue;
+            }
+            if (node != root) {
+                continue;
+            }
+
+            Node found = attemptFindNearest(node, version, key, above, inclusive);
+            if (found != RETRY_SEARCH) {
+                return found;
+            }
+        }
+    }
+
+    /**
+     * Optimistically descends like {@link ConcurrentAVLTree#attemptFind(Node, long, long, byte[], int, int)},
+     * remembering the last node passed on the required side of the key
+     *
+     * @return the found node, {@code null} if there is no such node,
+     * or {@link ConcurrentAVLTree#RETRY_SEARCH} if the path was changed by a rotation and the search must be restarted
+     * */
+    private Node attemptFindNearest(Node node, long version, Key key, boolean above, boolean inclusive) {
+        Node candidate = null;
+        while (true) {
+            int comparison = key == null ? (above ? -1 : 1) : node.compareKey(key);
+            if (comparison == 0 && inclusive) {
+                return node;
+            }
+
+            boolean goLeft;
+            if (above) {
+                goLeft = comparison < 0;
+                if (goLeft) {
+                    candidate = node;
+                }
+            } else {
+                goLeft = comparison <= 0;
+                if (!goLeft) {
+                    candidate = node;
+                }
+            }
+
+            Node child = goLeft ? node.getLeft() : node.getRight();
+            if (node.getVersion() != version) {
+                return RETRY_SEARCH;
+            }
+            if (child == null) {
+                return candidate;
+            }
+
+            long childVersion = child.getVersion();
+            if (isShrinking(childVersion)) {
+                awaitChange(child, childVersion);
+                return RETRY_SEARCH;
+            }
+            if (child != (goLeft ? node.getLeft() : node.getRight()) || node.getVersion() != version) {
+                return RETRY_SEARCH;
+            }
+
+            node = child;
+            version = childVersion;
+        }
+    }
+
+    /**
+     * Optimistically descends like {@link ConcurrentAVLTree#attemptFind(Node, long, long, byte[], int, int)}.
+     * An existing key gets the new value without any lock. A missing key is linked as a new leaf under
+     * the lock of its parent, after which the path to the root is rebalanced.
+     * See {@link ConcurrentAVLTree#update(Key, Value, UnaryOperator)}
+     *
+     * @return the value the key had right before the update, or {@link ConcurrentAVLTree#RETRY}
+     * if the path was changed by a rotation and the update must be restarted
+     * */
+    private Value attemptUpdate(Node node, long version, Key key, Value value, UnaryOperator<Value> remapping) {
+        while (true) {
+            int comparison = node.compareKey(key);
+            if (comparison == 0) {
+                return updateFound(node, value, remapping);
+            }
+
+            Node child = comparison < 0 ? node.getLeft() : node.getRight();
+            if (node.getVersion() != version) {
+                return RETRY;
+            }
+
+            if (child == null) {
+                Value created = remap(null, value, remapping);
+                if (created == null) {
+                    return null;
+                }
+
+                long waitStart = lockWaitStart();
+                synchronized (node) {
+                    recordLockWait(waitStart);
+                    if (node.getVersion() != version) {
+                        return RETRY;
+                    }
+                    if ((comparison < 0 ? node.getLeft() : node.getRight()) != null) {
+                        continue;
+                    }
+
+                    if (comparison < 0) {
+                        node.setLeft(createNode(key, created, node));
+                    } else {
+                        node.setRight(createNode(key, created, node));
+                    }
+                }
+                recordInsert(key, created);
+                fixHeightAndRebalance(node);
+                return null;
+            }
+
+            long childVersion = child.getVersion();
+            if (isShrinking(childVersion)) {
+                awaitChange(child, childVersion);
+                if (node.getVersion() != version) {
+                    return RETRY;
+                }
+                continue;
+            }
+            if (child != (comparison < 0 ? node.getLeft() : node.getRight())) {
+                if (node.getVersion() != version) {
+                    return RETRY;
+                }
+                continue;
+            }
+            if (node.getVersion() != version) {
+                return RETRY;
+            }
+
+            node = child;
+            version = childVersion;
+        }
+    }
+
+    /**
+     * Sets the value of the found node. The value of an existing key is swapped with a CAS without any lock,
+     * a {@code null} value removes the key like {@link ConcurrentAVLTree#removeValue(Node, byte[])}.
+     * A routing node of a removed key is locked, because it might be being unlinked right now
+     *
+     * @return the value the key had right before the update, or {@link ConcurrentAVLTree#RETRY}
+     * if the node has been unlinked and the update must be restarted
+     * */
+    private Value updateFound(Node node, Value value, UnaryOperator<Value> remapping) {
+        while (true) {
+            Value current = node.getValue();
+            Value updated = remap(current, value, remapping);
+            if (updated == current) {
+                return current;
+            }
+
+            if (current != null) {
+                if (node.compareAndSetValue(current, updated)) {
+                    if (updated == null) {
+                        recordRemove(node, current, false);
+                        fixHeightAndRebalance(node);
+                    } else if (budget != null) {
+                        budget.recordUpdate(current.value().length, updated.value().length);
+                    }
+                    return current;
+                }
+                continue;
+            }
+
+            synchronized (node) {
+                if (isUnlinked(node.getVersion())) {
+                    return RETRY;
+                }
+                if (node.getValue() != null) {
+                    continue;
+                }
+                node.setValue(updated);
+            }
+            recordInsert(node.getKey(), updated);
+            return null;
+        }
+    }
+
+    /**
+     * Evicts entries with the clock sweep until the entries fit into the memory budget, if the tree is bounded.
+     * Must be called without holding any lock of the tree
+     * */
+    private void evictIfExceeded() {
+        if (budget == null || !budget.isExceeded()) {
+            return;
+        }
+
+        synchronized (evictionLock) {
+            int idlePasses = 0;
+            while (budget.isExceeded()) {
+                Node node = findNearest(clockHand, true, false);
+                if (node == null) {
+                    clockHand = null;
+                    if (++idlePasses > CLOCK_PASSES) {
+                        return;
+                    }
+                    continue;
+                }
+
+                clockHand = node.getKey();
+                Value value = node.getValue();
+                if (value == null || node.clearReferenced()) {
+                    continue;
+                }
+                if (node.compareAndSetValue(value, null)) {
+                    recordRemove(node, value, true);
+                    fixHeightAndRebalance(node);
+                    idlePasses = 0;
+                }
+            }
+        }
+    }
+
+    private void recordInsert(Key key, Value value) {
+        if (metrics != null) {
+            metrics.recordInserts(1);
+        }
+        if (budget != null) {
+            budget.recordInsert(key.getBytes().length, value.value().length);
+        }
+    }
+
+    private void recordRemove(Node node, Value value, boolean evicted) {
+        if (metrics != null) {
+            metrics.recordRemove();
+        }
+        if (budget != null) {
+            budget.recordRemove(node.getKey().getBytes().length, value.value().length, evicted);
+        }
+    }
+
+    /**
+     * Creates a new {@link Node} instance with provided key, value and parent.
+     * See {@link Node}
+     * */
+    private Node createNode(Key key, Value value, Node parent) {
+        return new Node(key, value)
+                .setParent(parent);
+    }
+
+    /**
+     * Creates a new unlinked {@link Node} instance from the entry
+     *
+     * @throws IllegalArgumentException if the key or the value is {@code null}
+     * */
+    private static Node createNode(Entry entry) throws IllegalArgumentException {
+        if (entry.key() == null || entry.value() == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+        return new Node(new Key(entry.key()), new Value(entry.value()));
+    }
+
+    /**
+     * Links the sorted nodes [from, to) into a perfectly balanced subtree: the middle node becomes the root,
+     * the halves on its sides become its subtrees
+     *
+     * @return the root of the subtree or {@code null} if the range is empty
+     * */
+    private static Node link(List<Node> nodes, int from, int to, Node parent) {
+        if (from >= to) {
+            return null;
+        }
+
+        int middle = (from + to) >>> 1;
+        Node node = nodes.get(middle).setParent(parent);
+        Node left = link(nodes, from, middle, node);
+        Node right = link(nodes, middle + 1, to, node);
+
+        return node.setLeft(left)
+                .setRight(right)
+                .setHeight(Math.max(heightOf(left), heightOf(right)) + 1);
+    }
+
+    /**
+     * @return true if the node with the given version is being rotated down right now
+     * */
+    private static boolean isShrinking(long version) {
+        return (version & 1L) != 0;
+    }
+
+    /**
+     * @return true if the node with the given version has been removed from the tree
+     * */
+    private static boolean isUnlinked(long version) {
+        return version == Node.UNLINKED;
+    }
+
+    /**
+     * @return true if the node is a routing node of a removed key which can be unlinked,
+     * because it has at most one child
+     * */
+    private static boolean canUnlink(Node node, Node left, Node right) {
+        return (left == null || right == null) && node.getValue() == null;
+    }
+
+    /**
+     * Waits until the node's version differs from the given one. Rotations are short, so the reader spins first
+     * and only then yields the processor to the writer.
+     * */
+    private static void awaitChange(Node node, long version) {
+        for (int spins = 0; node.getVersion() == version; spins++) {
+            if (spins < SPINS_BEFORE_YIELD) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return the start time of the operation, if the metrics are recorded
+     * */
+    private long operationStart() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the latency of the operation and commits the flight recorder event, if it is enabled and slow enough
+     * */
+    private void recordOperation(TreeMetrics.Operation operation, TreeOperationEvent event, long start, int keyLength) {
+        if (metrics != null) {
+            metrics.recordLatency(operation, System.nanoTime() - start);
+        }
+        if (event.shouldCommit()) {
+            event.operation = operation.name();
+            event.keyLength = keyLength;
+            event.height = heightOf(root);
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the time the lock is requested at, if the metrics are recorded
+     * */
+    private long lockWaitStart() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the time since the lock was requested. Must be called right after the lock is acquired
+     * */
+    private void recordLockWait(long start) {
+        if (metrics != null) {
+            metrics.recordLockWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param top the node at the top of the rotated subtree
+     * */
+    private void recordRotation(boolean doubleRotation, Node top) {
+        if (metrics != null) {
+            metrics.recordRotation();
+        }
+        RotationEvent event = new RotationEvent();
+        if (event.isEnabled()) {
+            event.doubleRotation = doubleRotation;
+            event.height = top.getHeight();
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the lock guarding the children of the node. The root is guarded by {@link ConcurrentAVLTree#rootLock}
+     * */
+    private Object lockOf(Node parent) {
+        return parent == null ? rootLock : parent;
+    }
+
+    /**
+     * @return the height of the node, 0 for an absent node
+     * */
+    private static int heightOf(Node node) {
+        return node == null ? 0 : node.getHeight();
+    }
+
+    /**
+     * @return balance factor: 0 if left and right subtrees have the same height.
+     * Greater than 0 if the right subtree is higher.
+     * Less than 0 if the left subtree is higher
+     * */
+    private int balanceFactor(Node node) {
+        return heightOf(node.getRight()) - heightOf(node.getLeft());
+    }
+
+    /**
+     * @return {@link ConcurrentAVLTree#UNLINK_REQUIRED} if the node is a routing node which can be unlinked,
+     * {@link ConcurrentAVLTree#REBALANCE_REQUIRED} if the node must be rotated,
+     * {@link ConcurrentAVLTree#NOTHING_REQUIRED} if the node is balanced and has the correct height,
+     * or the new height of the node otherwise
+     * */
+    private int nodeCondition(Node node) {
+        if (canUnlink(node, node.getLeft(), node.getRight())) {
+            return UNLINK_REQUIRED;
+        }
+
+        int balanceFactor = balanceFactor(node);
+        if (balanceFactor > 1 || balanceFactor < -1) {
+            return REBALANCE_REQUIRED;
+        }
+
+        int height = Math.max(heightOf(node.getLeft()), heightOf(node.getRight())) + 1;
+        return height != node.getHeight() ? height : NOTHING_REQUIRED;
+    }
+
+    /**
+     * Walks up from the node along the parent pointers, updating heights, rotating nodes and unlinking
+     * routing nodes until the tree above does not need any changes.
+     * Heights are updated under the lock of the node, rotations and unlinking under the locks of the parent and the node.
+     * <p>
+     * A rotation can leave several damaged nodes, but only the deepest one is returned to be fixed next.
+     * The parent and the node of every rotation are remembered and rechecked when the walk stops,
+     * otherwise a stale height above the rotation would never be fixed.
+     * */
+    private void fixHeightAndRebalance(Node node) {
+        ArrayDeque<Node> damaged = null;
+        while (true) {
+            if (node == null || isUnlinked(node.getVersion())) {
+                if (damaged == null || damaged.isEmpty()) {
+                    return;
+                }
+                node = damaged.pop();
+                continue;
+            }
+
+            int condition = nodeCondition(node);
+            if (condition == NOTHING_REQUIRED) {
+                node = null;
+            } else if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+                synchronized (node) {
+                    node = fixHeight(node);
+                }
+            } else {
+                Node parent = node.getParent();
+                long waitStart = lockWaitStart();
+                synchronized (lockOf(parent)) {
+                    recordLockWait(waitStart);
+                    if ((parent == null || !isUnlinked(parent.getVersion())) && node.getParent() == parent) {
+                        if (damaged == null) {
+                            damaged = new ArrayDeque<>();
+                        }
+                        if (parent != null) {
+                            damaged.push(parent);
+                        }
+                        damaged.push(node);
+
+                        synchronized (node) {
+                            node = balance(parent, node);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the node's height depending on the node's subtrees. Must be called under the lock of the node
+     *
+     * @return the next node to be fixed: the node itself if it must be rotated or unlinked, its parent if the height was changed,
+     * or {@code null} if nothing has to be done
+     * */
+    private Node fixHeight(Node node) {
+        if (node == null) {
+            return node;
+        }
+
+        int condition = nodeCondition(node);
+        if (condition == UNLINK_REQUIRED || condition == REBALANCE_REQUIRED) {
+            return node;
+        }
+        if (condition == NOTHING_REQUIRED) {
+            return null;
+        }
+
+        node.setHeight(condition);
+        return node.getParent();
+    }
+
+    /**
+     * AVL balancing. Unlinks the routing node if possible, otherwise provides height updating for the node
+     * and executes single or double rotation depending on the balance factor if needed.
+     * Must be called under the locks of the parent and the node
+     *
+     * @return the next node to be fixed, see {@link ConcurrentAVLTree#fixHeight(Node)}
+     * */
+    private Node balance(Node parent, Node node) {
+        Node left = node.getLeft();
+        Node right = node.getRight();
+        if (canUnlink(node, left, right)) {
+            return unlink(parent, node, left, right) ? fixHeight(parent) : node;
+        }
+        int leftHeight = heightOf(left);
+        int rightHeight = heightOf(right);
+
+        int balanceFactor = rightHeight - leftHeight;
+        if (balanceFactor > 1) {
+            return balanceToLeft(parent, node, right, leftHeight);
+        } else if (balanceFactor < -1) {
+            return balanceToRight(parent, node, left, rightHeight);
+        }
+
+        int height = Math.max(leftHeight, rightHeight) + 1;
+        if (height != node.getHeight()) {
+            node.setHeight(height);
+            return fixHeight(parent);
+        }
+        return null;
+    }
+
+    /**
+     * Rotates the left-heavy node to the right. Locks the left child, and its right child
+     * if a double rotation is needed. The heights are re-read under the locks, because they might have been changed
+     *
+     * @param rightHeight the height of the right subtree of the node, which cannot be changed while the node is locked
+     * */
+    private Node balanceToRight(Node parent, Node node, Node left, int rightHeight) {
+        synchronized (left) {
+            int leftHeight = heightOf(left);
+            if (leftHeight - rightHeight <= 1) {
+                return node;
+            }
+
+            Node leftRight = left.getRight();
+            int leftLeftHeight = heightOf(left.getLeft());
+            int leftRightHeight = heightOf(leftRight);
+            if (leftLeftHeight >= leftRightHeight) {
+                return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+            }
+
+            synchronized (leftRight) {
+                leftRightHeight = heightOf(leftRight);
+                if (leftLeftHeight >= leftRightHeight) {
+                    return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+                }
+
+                int leftRightLeftHeight = heightOf(leftRight.getLeft());
+                int difference = leftLeftHeight - leftRightLeftHeight;
+                if (difference >= -1 && difference <= 1) {
+                    return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightLeftHeight);
+                }
+            }
+
+            // The left child is unbalanced itself. The node will be balanced later, when the height of the child is fixed
+            return balanceToLeft(node, left, leftRight, leftLeftHeight);
+        }
+    }
+
+    /**
+     * Rotates the right-heavy node to the left. See {@link ConcurrentAVLTree#balanceToRight(Node, Node, Node, int)}
+     * */
+    private Node balanceToLeft(Node parent, Node node, Node right, int leftHeight) {
+        synchronized (right) {
+            int rightHeight = heightOf(right);
+            if (rightHeight - leftHeight <= 1) {
+                return node;
+            }
+
+            Node rightLeft = right.getLeft();
+            int rightRightHeight = heightOf(right.getRight());
+            int rightLeftHeight = heightOf(rightLeft);
+            if (rightRightHeight >= rightLeftHeight) {
+                return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+            }
+
+            synchronized (rightLeft) {
+                rightLeftHeight = heightOf(rightLeft);
+                if (rightRightHeight >= rightLeftHeight) {
+                    return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+                }
+
+                int rightLeftRightHeight = heightOf(rightLeft.getRight());
+                int difference = rightRightHeight - rightLeftRightHeight;
+                if (difference >= -1 && difference <= 1) {
+                    return rotateLeftOverRight(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftRightHeight);
+                }
+            }
+
+            // The right child is unbalanced itself. The node will be balanced later, when the height of the child is fixed
+            return balanceToRight(node, right, rightLeft, rightRightHeight);
+        }
+    }
+
+    /**
+     * Right AVL rotation. The node is marked as shrinking until its parent points to the replacement,
+     * so optimistic readers never enter the node with a range that no longer contains their key.
+     * Must be called under the locks of the parent, the node and its left child
+     *
+     * @return the next node to be fixed, see {@link ConcurrentAVLTree#fixHeight(Node)}
+     * */
+    private Node rotateRight(Node parent, Node node, Node left, int rightHeight,
+                             int leftLeftHeight, Node leftRight, int leftRightHeight) {
+        node.beginChange();
+
+        node.setLeft(leftRight);
+        if (leftRight != null) {
+            leftRight.setParent(node);
+        }
+
+        left.setRight(node);
+        node.setParent(left);
+
+        replaceChild(parent, node, left);
+        left.setParent(parent);
+
+        int nodeHeight = Math.max(leftRightHeight, rightHeight) + 1;
+        node.setHeight(nodeHeight);
+        left.setHeight(Math.max(leftLeftHeight, nodeHeight) + 1);
+
+        node.endChange();
+        recordRotation(false, left);
+
+        int nodeBalance = rightHeight - leftRightHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((leftRight == null || rightHeight == 0) && node.getValue() == null) {
+            return node;
+        }
+        int leftBalance = nodeHeight - leftLeftHeight;
+        if (leftBalance < -1 || leftBalance > 1) {
+            return left;
+        }
+        if (leftLeftHeight == 0 && left.getValue() == null) {
+            return left;
+        }
+        return fixHeight(parent);
+    }
+
+    /**
+     * Left AVL rotation. See {@link ConcurrentAVLTree#rotateRight(Node, Node, Node, int, int, Node, int)}
+     * */
+    private Node rotateLeft(Node parent, Node node, Node right, int leftHeight,
+                            int rightRightHeight, Node rightLeft, int rightLeftHeight) {
+        node.beginChange();
+
+        node.setRight(rightLeft);
+        if (rightLeft != null) {
+            rightLeft.setParent(node);
+        }
+
+        right.setLeft(node);
+        node.setParent(right);
+
+        replaceChild(parent, node, right);
+        right.setParent(parent);
+
+        int nodeHeight = Math.max(leftHeight, rightLeftHeight) + 1;
+        node.setHeight(nodeHeight);
+        right.setHeight(Math.max(nodeHeight, rightRightHeight) + 1);
+
+        node.endChange();
+        recordRotation(false, right);
+
+        int nodeBalance = rightLeftHeight - leftHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((rightLeft == null || leftHeight == 0) && node.getValue() == null) {
+            return node;
+        }
+        int rightBalance = rightRightHeight - nodeHeight;
+        if (rightBalance < -1 || rightBalance > 1) {
+            return right;
+        }
+        if (rightRightHeight == 0 && right.getValue() == null) {
+            return right;
+        }
+        return fixHeight(parent);
+    }
+
+    /**
+     * Double rotation: left rotation of the left child followed by right rotation of the node, done in one step.
+     * Both the node and its left child are shrinking. Must be called under the locks of the parent,
+     * the node, its left child and the right child of the left child
+     *
+     * @return the next node to be fixed, see {@link ConcurrentAVLTree#fixHeight(Node)}
+     * */
+    private Node rotateRightOverLeft(Node parent, Node node, Node left, int rightHeight,
+                                     int leftLeftHeight, Node leftRight, int leftRightLeftHeight) {
+        Node leftRightLeft = leftRight.getLeft();
+        Node leftRightRight = leftRight.getRight();
+        int leftRightRightHeight = heightOf(leftRightRight);
+
+        node.beginChange();
+        left.beginChange();
+
+        node.setLeft(leftRightRight);
+        if (leftRightRight != null) {
+            leftRightRight.setParent(node);
+        }
+
+        left.setRight(leftRightLeft);
+        if (leftRightLeft != null) {
+            leftRightLeft.setParent(left);
+        }
+
+        leftRight.setLeft(left);
+        left.setParent(leftRight);
+        leftRight.setRight(node);
+        node.setParent(leftRight);
+
+        replaceChild(parent, node, leftRight);
+        leftRight.setParent(parent);
+
+        int nodeHeight = Math.max(leftRightRightHeight, rightHeight) + 1;
+        node.setHeight(nodeHeight);
+        int leftNewHeight = Math.max(leftLeftHeight, leftRightLeftHeight) + 1;
+        left.setHeight(leftNewHeight);
+        leftRight.setHeight(Math.max(leftNewHeight, nodeHeight) + 1);
+
+        node.endChange();
+        left.endChange();
+        recordRotation(true, leftRight);
+
+        int nodeBalance = rightHeight - leftRightRightHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((leftRightRight == null || rightHeight == 0) && node.getValue() == null) {
+            return node;
+        }
+        if ((leftLeftHeight == 0 || leftRightLeft == null) && left.getValue() == null) {
+            return left;
+        }
+        int leftRightBalance = nodeHeight - leftNewHeight;
+        if (leftRightBalance < -1 || leftRightBalance > 1) {
+            return leftRight;
+        }
+        return fixHeight(parent);
+    }
+
+    /**
+     * Double rotation: right rotation of the right child followed by left rotation of the node.
+     * See {@link ConcurrentAVLTree#rotateRightOverLeft(Node, Node, Node, int, int, Node, int)}
+     * */
+    private Node rotateLeftOverRight(Node parent, Node node, Node right, int leftHeight,
+                                     int rightRightHeight, Node rightLeft, int rightLeftRightHeight) {
+        Node rightLeftLeft = rightLeft.getLeft();
+        Node rightLeftRight = rightLeft.getRight();
+        int rightLeftLeftHeight = heightOf(rightLeftLeft);
+
+        node.beginChange();
+        right.beginChange();
+
+        node.setRight(rightLeftLeft);
+        if (rightLeftLeft != null) {
+            rightLeftLeft.setParent(node);
+        }
+
+        right.setLeft(rightLeftRight);
+        if (rightLeftRight != null) {
+            rightLeftRight.setParent(right);
+        }
+
+        rightLeft.setRight(right);
+        right.setParent(rightLeft);
+        rightLeft.setLeft(node);
+        node.setParent(rightLeft);
+
+        replaceChild(parent, node, rightLeft);
+        rightLeft.setParent(parent);
+
+        int nodeHeight = Math.max(leftHeight, rightLeftLeftHeight) + 1;
+        node.setHeight(nodeHeight);
+        int rightNewHeight = Math.max(rightLeftRightHeight, rightRightHeight) + 1;
+        right.setHeight(rightNewHeight);
+        rightLeft.setHeight(Math.max(nodeHeight, rightNewHeight) + 1);
+
+        node.endChange();
+        right.endChange();
+        recordRotation(true, rightLeft);
+
+        int nodeBalance = rightLeftLeftHeight - leftHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((rightLeftLeft == null || leftHeight == 0) && node.getValue() == null) {
+            return node;
+        }
+        if ((rightRightHeight == 0 || rightLeftRight == null) && right.getValue() == null) {
+            return right;
+        }
+        int rightLeftBalance = rightNewHeight - nodeHeight;
+        if (rightLeftBalance < -1 || rightLeftBalance > 1) {
+            return rightLeft;
+        }
+        return fixHeight(parent);
+    }
+
+    /**
+     * Unlinks the routing node with at most one child by linking its only child directly to the parent.
+     * Must be called under the locks of the parent and the node
+     *
+     * @return false if the node is not a child of the parent anymore
+     * */
+    private boolean unlink(Node parent, Node node, Node left, Node right) {
+        boolean isChild = parent == null
+                ? root == node
+                : parent.getLeft() == node || parent.getRight() == node;
+        if (!isChild) {
+            return false;
+        }
+
+        Node splice = left != null ? left : right;
+        replaceChild(parent, node, splice);
+        if (splice != null) {
+            splice.setParent(parent);
+        }
+
+        node.unlink();
+        return true;
+    }
+
+    /**
+     * Replaces the child of the parent (or the root if the parent is {@code null}) with another node.
+     * Must be called under the lock of the parent
+     * */
+    private void replaceChild(Node parent, Node child, Node replacement) {
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.getLeft() == child) {
+            parent.setLeft(replacement);
+        } else {
+            parent.setRight(replacement);
+        }
+    }
+
+    /**
+     * A node pushed on the stack of the {@link RangeIterator} with the version it had when it was entered
+     * */
+    private record Frame(Node node, long version) {}
+
+    /**
+     * The spliterator over the keys in the range [fromKey, toKey). Splits into [fromKey, key) and [key, toKey)
+     * at the key of the highest node in the range until the traversal starts. The split key is found by a plain
+     * descent without validation: a concurrent rotation can only make it a worse split, any key of the range
+     * splits it correctly
+     * */
+    private class RangeSpliterator implements Spliterator<Entry> {
+
+        private final Key toKey;
+        private Key fromKey;
+
+        /**
+         * The height of the subtree holding the range, see {@link RangeSpliterator#estimateSize()}
+         * */
+        private int height;
+
+        private RangeIterator iterator;
+
+        RangeSpliterator(Key fromKey, Key toKey, int height) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.height = height;
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry> action) {
+            if (iterator == null) {
+                iterator = new RangeIterator(fromKey, toKey);
+            }
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            action.accept(iterator.next());
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public void forEachRemaining(Consumer<? super Entry> action) {
+            if (iterator == null) {
+                iterator = new RangeIterator(fromKey, toKey);
+            }
+            iterator.forEachRemaining(action);
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public Spliterator<Entry> trySplit() {
+            if (iterator != null) {
+                return null;
+            }
+
+            Node node = root;
+            while (node != null) {
+                if (fromKey != null && node.compareKey(fromKey) >= 0) {
+                    node = node.getRight();
+                } else if (toKey != null && node.compareKey(toKey) <= 0) {
+                    node = node.getLeft();
+                } else {
+                    break;
+                }
+            }
+            if (node == null || node.getHeight() <= 1) {
+                return null;
+            }
+
+            height = node.getHeight() - 1;
+            Spliterator<Entry> prefix = new RangeSpliterator(fromKey, node.getKey(), height);
+            fromKey = node.getKey();
+            return prefix;
+        }
+
+        /**
+         * @return the number of nodes of a full subtree of the height of the range, an upper bound
+         * for a balanced tree
+         * */
+        @Override
+        public long estimateSize() {
+            return height >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << height) - 1;
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | NONNULL;
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public Comparator<? super Entry> getComparator() {
+            return Entry.KEY_ORDER;
+        }
+    }
+
+    /**
+     * The range iterator. The stack holds the nodes whose keys are still to be returned,
+     * the least key on the top. A node whose version has not changed since it was pushed has not been rotated down,
+     * so its right subtree still holds all the keys up to the next node on the stack
+     * */
+    private class RangeIterator implements Iterator<Entry> {
+
+        private final Key toKey;
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+
+        private Key lowerBound;
+        private boolean lowerBoundInclusive;
+        private Entry next;
+
+        RangeIterator(Key fromKey, Key toKey) {
+            this.toKey = toKey;
+            this.lowerBound = fromKey;
+            this.lowerBoundInclusive = true;
+            seek();
+            advance();
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         * */
+        @Override
+        public Entry next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry entry = next;
+            advance();
+            return entry;
+        }
+
+        /**
+         * Pops the nodes from the stack until the next entry in the range is found
+         * */
+        private void advance() {
+            next = null;
+            while (!stack.isEmpty()) {
+                Frame frame = stack.pop();
+                Node node = frame.node();
+                if (node.getVersion() != frame.version()) {
+                    seek();
+                    continue;
+                }
+
+                if (toKey != null && node.compareKey(toKey) <= 0) {
+                    stack.clear();
+                    return;
+                }
+                if (!pushLeftPath(node.getRight(), node, frame.version(), true)) {
+                    seek();
+                    continue;
+                }
+                Value value = node.getValue();
+                if (value == null || !isAboveLowerBound(node)) {
+                    continue;
+                }
+
+                lowerBound = node.getKey();
+                lowerBoundInclusive = false;
+                next = new Entry(lowerBound.getBytes(), value.value());
+                return;
+            }
+        }
+
+        /**
+         * @return true if the node's key is above the lower bound, so it has not been returned yet
+         * */
+        private boolean isAboveLowerBound(Node node) {
+            if (lowerBound == null) {
+                return true;
+            }
+            int comparison = node.compareKey(lowerBound);
+            return comparison < 0 || (comparison == 0 && lowerBoundInclusive);
+        }
+
+        /**
+         * Rebuilds the stack by descending from the root: the nodes above the lower bound are pushed
+         * and the descent continues to the left, the other nodes are skipped to the right
+         * */
+        private void seek() {
+            while (true) {
+                stack.clear();
+                Node node = root;
+                if (node == null) {
+                    return;
+                }
+
+                long version = node.getVersion();
+                if (isShrinking(version)) {
+                    awaitChange(node, version);
+                    continue;
+                }
+                if (node != root) {
+                    continue;
+                }
+
+                if (pushLeftPath(node, null, 0, false)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Descends from the node, validating every step
+         * like {@link ConcurrentAVLTree#attemptFind(Node, long, long, byte[], int, int)}.
+         *
+         * @param parent the already validated parent of the node, or {@code null} if the node is the root
+         * @param parentVersion the version of the parent observed when the parent was entered
+         * @param leftmost true to push the whole left path of the node,
+         *                 false to push only the nodes above the lower bound
+         * @return false if the path was changed by a rotation and the stack must be rebuilt
+         * */
+        private boolean pushLeftPath(Node node, Node parent, long parentVersion, boolean leftmost) {
+            while (node != null) {
+                long version = node.getVersion();
+                if (isShrinking(version)) {
+                    awaitChange(node, version);
+                    return false;
+                }
+                if (parent != null) {
+                    boolean isChild = parent.getLeft() == node || parent.getRight() == node;
+                    if (!isChild || parent.getVersion() != parentVersion) {
+                        return false;
+                    }
+                } else if (root != node) {
+                    return false;
+                }
+
+                boolean goLeft = leftmost || isAboveLowerBound(node);
+                if (goLeft) {
+                    stack.push(new Frame(node, version));
+                }
+
+                parent = node;
+                parentVersion = version;
+                node = goLeft ? node.getLeft() : node.getRight();
             }
-            return rotateRight(node);
+            return parent == null || parent.getVersion() == parentVersion;
         }
-        return node;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,373 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.wal.WriteAheadLog;
+import com.hlianole.jetbrains.internship.tree.wal.WriteAheadLog.SyncPolicy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * A {@link ConcurrentAVLTree} whose changes are logged to a {@link WriteAheadLog} before they are acknowledged.
+ * The log is replayed on open, consecutive puts going through {@link ConcurrentAVLTree#putAll(Iterable)}.
+ * <p>
+ * A change is appended to the log and applied to the tree under one of {@link DurableTree#STRIPES} locks,
+ * so the changes of the same key are logged in the order they are applied. The wait for the disk happens
+ * after the lock is released: concurrent writers are committed by a single force of the log.
+ * The readers are never blocked and can see a change before it is durable
+ * */
+public class DurableTree implements Tree, AutoCloseable {
+
+    private static final int STRIPES = 64;
+
+    /**
+     * How many consecutive puts of the log are replayed by one {@link ConcurrentAVLTree#putAll(Iterable)}
+     * */
+    private static final int REPLAY_BATCH = 1 << 16;
+
+    private final ConcurrentAVLTree tree;
+    private final WriteAheadLog log;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    private DurableTree(ConcurrentAVLTree tree, WriteAheadLog log) {
+        this.tree = tree;
+        this.log = log;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Opens or creates the tree logged to the file, replaying the log
+     *
+     * @param syncInterval how often the log is forced with {@link SyncPolicy#PERIODIC}
+     * */
+    public static DurableTree open(Path log, SyncPolicy policy, Duration syncInterval) throws IOException {
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        List<Entry> batch = new ArrayList<>();
+        WriteAheadLog.Replay replay = new WriteAheadLog.Replay() {
+            @Override
+            public void put(byte[] key, byte[] value) {
+                batch.add(new Entry(key, value));
+                if (batch.size() == REPLAY_BATCH) {
+                    flush();
+                }
+            }
+
+            @Override
+            public void remove(byte[] key) {
+                flush();
+                tree.remove(key);
+            }
+
+            private void flush() {
+                tree.putAll(batch);
+                batch.clear();
+            }
+        };
+
+        WriteAheadLog wal = WriteAheadLog.open(log, policy, syncInterval, replay);
+        tree.putAll(batch);
+        return new DurableTree(tree, wal);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        return tree.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        return tree.get(key, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(ByteBuffer key) throws IllegalArgumentException {
+        return tree.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public int getInto(byte[] key, int offset, int length, ByteBuffer out) throws IllegalArgumentException {
+        return tree.getInto(key, offset, length, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public int getInto(ByteBuffer key, ByteBuffer out) throws IllegalArgumentException {
+        return tree.getInto(key, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean containsKey(byte[] key, int offset, int length) throws IllegalArgumentException {
+        return tree.containsKey(key, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean containsKey(ByteBuffer key) throws IllegalArgumentException {
+        return tree.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException, UncheckedIOException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        long sequenceNumber;
+        ReentrantLock lock = lockOf(key);
+        lock.lock();
+        try {
+            sequenceNumber = log.appendPut(key, value);
+            tree.put(key, value);
+        } finally {
+            lock.unlock();
+        }
+        log.commit(sequenceNumber);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The whole batch is committed at once, under all the locks
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     * */
+    @Override
+    public void putAll(Iterable<Entry> entries) throws IllegalArgumentException, UncheckedIOException {
+        List<Entry> batch = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.key() == null || entry.value() == null) {
+                throw new IllegalArgumentException("Key and value cannot be null");
+            }
+            batch.add(entry);
+        }
+
+        long sequenceNumber = -1;
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            for (Entry entry : batch) {
+                sequenceNumber = log.appendPut(entry.key(), entry.value());
+            }
+            tree.putAll(batch);
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+        if (sequenceNumber >= 0) {
+            log.commit(sequenceNumber);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException, UncheckedIOException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        Optional<byte[]> removed;
+        long sequenceNumber;
+        ReentrantLock lock = lockOf(key);
+        lock.lock();
+        try {
+            removed = tree.get(key);
+            if (removed.isEmpty()) {
+                return removed;
+            }
+            sequenceNumber = log.appendRemove(key);
+            tree.remove(key);
+        } finally {
+            lock.unlock();
+        }
+        log.commit(sequenceNumber);
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException, UncheckedIOException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
+
+        long sequenceNumber;
+        ReentrantLock lock = lockOf(key);
+        lock.lock();
+        try {
+            Optional<byte[]> current = tree.get(key);
+            if (current.isEmpty() || !Arrays.equals(current.get(), expectedValue)) {
+                return false;
+            }
+            sequenceNumber = log.appendRemove(key);
+            tree.remove(key);
+        } finally {
+            lock.unlock();
+        }
+        log.commit(sequenceNumber);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The result is logged as a put or a remove, nothing is logged if the value is unchanged
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException, UncheckedIOException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+
+        byte[] updated;
+        long sequenceNumber;
+        ReentrantLock lock = lockOf(key);
+        lock.lock();
+        try {
+            byte[] previous = tree.get(key).orElse(null);
+            updated = remappingFunction.apply(key, previous);
+            if (updated == previous) {
+                return Optional.ofNullable(updated);
+            }
+
+            if (updated == null) {
+                sequenceNumber = log.appendRemove(key);
+                tree.remove(key);
+            } else {
+                sequenceNumber = log.appendPut(key, updated);
+                tree.put(key, updated);
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.commit(sequenceNumber);
+        return Optional.ofNullable(updated);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        return tree.floor(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        return tree.ceiling(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        return tree.higher(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        return tree.lower(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return tree.firstKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return tree.lastKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return tree.scan(fromKey, toKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Spliterator<Entry> spliterator() {
+        return tree.spliterator();
+    }
+
+    /**
+     * Forces the log to the disk and closes it. The tree must not be changed afterwards
+     * */
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private ReentrantLock lockOf(byte[] key) {
+        return locks[(Arrays.hashCode(key) & Integer.MAX_VALUE) % STRIPES];
+    }
+}
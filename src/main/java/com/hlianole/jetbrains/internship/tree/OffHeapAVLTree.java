@@ -0,0 +1,272 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Key;
+import com.hlianole.jetbrains.internship.tree.memory.OffHeapArena;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Extends {@link AbstractIndexedAVLTree}
+ * <p>
+ * An AVL tree keeping both the nodes and the key and value bytes off-heap, so the heap footprint
+ * and the work of the garbage collector do not grow with the number of entries.
+ * <p>
+ * Every node is a fixed-size record in a native {@link MemorySegment} chunk. The record holds the children,
+ * the height, the first 8 bytes of the key (see {@link Key}) and the addresses of the key and the value
+ * in an {@link OffHeapArena}. Freed records are reused through a free list linked through their left child field.
+ * <p>
+ * The chunks are allocated from a shared {@link Arena}, so the memory is limited only by the machine,
+ * not by the heap or {@code -XX:MaxDirectMemorySize}. The tree must be closed to free the memory.
+ * A closed tree throws {@link IllegalStateException}
+ * */
+public class OffHeapAVLTree extends AbstractIndexedAVLTree implements AutoCloseable {
+
+    private static final int LEFT = 0;
+    private static final int RIGHT = 4;
+    private static final int HEIGHT = 8;
+    private static final int KEY_LENGTH = 12;
+    private static final int KEY_PREFIX = 16;
+    private static final int KEY_ADDRESS = 24;
+    private static final int VALUE_ADDRESS = 32;
+    private static final int VALUE_LENGTH = 40;
+    private static final int RECORD_SIZE = 48;
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int RECORDS_PER_CHUNK = 1 << CHUNK_SHIFT;
+
+    private final OffHeapArena arena = new OffHeapArena();
+    private final Arena memory = Arena.ofShared();
+
+    private MemorySegment[] records = new MemorySegment[16];
+    private int nextNode = 1;
+    private int freeNodes = NIL;
+    private boolean closed;
+
+    /**
+     * @return the number of off-heap bytes reserved by the tree, 0 once it is closed
+     * */
+    public long offHeapBytes() {
+        writeLock().lock();
+        try {
+            if (closed) {
+                return 0;
+            }
+            long chunks = nextNode == 1 ? 0 : ((nextNode - 1) >>> CHUNK_SHIFT) + 1;
+            return chunks * RECORDS_PER_CHUNK * RECORD_SIZE + arena.reservedBytes();
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Frees the memory of the tree. Every later operation throws {@link IllegalStateException}
+     * */
+    @Override
+    public void close() {
+        writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                records = null;
+                memory.close();
+                arena.close();
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void ensureOpen() throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The tree is closed");
+        }
+    }
+
+    @Override
+    protected int left(int node) {
+        return getInt(node, LEFT);
+    }
+
+    @Override
+    protected int right(int node) {
+        return getInt(node, RIGHT);
+    }
+
+    @Override
+    protected int height(int node) {
+        return getInt(node, HEIGHT);
+    }
+
+    @Override
+    protected void setLeft(int node, int left) {
+        putInt(node, LEFT, left);
+    }
+
+    @Override
+    protected void setRight(int node, int right) {
+        putInt(node, RIGHT, right);
+    }
+
+    @Override
+    protected void setHeight(int node, int height) {
+        putInt(node, HEIGHT, height);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected int compareKey(int node, long prefix, byte[] key, int offset, int length) {
+        long nodePrefix = getLong(node, KEY_PREFIX);
+        if (nodePrefix != prefix) {
+            return Long.compareUnsigned(prefix, nodePrefix);
+        }
+
+        int nodeLength = getInt(node, KEY_LENGTH);
+        int from = Math.min(Long.BYTES, Math.min(nodeLength, length));
+        return arena.compare(getLong(node, KEY_ADDRESS), nodeLength, from, key, offset, length);
+    }
+
+    @Override
+    protected byte[] key(int node) {
+        return arena.read(getLong(node, KEY_ADDRESS), getInt(node, KEY_LENGTH));
+    }
+
+    @Override
+    protected byte[] value(int node) {
+        return arena.read(getLong(node, VALUE_ADDRESS), getInt(node, VALUE_LENGTH));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected int copyValue(int node, ByteBuffer out) {
+        int length = getInt(node, VALUE_LENGTH);
+        if (length <= out.remaining()) {
+            arena.copy(getLong(node, VALUE_ADDRESS), length, out);
+        }
+        return length;
+    }
+
+    @Override
+    protected boolean valueEquals(int node, byte[] value) {
+        return arena.contentEquals(getLong(node, VALUE_ADDRESS), getInt(node, VALUE_LENGTH), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected int allocate(byte[] key, byte[] value) {
+        int node = allocateRecord();
+        putInt(node, LEFT, NIL);
+        putInt(node, RIGHT, NIL);
+        putInt(node, HEIGHT, 1);
+
+        long keyAddress = arena.allocate(key.length);
+        arena.write(keyAddress, key);
+        putInt(node, KEY_LENGTH, key.length);
+        putLong(node, KEY_PREFIX, Key.prefix(key, 0, key.length));
+        putLong(node, KEY_ADDRESS, keyAddress);
+
+        long valueAddress = arena.allocate(value.length);
+        arena.write(valueAddress, value);
+        putLong(node, VALUE_ADDRESS, valueAddress);
+        putInt(node, VALUE_LENGTH, value.length);
+        return node;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The block of the old value is reused if the new value has the same size class
+     * */
+    @Override
+    protected void setValue(int node, byte[] value) {
+        long address = arena.reallocate(getLong(node, VALUE_ADDRESS), getInt(node, VALUE_LENGTH), value.length);
+        arena.write(address, value);
+        putLong(node, VALUE_ADDRESS, address);
+        putInt(node, VALUE_LENGTH, value.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void moveEntry(int from, int to) {
+        arena.free(getLong(to, KEY_ADDRESS), getInt(to, KEY_LENGTH));
+        arena.free(getLong(to, VALUE_ADDRESS), getInt(to, VALUE_LENGTH));
+
+        putInt(to, KEY_LENGTH, getInt(from, KEY_LENGTH));
+        putLong(to, KEY_PREFIX, getLong(from, KEY_PREFIX));
+        putLong(to, KEY_ADDRESS, getLong(from, KEY_ADDRESS));
+        putLong(to, VALUE_ADDRESS, getLong(from, VALUE_ADDRESS));
+        putInt(to, VALUE_LENGTH, getInt(from, VALUE_LENGTH));
+        freeRecord(from);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void free(int node) {
+        arena.free(getLong(node, KEY_ADDRESS), getInt(node, KEY_LENGTH));
+        arena.free(getLong(node, VALUE_ADDRESS), getInt(node, VALUE_LENGTH));
+        freeRecord(node);
+    }
+
+    private int allocateRecord() {
+        if (freeNodes != NIL) {
+            int node = freeNodes;
+            freeNodes = getInt(node, LEFT);
+            return node;
+        }
+
+        if (nextNode == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many entries");
+        }
+        int node = nextNode++;
+        int chunk = node >>> CHUNK_SHIFT;
+        if (chunk == records.length) {
+            records = Arrays.copyOf(records, records.length * 2);
+        }
+        if (records[chunk] == null) {
+            records[chunk] = memory.allocate((long) RECORDS_PER_CHUNK * RECORD_SIZE, Long.BYTES);
+        }
+        return node;
+    }
+
+    private void freeRecord(int node) {
+        putInt(node, LEFT, freeNodes);
+        freeNodes = node;
+    }
+
+    private int getInt(int node, int field) {
+        return records[node >>> CHUNK_SHIFT].get(ValueLayout.JAVA_INT, recordOffset(node) + field);
+    }
+
+    private long getLong(int node, int field) {
+        return records[node >>> CHUNK_SHIFT].get(ValueLayout.JAVA_LONG, recordOffset(node) + field);
+    }
+
+    private void putInt(int node, int field, int value) {
+        records[node >>> CHUNK_SHIFT].set(ValueLayout.JAVA_INT, recordOffset(node) + field, value);
+    }
+
+    private void putLong(int node, int field, long value) {
+        records[node >>> CHUNK_SHIFT].set(ValueLayout.JAVA_LONG, recordOffset(node) + field, value);
+    }
+
+    private static long recordOffset(int node) {
+        return (long) (node & (RECORDS_PER_CHUNK - 1)) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,645 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.data.Key;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * A persistent (path-copying) AVL tree. The nodes are immutable: a change copies the nodes on the path
+ * from the root to the changed key, O(log n) of them, and publishes the new root with a single CAS.
+ * A writer whose CAS fails rebuilds its path from the new root and tries again.
+ * <p>
+ * Readers never lock and never retry: they read the root once and see the whole tree as of that moment.
+ * For the same reason {@link PersistentAVLTree#snapshot()} takes O(1), and a scan is a consistent
+ * point-in-time view however long it runs.
+ * <p>
+ * Concurrent writers do not run in parallel, they race for the root. The tree suits read-mostly workloads
+ * and the consumers needing consistent views: backups, long scans
+ * */
+public class PersistentAVLTree implements Tree {
+
+    private static final VarHandle ROOT;
+
+    static {
+        try {
+            ROOT = MethodHandles.lookup().findVarHandle(PersistentAVLTree.class, "root", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Per-thread buffer the keys from direct {@link ByteBuffer}s are copied into, see {@link ConcurrentAVLTree}
+     * */
+    private static final ThreadLocal<byte[]> KEY_BUFFER = ThreadLocal.withInitial(() -> new byte[64]);
+
+    /**
+     * The root of the current version of the tree, {@code null} if the tree is empty
+     * */
+    private volatile Node root;
+
+    public PersistentAVLTree() {
+        this(null);
+    }
+
+    private PersistentAVLTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Builds a perfectly balanced tree from the entries sorted by key in O(n)
+     *
+     * @param sortedEntries entries in strictly ascending key order. Keys and values must not be {@code null}
+     * @throws IllegalArgumentException if the entries are not sorted or contain {@code null}
+     * */
+    public static PersistentAVLTree fromSorted(Iterable<Entry> sortedEntries) throws IllegalArgumentException {
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : sortedEntries) {
+            checkEntry(entry);
+            if (!entries.isEmpty() && Arrays.compareUnsigned(entries.get(entries.size() - 1).key(), entry.key()) >= 0) {
+                throw new IllegalArgumentException("Entries must be sorted by key in strictly ascending order");
+            }
+            entries.add(entry);
+        }
+        return new PersistentAVLTree(build(entries, 0, entries.size()));
+    }
+
+    /**
+     * Takes a snapshot of the tree in O(1). The snapshot shares all the nodes with the tree;
+     * the later changes of the tree are not visible in the snapshot and vice versa
+     * */
+    public PersistentAVLTree snapshot() {
+        return new PersistentAVLTree(root);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        return Optional.ofNullable(findValue(root, key, 0, key.length));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The slice is compared in place, no key is allocated
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        return Optional.ofNullable(findValue(root, key, offset, length));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * No key is allocated
+     * */
+    @Override
+    public Optional<byte[]> get(ByteBuffer key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        return Optional.ofNullable(findValue(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public int getInto(byte[] key, int offset, int length, ByteBuffer out) throws IllegalArgumentException {
+        if (key == null || out == null) {
+            throw new IllegalArgumentException("Key and output buffer cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        return copyValue(findValue(root, key, offset, length), out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public int getInto(ByteBuffer key, ByteBuffer out) throws IllegalArgumentException {
+        if (key == null || out == null) {
+            throw new IllegalArgumentException("Key and output buffer cannot be null");
+        }
+
+        return copyValue(findValue(key), out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public boolean containsKey(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+
+        return findValue(root, key, offset, length) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Allocates nothing
+     * */
+    @Override
+    public boolean containsKey(ByteBuffer key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        return findValue(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Copies the path to the key and publishes the new root with a CAS
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        Key wrappedKey = new Key(key);
+        while (true) {
+            Node current = root;
+            if (ROOT.compareAndSet(this, current, insert(current, wrappedKey, value))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entries are sorted once, the duplicates are dropped, and the whole batch is published
+     * with a single CAS: readers see either none or all of it. An empty tree is replaced
+     * with a perfectly balanced one built from the batch
+     * */
+    @Override
+    public void putAll(Iterable<Entry> entries) throws IllegalArgumentException {
+        List<Entry> sorted = new ArrayList<>();
+        for (Entry entry : entries) {
+            checkEntry(entry);
+            sorted.add(entry);
+        }
+        sorted.sort((first, second) -> Arrays.compareUnsigned(first.key(), second.key()));
+
+        List<Entry> unique = new ArrayList<>(sorted.size());
+        List<Key> keys = new ArrayList<>(sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i + 1 == sorted.size() || !Arrays.equals(sorted.get(i).key(), sorted.get(i + 1).key())) {
+                unique.add(sorted.get(i));
+                keys.add(new Key(sorted.get(i).key()));
+            }
+        }
+
+        while (true) {
+            Node current = root;
+            Node updated;
+            if (current == null) {
+                updated = build(unique, 0, unique.size());
+            } else {
+                updated = current;
+                for (int i = 0; i < unique.size(); i++) {
+                    updated = insert(updated, keys.get(i), unique.get(i).value());
+                }
+            }
+            if (ROOT.compareAndSet(this, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        return Optional.ofNullable(removeValue(new Key(key), null));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
+
+        return removeValue(new Key(key), expectedValue) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The function is called again on the new root if a concurrent writer published it first
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+
+        Key wrappedKey = new Key(key);
+        long prefix = Key.prefix(key, 0, key.length);
+        while (true) {
+            Node current = root;
+            byte[] value = findValue(current, prefix, key, 0, key.length);
+            byte[] updated = remappingFunction.apply(key, value);
+            if (updated == value) {
+                return Optional.ofNullable(value);
+            }
+
+            Node changed = updated != null ? insert(current, wrappedKey, updated) : delete(current, wrappedKey);
+            if (ROOT.compareAndSet(this, current, changed)) {
+                return Optional.ofNullable(updated);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        Node node = root;
+        if (node == null) {
+            return Optional.empty();
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return Optional.of(node.key.getBytes());
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        Node node = root;
+        if (node == null) {
+            return Optional.empty();
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return Optional.of(node.key.getBytes());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator walks the version of the tree current at the call, so it never sees the later changes
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return new RangeIterator(root, fromKey, toKey);
+    }
+
+    /**
+     * Removes the key by copying the path to it and publishing the new root with a CAS
+     *
+     * @param expectedValue the value the key must be associated with, or {@code null} to remove any value
+     * @return the removed value, or {@code null} if nothing was removed
+     * */
+    private byte[] removeValue(Key key, byte[] expectedValue) {
+        byte[] bytes = key.getBytes();
+        long prefix = Key.prefix(bytes, 0, bytes.length);
+        while (true) {
+            Node current = root;
+            byte[] value = findValue(current, prefix, bytes, 0, bytes.length);
+            if (value == null || (expectedValue != null && !Arrays.equals(value, expectedValue))) {
+                return null;
+            }
+            if (ROOT.compareAndSet(this, current, delete(current, key))) {
+                return value;
+            }
+        }
+    }
+
+    private Optional<byte[]> findNearestKey(byte[] key, boolean above, boolean inclusive) {
+        long prefix = Key.prefix(key, 0, key.length);
+        Node node = root;
+        Node found = null;
+        while (node != null) {
+            int comparison = node.key.compare(prefix, key, 0, key.length);
+            if (comparison == 0 && inclusive) {
+                return Optional.of(node.key.getBytes());
+            }
+            if (above ? comparison < 0 : comparison > 0) {
+                found = node;
+                node = above ? node.left : node.right;
+            } else {
+                node = above ? node.right : node.left;
+            }
+        }
+        return found == null ? Optional.empty() : Optional.of(found.key.getBytes());
+    }
+
+    /**
+     * Searches for the value of a key given as the remaining bytes of the buffer, without changing its position.
+     * A heap buffer is searched by its backing array, a direct buffer is copied into the per-thread key buffer first
+     *
+     * @return the value or {@code null} if there is no such key
+     * */
+    private byte[] findValue(ByteBuffer key) {
+        int length = key.remaining();
+        if (key.hasArray()) {
+            return findValue(root, key.array(), key.arrayOffset() + key.position(), length);
+        }
+
+        byte[] buffer = KEY_BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+            KEY_BUFFER.set(buffer);
+        }
+        key.get(key.position(), buffer, 0, length);
+        return findValue(root, buffer, 0, length);
+    }
+
+    private static byte[] findValue(Node node, byte[] key, int offset, int length) {
+        return findValue(node, Key.prefix(key, offset, length), key, offset, length);
+    }
+
+    /**
+     * @return the value of the key given as a slice of the array in the subtree, or {@code null} if there is no such key
+     * */
+    private static byte[] findValue(Node node, long prefix, byte[] key, int offset, int length) {
+        while (node != null) {
+            int comparison = node.key.compare(prefix, key, offset, length);
+            if (comparison == 0) {
+                return node.value;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static int copyValue(byte[] value, ByteBuffer out) {
+        if (value == null) {
+            return -1;
+        }
+        if (value.length <= out.remaining()) {
+            out.put(value);
+        }
+        return value.length;
+    }
+
+    /**
+     * @return the root of a copy of the subtree with the key inserted or its value replaced
+     * */
+    private static Node insert(Node node, Key key, byte[] value) {
+        if (node == null) {
+            return new Node(key, value, null, null);
+        }
+
+        int comparison = node.key.compare(key);
+        if (comparison == 0) {
+            return new Node(node.key, value, node.left, node.right, node.height);
+        }
+        if (comparison < 0) {
+            return balance(node.key, node.value, insert(node.left, key, value), node.right);
+        }
+        return balance(node.key, node.value, node.left, insert(node.right, key, value));
+    }
+
+    /**
+     * @return the root of a copy of the subtree without the key, which must be present in the subtree
+     * */
+    private static Node delete(Node node, Key key) {
+        int comparison = node.key.compare(key);
+        if (comparison < 0) {
+            return balance(node.key, node.value, delete(node.left, key), node.right);
+        }
+        if (comparison > 0) {
+            return balance(node.key, node.value, node.left, delete(node.right, key));
+        }
+
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, deleteFirst(node.right));
+    }
+
+    private static Node deleteFirst(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, deleteFirst(node.left), node.right);
+    }
+
+    /**
+     * Creates the node over the subtrees, whose heights differ by at most 2, restoring the balance with rotations.
+     * The subtrees are not changed, the rotated nodes are copied
+     * */
+    private static Node balance(Key key, byte[] value, Node left, Node right) {
+        int balance = height(left) - height(right);
+        if (balance > 1) {
+            if (height(left.left) < height(left.right)) {
+                Node pivot = left.right;
+                return new Node(pivot.key, pivot.value,
+                        new Node(left.key, left.value, left.left, pivot.left),
+                        new Node(key, value, pivot.right, right));
+            }
+            return new Node(left.key, left.value, left.left, new Node(key, value, left.right, right));
+        }
+        if (balance < -1) {
+            if (height(right.right) < height(right.left)) {
+                Node pivot = right.left;
+                return new Node(pivot.key, pivot.value,
+                        new Node(key, value, left, pivot.left),
+                        new Node(right.key, right.value, pivot.right, right.right));
+            }
+            return new Node(right.key, right.value, new Node(key, value, left, right.left), right.right);
+        }
+        return new Node(key, value, left, right);
+    }
+
+    private static Node build(List<Entry> entries, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Entry entry = entries.get(middle);
+        return new Node(new Key(entry.key()), entry.value(), build(entries, from, middle), build(entries, middle + 1, to));
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void checkEntry(Entry entry) throws IllegalArgumentException {
+        if (entry == null || entry.key() == null || entry.value() == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+    }
+
+    /**
+     * An immutable node. {@code null} children stand for empty subtrees
+     * */
+    private static final class Node {
+
+        private final Key key;
+        private final byte[] value;
+        private final Node left;
+        private final Node right;
+        private final int height;
+
+        Node(Key key, byte[] value, Node left, Node right) {
+            this(key, value, left, right, Math.max(height(left), height(right)) + 1);
+        }
+
+        Node(Key key, byte[] value, Node left, Node right, int height) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Iterates over a range of one version of the tree in ascending key order with an explicit stack
+     * of the nodes still to be visited
+     * */
+    private static class RangeIterator implements Iterator<Entry> {
+
+        private final Node[] stack;
+        private final byte[] toKey;
+        private final long toPrefix;
+        private int size;
+
+        RangeIterator(Node root, byte[] fromKey, byte[] toKey) {
+            this.stack = new Node[height(root)];
+            this.toKey = toKey;
+            this.toPrefix = toKey == null ? 0 : Key.prefix(toKey, 0, toKey.length);
+
+            long fromPrefix = fromKey == null ? 0 : Key.prefix(fromKey, 0, fromKey.length);
+            Node node = root;
+            while (node != null) {
+                if (fromKey == null || node.key.compare(fromPrefix, fromKey, 0, fromKey.length) <= 0) {
+                    stack[size++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (size > 0 && toKey != null && stack[size - 1].key.compare(toPrefix, toKey, 0, toKey.length) <= 0) {
+                size = 0;
+            }
+            return size > 0;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Node node = stack[--size];
+            stack[size] = null;
+            for (Node next = node.right; next != null; next = next.left) {
+                stack[size++] = next;
+            }
+            return new Entry(node.key.getBytes(), node.value);
+        }
+    }
+}
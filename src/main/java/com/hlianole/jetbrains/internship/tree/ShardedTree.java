@@ -0,0 +1,559 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * Splits the unsigned key space into ranges, each backed by its own {@link ConcurrentAVLTree} (a shard),
+ * so the writers of different ranges never touch the same root or the same lock.
+ * Point operations go to one shard, ordered operations continue into the neighbouring shards
+ * when the shard of the key has no answer, and scans go through the shards in key order.
+ * <p>
+ * The boundaries are chosen from key samples, or split the first two bytes of the key space evenly.
+ * Once in a while a writer compares the sizes of the shards, and when one of them grows larger than
+ * {@link ShardedTree#SKEW} times the mean, it is rebalanced with its smaller neighbour: the entries
+ * of both are split in half at a new boundary into two new shards.
+ * <p>
+ * The shards and their boundaries are an immutable {@link Layout}, replaced as a whole by a rebalancing.
+ * Writers hold the read lock of their shard, a rebalancing holds the write locks of the two shards
+ * it replaces, so no write is lost. Readers never lock: they read the shard of the current layout
+ * and retry if the layout has been replaced meanwhile
+ * */
+public class ShardedTree implements Tree {
+
+    /**
+     * How many times larger than the mean a shard must be to be rebalanced
+     * */
+    private static final double SKEW = 2.0;
+
+    /**
+     * The shards smaller than this are never rebalanced
+     * */
+    private static final long MIN_REBALANCED_SIZE = 1 << 10;
+
+    /**
+     * One write of this many checks the sizes of the shards
+     * */
+    private static final int CHECK_INTERVAL = 1 << 10;
+
+    private final ReentrantLock rebalanceLock = new ReentrantLock();
+
+    private volatile Layout layout;
+
+    /**
+     * Creates a tree with as many shards as there are available processors
+     * */
+    public ShardedTree() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a tree with the shards splitting the first two bytes of the key space evenly
+     *
+     * @throws IllegalArgumentException if the number of shards is not in [1, 65536]
+     * */
+    public ShardedTree(int shards) throws IllegalArgumentException {
+        if (shards < 1 || shards > 1 << 16) {
+            throw new IllegalArgumentException("Number of shards must be in [1, 65536]");
+        }
+
+        byte[][] boundaries = new byte[shards - 1][];
+        for (int i = 1; i < shards; i++) {
+            int boundary = (int) ((long) i * (1 << 16) / shards);
+            boundaries[i - 1] = new byte[]{(byte) (boundary >>> 8), (byte) boundary};
+        }
+        this.layout = new Layout(boundaries, newShards(shards));
+    }
+
+    /**
+     * Creates a tree with the boundaries at the quantiles of the sample keys, so each shard gets
+     * about the same share of keys distributed like the samples. Duplicate boundaries are dropped,
+     * so there can be fewer shards than requested
+     *
+     * @throws IllegalArgumentException if the number of shards is less than 1 or a sample is {@code null}
+     * */
+    public ShardedTree(int shards, Iterable<byte[]> samples) throws IllegalArgumentException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive");
+        }
+
+        List<byte[]> sorted = new ArrayList<>();
+        for (byte[] sample : samples) {
+            if (sample == null) {
+                throw new IllegalArgumentException("Sample cannot be null");
+            }
+            sorted.add(sample);
+        }
+        sorted.sort(Arrays::compareUnsigned);
+
+        List<byte[]> boundaries = new ArrayList<>();
+        for (int i = 1; i < shards && !sorted.isEmpty(); i++) {
+            byte[] boundary = sorted.get((int) ((long) i * sorted.size() / shards));
+            if (boundary.length > 0 && (boundaries.isEmpty()
+                    || Arrays.compareUnsigned(boundaries.get(boundaries.size() - 1), boundary) < 0)) {
+                boundaries.add(boundary.clone());
+            }
+        }
+        this.layout = new Layout(boundaries.toArray(new byte[0][]), newShards(boundaries.size() + 1));
+    }
+
+    /**
+     * @return the number of entries of every shard in key order. The sizes are exact only without concurrent writers
+     * */
+    public long[] shardSizes() {
+        Shard[] shards = layout.shards();
+        long[] sizes = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            sizes[i] = shards[i].size.sum();
+        }
+        return sizes;
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        while (true) {
+            Layout current = layout;
+            Optional<byte[]> value = current.shards()[current.shardOf(key, offset, length)].tree.get(key, offset, length);
+            if (layout == current) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        while (true) {
+            Layout current = layout;
+            Shard shard = current.shards()[current.shardOf(key, 0, key.length)];
+            shard.lock.readLock().lock();
+            try {
+                if (shard.retired) {
+                    continue;
+                }
+                if (shard.tree.insert(key, value)) {
+                    shard.size.increment();
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+
+            maybeRebalance();
+            return;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return removeValue(key, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
+        return removeValue(key, expectedValue).isPresent();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+
+        while (true) {
+            Layout current = layout;
+            Shard shard = current.shards()[current.shardOf(key, 0, key.length)];
+            Optional<byte[]> computed;
+            shard.lock.readLock().lock();
+            try {
+                if (shard.retired) {
+                    continue;
+                }
+
+                boolean[] present = new boolean[1];
+                computed = shard.tree.compute(key, (k, value) -> {
+                    present[0] = value != null;
+                    return remappingFunction.apply(k, value);
+                });
+                if (computed.isPresent() && !present[0]) {
+                    shard.size.increment();
+                } else if (computed.isEmpty() && present[0]) {
+                    shard.size.decrement();
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+
+            maybeRebalance();
+            return computed;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return findNearestKey(null, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return findNearestKey(null, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The shards are scanned one after another. The next shard is taken from the layout current
+     * at the moment the previous one is exhausted, so a rebalancing in the middle of a scan neither loses
+     * nor repeats keys
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return new ShardIterator(fromKey, toKey);
+    }
+
+    /**
+     * @param expectedValue the value the key must be associated with, or {@code null} to remove any value
+     * @return the removed value
+     * */
+    private Optional<byte[]> removeValue(byte[] key, byte[] expectedValue) {
+        while (true) {
+            Layout current = layout;
+            Shard shard = current.shards()[current.shardOf(key, 0, key.length)];
+            shard.lock.readLock().lock();
+            try {
+                if (shard.retired) {
+                    continue;
+                }
+
+                Optional<byte[]> removed;
+                if (expectedValue == null) {
+                    removed = shard.tree.remove(key);
+                } else {
+                    removed = shard.tree.remove(key, expectedValue) ? Optional.of(expectedValue) : Optional.empty();
+                }
+                if (removed.isPresent()) {
+                    shard.size.decrement();
+                }
+                return removed;
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Asks the shard of the key, then the following (or preceding) shards for their first (or last) keys
+     * until one of them answers
+     *
+     * @param key the key, or {@code null} to search for the first or the last key
+     * */
+    private Optional<byte[]> findNearestKey(byte[] key, boolean above, boolean inclusive) {
+        while (true) {
+            Layout current = layout;
+            Shard[] shards = current.shards();
+            int index;
+            Optional<byte[]> found;
+            if (key == null) {
+                index = above ? -1 : shards.length;
+                found = Optional.empty();
+            } else {
+                index = current.shardOf(key, 0, key.length);
+                found = nearestInShard(shards[index].tree, key, above, inclusive);
+            }
+
+            while (found.isEmpty()) {
+                index += above ? 1 : -1;
+                if (index < 0 || index >= shards.length) {
+                    break;
+                }
+                found = above ? shards[index].tree.firstKey() : shards[index].tree.lastKey();
+            }
+
+            if (layout == current) {
+                return found;
+            }
+        }
+    }
+
+    private static Optional<byte[]> nearestInShard(Tree tree, byte[] key, boolean above, boolean inclusive) {
+        if (above) {
+            return inclusive ? tree.ceiling(key) : tree.higher(key);
+        }
+        return inclusive ? tree.floor(key) : tree.lower(key);
+    }
+
+    /**
+     * Once in {@link ShardedTree#CHECK_INTERVAL} writes, rebalances the largest shard if it is skewed.
+     * Only one rebalancing runs at a time, the other writers do not wait for it
+     * */
+    private void maybeRebalance() {
+        if (ThreadLocalRandom.current().nextInt(CHECK_INTERVAL) != 0 || !rebalanceLock.tryLock()) {
+            return;
+        }
+        try {
+            long[] sizes = shardSizes();
+            if (sizes.length < 2) {
+                return;
+            }
+
+            int largest = 0;
+            long total = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                total += sizes[i];
+                if (sizes[i] > sizes[largest]) {
+                    largest = i;
+                }
+            }
+            if (sizes[largest] < MIN_REBALANCED_SIZE || sizes[largest] <= SKEW * total / sizes.length) {
+                return;
+            }
+
+            boolean withPrevious = largest == sizes.length - 1
+                    || (largest > 0 && sizes[largest - 1] < sizes[largest + 1]);
+            rebalance(withPrevious ? largest - 1 : largest);
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Splits the entries of two neighbouring shards in half into two new shards.
+     * Must be called under {@link ShardedTree#rebalanceLock}
+     *
+     * @param first the index of the first of the shards
+     * */
+    private void rebalance(int first) {
+        Layout current = layout;
+        Shard left = current.shards()[first];
+        Shard right = current.shards()[first + 1];
+
+        left.lock.writeLock().lock();
+        right.lock.writeLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>();
+            left.tree.scan(null, null).forEachRemaining(entries::add);
+            right.tree.scan(null, null).forEachRemaining(entries::add);
+            int middle = entries.size() / 2;
+            if (middle == 0) {
+                return;
+            }
+
+            Shard[] shards = current.shards().clone();
+            shards[first] = new Shard(ConcurrentAVLTree.fromSorted(entries.subList(0, middle)), middle);
+            shards[first + 1] = new Shard(ConcurrentAVLTree.fromSorted(entries.subList(middle, entries.size())),
+                    entries.size() - middle);
+            byte[][] boundaries = current.boundaries().clone();
+            boundaries[first] = entries.get(middle).key();
+
+            left.retired = true;
+            right.retired = true;
+            layout = new Layout(boundaries, shards);
+        } finally {
+            right.lock.writeLock().unlock();
+            left.lock.writeLock().unlock();
+        }
+    }
+
+    private static Shard[] newShards(int count) {
+        Shard[] shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(new ConcurrentAVLTree(), 0);
+        }
+        return shards;
+    }
+
+    private static final class Shard {
+
+        private final ConcurrentAVLTree tree;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final LongAdder size = new LongAdder();
+
+        /**
+         * Set under the write lock when the shard is replaced by a rebalancing
+         * */
+        private volatile boolean retired;
+
+        Shard(ConcurrentAVLTree tree, long size) {
+            this.tree = tree;
+            this.size.add(size);
+        }
+    }
+
+    /**
+     * The shard {@code i} holds the keys in [boundaries[i - 1], boundaries[i]),
+     * the first and the last shards are unbounded below and above
+     * */
+    private record Layout(byte[][] boundaries, Shard[] shards) {
+
+        int shardOf(byte[] key, int offset, int length) {
+            int low = 0;
+            int high = boundaries.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                byte[] boundary = boundaries[middle];
+                if (Arrays.compareUnsigned(key, offset, offset + length, boundary, 0, boundary.length) < 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Scans the shards one by one, each from the greater of the key following the last returned one
+     * and the lower boundary of the shard
+     * */
+    private class ShardIterator implements Iterator<Entry> {
+
+        private final byte[] toKey;
+
+        /**
+         * The key the next shard is scanned from, {@code null} once the last shard is reached
+         * */
+        private byte[] nextFrom;
+        private boolean started;
+        private Iterator<Entry> shard;
+
+        ShardIterator(byte[] fromKey, byte[] toKey) {
+            this.nextFrom = fromKey;
+            this.toKey = toKey;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (shard == null || !shard.hasNext()) {
+                if (started && nextFrom == null) {
+                    return false;
+                }
+                if (nextFrom != null && toKey != null && Arrays.compareUnsigned(nextFrom, toKey) >= 0) {
+                    return false;
+                }
+                openNextShard();
+            }
+            return true;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return shard.next();
+        }
+
+        private void openNextShard() {
+            Layout current = layout;
+            int index = nextFrom == null ? 0 : current.shardOf(nextFrom, 0, nextFrom.length);
+            byte[] upper = index < current.boundaries().length ? current.boundaries()[index] : null;
+            byte[] to = upper == null || (toKey != null && Arrays.compareUnsigned(toKey, upper) < 0) ? toKey : upper;
+
+            shard = current.shards()[index].tree.scan(nextFrom, to);
+            nextFrom = upper;
+            started = true;
+        }
+    }
+}
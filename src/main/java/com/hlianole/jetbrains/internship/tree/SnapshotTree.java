@@ -0,0 +1,333 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.snapshot.SnapshotFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * A tree opened from a snapshot file written by {@link Tree#snapshot(Path)}. The file is memory-mapped
+ * (see {@link SnapshotFile}), so opening takes the same time for any number of entries, and the lookups
+ * of the keys which were not changed since are served straight from the mapping.
+ * <p>
+ * The changes go to a {@link ConcurrentAVLTree} layered on top of the snapshot. A removed key is kept
+ * in the overlay with a tombstone value, hiding the key of the snapshot. Reads never lock;
+ * writers of the same key are serialized by one of {@link SnapshotTree#STRIPES} locks,
+ * so a remove sees and hides exactly the value it returns.
+ * <p>
+ * A snapshot of this tree merges the overlay into a new file, which can be opened again to start with an empty overlay
+ * */
+public class SnapshotTree implements Tree, AutoCloseable {
+
+    private static final int STRIPES = 64;
+
+    /**
+     * The value marking a removed key in the overlay, compared by identity
+     * */
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    private final ConcurrentAVLTree overlay = new ConcurrentAVLTree();
+    private final Object[] locks = new Object[STRIPES];
+
+    private volatile SnapshotFile snapshot;
+
+    private SnapshotTree(SnapshotFile snapshot) {
+        this.snapshot = snapshot;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens the snapshot file written by {@link Tree#snapshot(Path)}
+     *
+     * @throws IOException if the file cannot be read or is not a snapshot file
+     * */
+    public static SnapshotTree open(Path path) throws IOException {
+        return new SnapshotTree(SnapshotFile.open(path));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        Optional<byte[]> changed = overlay.get(key);
+        if (changed.isPresent()) {
+            return changed.get() == TOMBSTONE ? Optional.empty() : changed;
+        }
+
+        SnapshotFile file = snapshot();
+        long entry = file.find(key, 0, key.length);
+        return entry < 0 ? Optional.empty() : Optional.of(file.value(entry));
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        synchronized (lockOf(key)) {
+            overlay.put(key, value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        synchronized (lockOf(key)) {
+            Optional<byte[]> removed = get(key);
+            if (removed.isPresent()) {
+                overlay.put(key, TOMBSTONE);
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
+
+        synchronized (lockOf(key)) {
+            Optional<byte[]> value = get(key);
+            if (value.isEmpty() || !Arrays.equals(value.get(), expectedValue)) {
+                return false;
+            }
+            overlay.put(key, TOMBSTONE);
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The function is called once, under the lock of the key
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+
+        synchronized (lockOf(key)) {
+            byte[] value = get(key).orElse(null);
+            byte[] updated = remappingFunction.apply(key, value);
+            if (updated != value) {
+                overlay.put(key, updated == null ? TOMBSTONE : updated);
+            }
+            return Optional.ofNullable(updated);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return findNearestKey(key, false, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return findNearestKey(null, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return findNearestKey(null, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Merges the scans of the overlay and the snapshot, the overlay wins on equal keys
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return new MergingIterator(overlay.scan(fromKey, toKey), snapshot().scan(fromKey, toKey));
+    }
+
+    /**
+     * Drops the mapping of the snapshot file. Every later operation throws {@link IllegalStateException}.
+     * The file is unmapped as soon as the garbage collector clears the mapped buffers
+     * */
+    @Override
+    public void close() {
+        snapshot = null;
+    }
+
+    private SnapshotFile snapshot() throws IllegalStateException {
+        SnapshotFile file = snapshot;
+        if (file == null) {
+            throw new IllegalStateException("The tree is closed");
+        }
+        return file;
+    }
+
+    private Object lockOf(byte[] key) {
+        return locks[(Arrays.hashCode(key) & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    /**
+     * Takes the nearer of the nearest keys of the overlay and the snapshot. A tombstone of the overlay
+     * hides the key, and the search goes on past it
+     * */
+    private Optional<byte[]> findNearestKey(byte[] key, boolean above, boolean inclusive) {
+        SnapshotFile file = snapshot();
+        while (true) {
+            Optional<byte[]> changed = key == null
+                    ? (above ? overlay.firstKey() : overlay.lastKey())
+                    : nearestInOverlay(key, above, inclusive);
+            long entry = file.nearest(key, above, inclusive);
+
+            if (changed.isEmpty()) {
+                return entry < 0 ? Optional.empty() : Optional.of(file.key(entry));
+            }
+            byte[] candidate = changed.get();
+            if (entry >= 0) {
+                int comparison = file.compare(entry, candidate, 0, candidate.length);
+                if (above ? comparison > 0 : comparison < 0) {
+                    return Optional.of(file.key(entry));
+                }
+            }
+
+            if (overlay.get(candidate).orElse(null) != TOMBSTONE) {
+                return changed;
+            }
+            key = candidate;
+            inclusive = false;
+        }
+    }
+
+    private Optional<byte[]> nearestInOverlay(byte[] key, boolean above, boolean inclusive) {
+        if (above) {
+            return inclusive ? overlay.ceiling(key) : overlay.higher(key);
+        }
+        return inclusive ? overlay.floor(key) : overlay.lower(key);
+    }
+
+    /**
+     * Merges two ascending iterators, skipping the tombstones and the keys of the second iterator
+     * present in the first one
+     * */
+    private static class MergingIterator implements Iterator<Entry> {
+
+        private final Iterator<Entry> first;
+        private final Iterator<Entry> second;
+
+        private Entry nextFirst;
+        private Entry nextSecond;
+        private Entry next;
+
+        MergingIterator(Iterator<Entry> first, Iterator<Entry> second) {
+            this.first = first;
+            this.second = second;
+            this.nextFirst = first.hasNext() ? first.next() : null;
+            this.nextSecond = second.hasNext() ? second.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && (nextFirst != null || nextSecond != null)) {
+                int comparison = nextFirst == null ? 1 : nextSecond == null ? -1
+                        : Arrays.compareUnsigned(nextFirst.key(), nextSecond.key());
+                Entry candidate;
+                if (comparison <= 0) {
+                    candidate = nextFirst;
+                    nextFirst = first.hasNext() ? first.next() : null;
+                    if (comparison == 0) {
+                        nextSecond = second.hasNext() ? second.next() : null;
+                    }
+                } else {
+                    candidate = nextSecond;
+                    nextSecond = second.hasNext() ? second.next() : null;
+                }
+
+                if (candidate.value() != TOMBSTONE) {
+                    next = candidate;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry result = next;
+            next = null;
+            return result;
+        }
+    }
+}
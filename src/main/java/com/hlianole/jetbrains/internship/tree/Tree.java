@@ -1,10 +1,29 @@
 package com.hlianole.jetbrains.internship.tree;
 
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents a key-value storage interface using byte[] arrays as keys and values.
  * Basic operations for storing and retrieving data are provided.
+ * <p>
+ * Keys are ordered lexicographically using unsigned byte comparison,
+ * a key is less than any longer key it is a prefix of.
  * */
 public interface Tree {
 
@@ -16,6 +35,122 @@ public interface Tree {
      * */
     Optional<byte[]> get(byte[] key);
 
+    /**
+     * Retrieves the value associated with the key given as a slice of an array.
+     * The default implementation copies the slice, implementations are expected to look it up in place
+     *
+     * @param key byte[] containing the key. Must not be {@code null}
+     * @param offset the index of the first byte of the key
+     * @param length the length of the key
+     * @return an {@link Optional} containing a value if the key exists, or {@link Optional#empty()} otherwise
+     * @throws IndexOutOfBoundsException if the slice is out of the array bounds
+     * */
+    default Optional<byte[]> get(byte[] key, int offset, int length) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, key.length);
+        return get(Arrays.copyOfRange(key, offset, offset + length));
+    }
+
+    /**
+     * Retrieves the value associated with the key given as the remaining bytes of the buffer.
+     * The position of the buffer is not changed
+     *
+     * @param key {@link ByteBuffer}. Must not be {@code null}
+     * @return an {@link Optional} containing a value if the key exists, or {@link Optional#empty()} otherwise
+     * */
+    default Optional<byte[]> get(ByteBuffer key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        byte[] copy = new byte[key.remaining()];
+        key.get(key.position(), copy);
+        return get(copy);
+    }
+
+    /**
+     * Copies the value associated with the key into the buffer, starting at its position.
+     * The value is copied only if it fits into the remaining space of the buffer, and the position is advanced by its length.
+     * Otherwise, the buffer is left untouched, and the returned length tells how much space is needed
+     *
+     * @param key byte[]. Must not be {@code null}
+     * @param out {@link ByteBuffer} to copy the value into. Must not be {@code null}
+     * @return the length of the value, or -1 if the key does not exist
+     * */
+    default int getInto(byte[] key, ByteBuffer out) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return getInto(key, 0, key.length, out);
+    }
+
+    /**
+     * Copies the value associated with the key given as a slice of an array into the buffer.
+     * See {@link Tree#getInto(byte[], ByteBuffer)}
+     *
+     * @throws IndexOutOfBoundsException if the slice is out of the array bounds
+     * */
+    default int getInto(byte[] key, int offset, int length, ByteBuffer out) {
+        if (out == null) {
+            throw new IllegalArgumentException("Output buffer cannot be null");
+        }
+        return copyInto(get(key, offset, length), out);
+    }
+
+    /**
+     * Copies the value associated with the key given as the remaining bytes of the buffer into the output buffer.
+     * The position of the key buffer is not changed. See {@link Tree#getInto(byte[], ByteBuffer)}
+     * */
+    default int getInto(ByteBuffer key, ByteBuffer out) {
+        if (out == null) {
+            throw new IllegalArgumentException("Output buffer cannot be null");
+        }
+        return copyInto(get(key), out);
+    }
+
+    /**
+     * @param key byte[]. Must not be {@code null}
+     * @return true if a value is associated with the key
+     * */
+    default boolean containsKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return containsKey(key, 0, key.length);
+    }
+
+    /**
+     * @param key byte[] containing the key. Must not be {@code null}
+     * @param offset the index of the first byte of the key
+     * @param length the length of the key
+     * @return true if a value is associated with the key
+     * @throws IndexOutOfBoundsException if the slice is out of the array bounds
+     * */
+    default boolean containsKey(byte[] key, int offset, int length) {
+        return get(key, offset, length).isPresent();
+    }
+
+    /**
+     * @param key {@link ByteBuffer} with the key as its remaining bytes. Must not be {@code null}.
+     *            The position of the buffer is not changed
+     * @return true if a value is associated with the key
+     * */
+    default boolean containsKey(ByteBuffer key) {
+        return get(key).isPresent();
+    }
+
+    private static int copyInto(Optional<byte[]> value, ByteBuffer out) {
+        if (value.isEmpty()) {
+            return -1;
+        }
+        byte[] bytes = value.get();
+        if (bytes.length <= out.remaining()) {
+            out.put(bytes);
+        }
+        return bytes.length;
+    }
+
     /**
      * Associates the provided value with the key
      *
@@ -24,4 +159,195 @@ public interface Tree {
      * */
     void put(byte[] key, byte[] value);
 
+    /**
+     * Associates all the provided values with their keys. If the same key occurs several times,
+     * the last value wins
+     *
+     * @param entries the entries to put. Keys and values must not be {@code null}
+     * */
+    default void putAll(Iterable<Entry> entries) {
+        for (Entry entry : entries) {
+            put(entry.key(), entry.value());
+        }
+    }
+
+    /**
+     * Associates all the provided values with their keys. See {@link Tree#putAll(Iterable)}
+     *
+     * @param entries the entries to put. Keys and values must not be {@code null}
+     * */
+    default void putAll(Map<byte[], byte[]> entries) {
+        putAll(entries.entrySet().stream()
+                .map(entry -> new Entry(entry.getKey(), entry.getValue()))
+                .toList());
+    }
+
+    /**
+     * Removes the key and the value associated with it
+     *
+     * @param key byte[]. Must not be {@code null}
+     * @return an {@link Optional} containing the removed value if the key existed, or {@link Optional#empty()} otherwise
+     * */
+    Optional<byte[]> remove(byte[] key);
+
+    /**
+     * Removes the key only if it is associated with a value equal to the expected one
+     *
+     * @param key byte[]. Must not be {@code null}
+     * @param expectedValue byte[]. Must not be {@code null}. Compared by content
+     * @return true if the key was removed
+     * */
+    boolean remove(byte[] key, byte[] expectedValue);
+
+    /**
+     * Atomically associates the provided value with the key if the key is absent
+     *
+     * @param key byte[]. Must not be {@code null}
+     * @param value byte[]. Must not be {@code null}
+     * @return an {@link Optional} containing the current value if the key exists, or {@link Optional#empty()} if the value was put
+     * */
+    default Optional<byte[]> putIfAbsent(byte[] key, byte[] value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        byte[][] current = new byte[1][];
+        compute(key, (k, old) -> {
+            current[0] = old;
+            return old == null ? value : old;
+        });
+        return Optional.ofNullable(current[0]);
+    }
+
+    /**
+     * Atomically replaces the value of the key only if it is associated with a value equal to the expected one
+     *
+     * @param key byte[]. Must not be {@code null}
+     * @param expectedValue byte[]. Must not be {@code null}. Compared by content
+     * @param newValue byte[]. Must not be {@code null}
+     * @return true if the value was replaced
+     * */
+    default boolean replace(byte[] key, byte[] expectedValue, byte[] newValue) {
+        if (key == null || expectedValue == null || newValue == null) {
+            throw new IllegalArgumentException("Key, expected value and new value cannot be null");
+        }
+
+        boolean[] replaced = new boolean[1];
+        compute(key, (k, old) -> {
+            replaced[0] = old != null && Arrays.equals(old, expectedValue);
+            return replaced[0] ? newValue : old;
+        });
+        return replaced[0];
+    }
+
+    /**
+     * Atomically computes the new value of the key from its current value. The function gets {@code null}
+     * if the key is absent and returns {@code null} to remove the key. Returning the current array itself
+     * leaves the entry unchanged.
+     * <p>
+     * The function may be called more than once if the key is changed concurrently, only the result of the last call
+     * is applied. It must not change the tree
+     *
+     * @param key byte[]. Must not be {@code null}
+     * @param remappingFunction a function of the key and its current value. Must not be {@code null}
+     * @return an {@link Optional} containing the new value, or {@link Optional#empty()} if the key is absent now
+     * */
+    Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction);
+
+    /**
+     * Atomically associates the provided value with the key if the key is absent, otherwise replaces the current value
+     * with the result of the function of the current and the provided values. The key is removed if the function
+     * returns {@code null}. See {@link Tree#compute(byte[], BiFunction)}
+     *
+     * @param key byte[]. Must not be {@code null}
+     * @param value byte[]. Must not be {@code null}
+     * @param remappingFunction a function of the current and the provided values. Must not be {@code null}
+     * @return an {@link Optional} containing the new value, or {@link Optional#empty()} if the key was removed
+     * */
+    default Optional<byte[]> merge(byte[] key, byte[] value, BinaryOperator<byte[]> remappingFunction) {
+        if (key == null || value == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key, value and function cannot be null");
+        }
+        return compute(key, (k, old) -> old == null ? value : remappingFunction.apply(old, value));
+    }
+
+    /**
+     * @param key byte[]. Must not be {@code null}
+     * @return the greatest key less than or equal to the provided key, or {@link Optional#empty()} if there is no such key
+     * */
+    Optional<byte[]> floor(byte[] key);
+
+    /**
+     * @param key byte[]. Must not be {@code null}
+     * @return the least key greater than or equal to the provided key, or {@link Optional#empty()} if there is no such key
+     * */
+    Optional<byte[]> ceiling(byte[] key);
+
+    /**
+     * @param key byte[]. Must not be {@code null}
+     * @return the least key strictly greater than the provided key, or {@link Optional#empty()} if there is no such key
+     * */
+    Optional<byte[]> higher(byte[] key);
+
+    /**
+     * @param key byte[]. Must not be {@code null}
+     * @return the greatest key strictly less than the provided key, or {@link Optional#empty()} if there is no such key
+     * */
+    Optional<byte[]> lower(byte[] key);
+
+    /**
+     * @return the least key in the tree, or {@link Optional#empty()} if the tree is empty
+     * */
+    Optional<byte[]> firstKey();
+
+    /**
+     * @return the greatest key in the tree, or {@link Optional#empty()} if the tree is empty
+     * */
+    Optional<byte[]> lastKey();
+
+    /**
+     * Iterates over the entries with keys in the range [fromKey, toKey) in ascending key order.
+     * The iterator is weakly consistent: it never fails because of concurrent modifications,
+     * returns every key at most once, and returns every key which is present during the whole iteration
+     *
+     * @param fromKey byte[]. The lowest key (inclusive), or {@code null} to start from the first key
+     * @param toKey byte[]. The highest key (exclusive), or {@code null} to iterate up to the last key
+     * */
+    Iterator<Entry> scan(byte[] fromKey, byte[] toKey);
+
+    /**
+     * Returns a weakly consistent {@link Spliterator} over all the entries in ascending key order,
+     * with the guarantees of {@link Tree#scan(byte[], byte[])}.
+     * The default implementation wraps the scan and splits by batches of entries,
+     * implementations are expected to split at the keys of the tree without reading the entries
+     * */
+    default Spliterator<Entry> spliterator() {
+        return Spliterators.spliteratorUnknownSize(scan(null, null), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * @return a sequential stream of all the entries in ascending key order, see {@link Tree#spliterator()}
+     * */
+    default Stream<Entry> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a parallel stream of all the entries, see {@link Tree#spliterator()}. The encounter order is the key order
+     * */
+    default Stream<Entry> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Writes all the entries in key order into a snapshot file, which can be opened by {@link SnapshotTree#open(Path)}.
+     * The entries are streamed from {@link Tree#scan(byte[], byte[])}, so the snapshot is as consistent as the scan
+     * and the writer never buffers the whole tree. The file is replaced atomically
+     *
+     * @param path the snapshot file
+     * */
+    default void snapshot(Path path) throws IOException {
+        SnapshotWriter.write(scan(null, null), path);
+    }
+
 }
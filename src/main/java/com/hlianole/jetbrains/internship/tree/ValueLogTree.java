@@ -0,0 +1,468 @@
+package com.hlianole.jetbrains.internship.tree;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.vlog.ValueLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Implements {@link Tree}
+ * <p>
+ * A {@link ConcurrentAVLTree} keeping the values larger than a threshold in a {@link ValueLog}: the node only holds
+ * a pointer of {@link ValueLogTree#POINTER_LENGTH} bytes, so the tree stays small however large the values are,
+ * and large writes go to the disk sequentially. The smaller values are kept in the tree, behind a one-byte tag.
+ * <p>
+ * Writers of the same key are serialized by one of {@link ValueLogTree#STRIPES} locks, so every pointer
+ * replaced or removed is released exactly once. Readers never lock: a reader that finds a pointer into a segment
+ * deleted meanwhile reads the key again.
+ * <p>
+ * A background thread compacts the log every compaction interval: the live values of the sealed segments
+ * less than half live are copied to the end of the log and their pointers are replaced, which deletes the segments.
+ * <p>
+ * The values of the log do not outlive the process, the log is deleted on close
+ * */
+public class ValueLogTree implements Tree, AutoCloseable {
+
+    private static final int STRIPES = 64;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    /**
+     * A segment with less live bytes than this fraction of its size is compacted
+     * */
+    private static final double COMPACTION_RATIO = 0.5;
+
+    private static final byte INLINE = 0;
+    private static final byte POINTER = 1;
+
+    /**
+     * The tag, the address and the length of a value of the log
+     * */
+    private static final int POINTER_LENGTH = 1 + Long.BYTES + Integer.BYTES;
+
+    private final ConcurrentAVLTree tree = new ConcurrentAVLTree();
+    private final ValueLog log;
+    private final int valueThreshold;
+    private final Object[] locks = new Object[STRIPES];
+    private final ScheduledExecutorService compactor;
+
+    private ValueLogTree(ValueLog log, int valueThreshold, Duration compactionInterval) {
+        this.log = log;
+        this.valueThreshold = valueThreshold;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "value-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = compactionInterval.toNanos();
+        compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates an empty tree with its value log in the directory
+     *
+     * @param valueThreshold the values longer than this go to the log
+     * @param compactionInterval how often the log is compacted
+     * */
+    public static ValueLogTree open(Path directory, int valueThreshold, Duration compactionInterval) throws IOException {
+        return open(directory, valueThreshold, DEFAULT_SEGMENT_SIZE, compactionInterval);
+    }
+
+    /**
+     * Creates an empty tree with its value log in the directory
+     *
+     * @param valueThreshold the values longer than this go to the log
+     * @param segmentSize the size of a segment file of the log
+     * @param compactionInterval how often the log is compacted
+     * */
+    public static ValueLogTree open(Path directory, int valueThreshold, int segmentSize, Duration compactionInterval)
+            throws IOException {
+        if (valueThreshold < 0) {
+            throw new IllegalArgumentException("Value threshold cannot be negative");
+        }
+        return new ValueLogTree(ValueLog.open(directory, segmentSize), valueThreshold, compactionInterval);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(byte[] key, int offset, int length) throws IllegalArgumentException {
+        while (true) {
+            Optional<byte[]> stored = tree.get(key, offset, length);
+            if (stored.isEmpty()) {
+                return stored;
+            }
+            byte[] value = decode(stored.get());
+            if (value != null) {
+                return Optional.of(value);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> get(ByteBuffer key) throws IllegalArgumentException {
+        while (true) {
+            Optional<byte[]> stored = tree.get(key);
+            if (stored.isEmpty()) {
+                return stored;
+            }
+            byte[] value = decode(stored.get());
+            if (value != null) {
+                return Optional.of(value);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Never reads the value log
+     * */
+    @Override
+    public boolean containsKey(byte[] key, int offset, int length) throws IllegalArgumentException {
+        return tree.containsKey(key, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Never reads the value log
+     * */
+    @Override
+    public boolean containsKey(ByteBuffer key) throws IllegalArgumentException {
+        return tree.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if a segment of the log cannot be created
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) throws IllegalArgumentException, UncheckedIOException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+
+        byte[] encoded = encode(value);
+        synchronized (lockOf(key)) {
+            byte[] previous = tree.get(key).orElse(null);
+            tree.put(key, encoded);
+            release(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> remove(byte[] key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        synchronized (lockOf(key)) {
+            Optional<byte[]> removed = tree.remove(key);
+            if (removed.isEmpty()) {
+                return removed;
+            }
+            byte[] value = decode(removed.get());
+            release(removed.get());
+            return Optional.of(value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public boolean remove(byte[] key, byte[] expectedValue) throws IllegalArgumentException {
+        if (key == null || expectedValue == null) {
+            throw new IllegalArgumentException("Key and expected value cannot be null");
+        }
+
+        synchronized (lockOf(key)) {
+            Optional<byte[]> stored = tree.get(key);
+            if (stored.isEmpty() || !Arrays.equals(decode(stored.get()), expectedValue)) {
+                return false;
+            }
+            tree.remove(key);
+            release(stored.get());
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The function is called once, under the lock of the key
+     *
+     * @throws UncheckedIOException if a segment of the log cannot be created
+     * */
+    @Override
+    public Optional<byte[]> compute(byte[] key, BiFunction<byte[], byte[], byte[]> remappingFunction)
+            throws IllegalArgumentException, UncheckedIOException {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key and function cannot be null");
+        }
+
+        synchronized (lockOf(key)) {
+            byte[] stored = tree.get(key).orElse(null);
+            byte[] value = stored == null ? null : decode(stored);
+            byte[] updated = remappingFunction.apply(key, value);
+            if (updated == value) {
+                return Optional.ofNullable(updated);
+            }
+
+            if (updated == null) {
+                tree.remove(key);
+            } else {
+                tree.put(key, encode(updated));
+            }
+            release(stored);
+            return Optional.ofNullable(updated);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> floor(byte[] key) throws IllegalArgumentException {
+        return tree.floor(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> ceiling(byte[] key) throws IllegalArgumentException {
+        return tree.ceiling(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> higher(byte[] key) throws IllegalArgumentException {
+        return tree.higher(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lower(byte[] key) throws IllegalArgumentException {
+        return tree.lower(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> firstKey() {
+        return tree.firstKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public Optional<byte[]> lastKey() {
+        return tree.lastKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The values of the log are read as the iterator reaches them
+     * */
+    @Override
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        return new DecodingIterator(tree.scan(fromKey, toKey));
+    }
+
+    /**
+     * Copies the live values of the sparse segments of the log to its end, see {@link ValueLog#sparseSegments(double)}.
+     * The segments are deleted once their last value is moved
+     *
+     * @throws UncheckedIOException if a segment of the log cannot be created
+     * */
+    public void compact() throws UncheckedIOException {
+        Set<Integer> sparse = new HashSet<>(log.sparseSegments(COMPACTION_RATIO));
+        if (sparse.isEmpty()) {
+            return;
+        }
+
+        Iterator<Entry> entries = tree.scan(null, null);
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            byte[] stored = entry.value();
+            if (stored[0] != POINTER || !sparse.contains(ValueLog.segment(address(stored)))) {
+                continue;
+            }
+
+            synchronized (lockOf(entry.key())) {
+                if (tree.get(entry.key()).orElse(null) != stored) {
+                    continue;
+                }
+                byte[] value = log.read(address(stored), length(stored));
+                tree.put(entry.key(), pointer(log.append(value), value.length));
+                release(stored);
+            }
+        }
+    }
+
+    /**
+     * @return the size of the files of the value log
+     * */
+    public long valueLogBytes() {
+        return log.size();
+    }
+
+    /**
+     * Stops the compaction and deletes the value log. The tree must not be used afterwards
+     * */
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (UncheckedIOException ignored) {
+            // retried at the next interval
+        }
+    }
+
+    private Object lockOf(byte[] key) {
+        return locks[(Arrays.hashCode(key) & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    /**
+     * Appends a large value to the log
+     *
+     * @return the value as kept in the tree
+     * */
+    private byte[] encode(byte[] value) {
+        if (value.length > valueThreshold) {
+            return pointer(log.append(value), value.length);
+        }
+        byte[] inline = new byte[1 + value.length];
+        inline[0] = INLINE;
+        System.arraycopy(value, 0, inline, 1, value.length);
+        return inline;
+    }
+
+    /**
+     * @return the value, or {@code null} if it was in a segment deleted meanwhile by the compaction
+     * @throws IllegalStateException if the value cannot be read because the tree is closed
+     * */
+    private byte[] decode(byte[] stored) throws IllegalStateException {
+        if (stored[0] == INLINE) {
+            return Arrays.copyOfRange(stored, 1, stored.length);
+        }
+        byte[] value = log.read(address(stored), length(stored));
+        if (value == null && log.isClosed()) {
+            throw new IllegalStateException("The tree is closed");
+        }
+        return value;
+    }
+
+    private void release(byte[] stored) {
+        if (stored != null && stored[0] == POINTER) {
+            log.release(address(stored), length(stored));
+        }
+    }
+
+    private static byte[] pointer(long address, int length) {
+        return ByteBuffer.allocate(POINTER_LENGTH).put(POINTER).putLong(address).putInt(length).array();
+    }
+
+    private static long address(byte[] pointer) {
+        return ByteBuffer.wrap(pointer).getLong(1);
+    }
+
+    private static int length(byte[] pointer) {
+        return ByteBuffer.wrap(pointer).getInt(1 + Long.BYTES);
+    }
+
+    /**
+     * Decodes the values of a scan of the tree. A value of a deleted segment is read again by its key,
+     * the entry is skipped if the key was removed meanwhile
+     * */
+    private class DecodingIterator implements Iterator<Entry> {
+
+        private final Iterator<Entry> entries;
+
+        private Entry next;
+
+        DecodingIterator(Iterator<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && entries.hasNext()) {
+                Entry entry = entries.next();
+                byte[] value = decode(entry.value());
+                if (value == null) {
+                    value = get(entry.key()).orElse(null);
+                }
+                if (value != null) {
+                    next = new Entry(entry.key(), value);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry result = next;
+            next = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.hlianole.jetbrains.internship.tree.cache;
+
+/**
+ * The counters of a {@link HotKeyCache}, read without stopping the other threads
+ *
+ * @param hits the lookups answered by the cache
+ * @param misses the lookups that went to the tree
+ * @param evictions the entries replaced by more frequent keys
+ * @param rejections the keys not admitted because they were less frequent than the entry they would replace
+ * */
+public record CacheStats(long hits, long misses, long evictions, long rejections) {
+
+    /**
+     * @return the fraction of the lookups answered by the cache, 0 if there were none
+     * */
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
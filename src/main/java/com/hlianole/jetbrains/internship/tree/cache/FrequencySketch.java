@@ -0,0 +1,111 @@
+package com.hlianole.jetbrains.internship.tree.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often the keys were accessed recently (TinyLFU).
+ * A key has four counters in four different {@code long}s of one 64-byte block, its frequency is the least of them,
+ * so counting an access and estimating a frequency touch a single cache line.
+ * When the number of increments reaches ten times the capacity, every counter is halved,
+ * so the old accesses fade out.
+ * <p>
+ * The counters are updated without locks or CAS. A racing increment may be lost, which only makes
+ * the estimate a little lower, never inconsistent
+ * */
+public final class FrequencySketch {
+
+    private static final VarHandle TABLE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int BLOCK = 8;
+    private static final int COUNTERS = 4;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int blockMask;
+    private final int sampleSize;
+
+    /**
+     * The increments since the last halving, updated racily
+     * */
+    private int additions;
+
+    /**
+     * @param capacity the number of keys the sketch is expected to tell apart
+     * */
+    public FrequencySketch(int capacity) {
+        int length = Integer.highestOneBit(Math.max(BLOCK, capacity) * 2 - 1);
+        this.table = new long[length];
+        this.blockMask = length / BLOCK - 1;
+        this.sampleSize = 10 * Math.max(1, capacity);
+    }
+
+    /**
+     * Records an access of the key
+     * */
+    public void increment(int hash) {
+        int block = blockOf(hash);
+        int counters = counterHash(hash);
+        boolean added = false;
+        for (int i = 0; i < COUNTERS; i++) {
+            int index = indexOf(block, counters, i);
+            int offset = offsetOf(counters, i);
+            long word = (long) TABLE.getOpaque(table, index);
+            if (((word >>> offset) & MAX_COUNT) != MAX_COUNT) {
+                TABLE.setOpaque(table, index, word + (1L << offset));
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * @return the estimated number of recent accesses of the key, at most 15
+     * */
+    public int frequency(int hash) {
+        int block = blockOf(hash);
+        int counters = counterHash(hash);
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < COUNTERS; i++) {
+            long word = (long) TABLE.getOpaque(table, indexOf(block, counters, i));
+            frequency = Math.min(frequency, (int) ((word >>> offsetOf(counters, i)) & MAX_COUNT));
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        additions = 0;
+        for (int i = 0; i < table.length; i++) {
+            TABLE.setOpaque(table, i, ((long) TABLE.getOpaque(table, i) >>> 1) & RESET_MASK);
+        }
+    }
+
+    private int blockOf(int hash) {
+        return (hash & blockMask) * BLOCK;
+    }
+
+    /**
+     * Mixes the hash again, so the counters of the keys sharing a block are independent of the block
+     * */
+    private static int counterHash(int hash) {
+        int mixed = hash * 0x31848bab;
+        return mixed ^ (mixed >>> 14);
+    }
+
+    /**
+     * @return the index of the {@code long} holding the i-th counter, one of two {@code long}s per counter
+     * */
+    private static int indexOf(int block, int counters, int i) {
+        return block + (i << 1) + ((counters >>> (i << 3)) & 1);
+    }
+
+    /**
+     * @return the bit offset of the i-th counter in its {@code long}
+     * */
+    private static int offsetOf(int counters, int i) {
+        return ((counters >>> ((i << 3) + 1)) & 15) << 2;
+    }
+}
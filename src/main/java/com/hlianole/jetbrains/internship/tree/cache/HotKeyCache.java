@@ -0,0 +1,235 @@
+package com.hlianole.jetbrains.internship.tree.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free cache of the values of the most frequently read keys.
+ * <p>
+ * The entries live in a set-associative table: a key can only be cached in one of the {@link HotKeyCache#WAYS}
+ * slots of the set chosen by its hash, and every slot is changed with a CAS. A key is admitted into an empty slot
+ * of its set, otherwise it replaces the least frequent entry of the set, but only if the key was read more often
+ * recently than that entry, as estimated by a {@link FrequencySketch} of every lookup (TinyLFU admission).
+ * A burst of one-off reads therefore does not flush the hot keys.
+ * <p>
+ * The hashes of the entries are also kept next to each other in a tag array, so a lookup compares the 8 tags
+ * of a set in one cache line and only reads the entry whose tag matches. A tag can lag behind its slot,
+ * which may only turn a hit into a miss; the invalidation of a key never relies on the tags.
+ * <p>
+ * A lookup that misses reads the tree and fills the cache, while a writer may be changing the same key.
+ * To never keep a stale value, the writers of every stripe of keys count the writes they start and finish,
+ * see {@link HotKeyCache#startWrite(int)} and {@link HotKeyCache#finishWrite(int, byte[])}:
+ * <ul>
+ *     <li>a lookup only fills the cache if no write of its stripe was in progress before it read the tree;</li>
+ *     <li>a writer invalidates the key after changing the tree, removing any entry filled before;</li>
+ *     <li>a lookup that sees a write started after its read removes the entry it has just filled</li>
+ * </ul>
+ * */
+public final class HotKeyCache {
+
+    private static final int WAYS = 8;
+    private static final int STRIPES = 256;
+
+    /**
+     * A key read at most this many times recently never replaces an entry,
+     * so the frequencies of the set are not even estimated for it
+     * */
+    private static final int ONE_OFF = 1;
+
+    private final AtomicReferenceArray<CacheEntry> slots;
+    private final AtomicIntegerArray tags;
+    private final int setMask;
+    private final FrequencySketch sketch;
+
+    /**
+     * The number of started writes of the stripe at {@code 2 * stripe}, of the finished ones at {@code 2 * stripe + 1}
+     * */
+    private final AtomicLongArray writes = new AtomicLongArray(2 * STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * @param capacity the number of entries the cache holds at most, rounded up to a power of two
+     * */
+    public HotKeyCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS) * 2 - 1);
+        this.slots = new AtomicReferenceArray<>(sets * WAYS);
+        this.tags = new AtomicIntegerArray(sets * WAYS);
+        this.setMask = sets - 1;
+        this.sketch = new FrequencySketch(sets * WAYS);
+    }
+
+    /**
+     * @return the hash of the key used by all the other methods
+     * */
+    public static int hash(byte[] key, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + key[i];
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Records the lookup of the key and finds its value
+     *
+     * @return the cached value, or {@code null} if the key is not cached
+     * */
+    public byte[] get(int hash, byte[] key, int offset, int length) {
+        sketch.increment(hash);
+        CacheEntry entry = find(hash, key, offset, length);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Must be called before reading the tree after a miss
+     *
+     * @return the stamp to pass to {@link HotKeyCache#fill(int, byte[], int, int, byte[], long)},
+     * negative if a write of the key may be in progress
+     * */
+    public long startRead(int hash) {
+        int stripe = stripeOf(hash);
+        long started = writes.get(2 * stripe);
+        return started == writes.get(2 * stripe + 1) ? started : -1;
+    }
+
+    /**
+     * Caches the value read from the tree after {@link HotKeyCache#startRead(int)}, if the key is admitted
+     * and no write of the key started meanwhile. The key is copied if it is admitted
+     * */
+    public void fill(int hash, byte[] key, int offset, int length, byte[] value, long stamp) {
+        if (stamp < 0) {
+            return;
+        }
+
+        CacheEntry[] filled = new CacheEntry[1];
+        int slot = offer(hash, key, offset, length, value, filled);
+        if (slot >= 0 && writes.get(2 * stripeOf(hash)) != stamp) {
+            slots.compareAndSet(slot, filled[0], null);
+        }
+    }
+
+    /**
+     * Must be called before a write of the key changes the tree
+     * */
+    public void startWrite(int hash) {
+        writes.incrementAndGet(2 * stripeOf(hash));
+    }
+
+    /**
+     * Must be called after a write of the key changed the tree, even if it failed. Invalidates the key
+     * */
+    public void finishWrite(int hash, byte[] key) {
+        int base = setOf(hash);
+        for (int way = 0; way < WAYS; way++) {
+            CacheEntry entry = slots.get(base + way);
+            if (entry != null && entry.matches(hash, key, 0, key.length)) {
+                slots.compareAndSet(base + way, entry, null);
+            }
+        }
+        writes.incrementAndGet(2 * stripeOf(hash) + 1);
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum());
+    }
+
+    /**
+     * Puts the entry into an empty slot of its set, or in place of the least frequent entry if the new key
+     * is more frequent
+     *
+     * @param filled receives the new entry
+     * @return the slot of the entry, or -1 if it was not admitted
+     * */
+    private int offer(int hash, byte[] key, int offset, int length, byte[] value, CacheEntry[] filled) {
+        int base = setOf(hash);
+        int frequency = sketch.frequency(hash);
+        CacheEntry entry = null;
+        while (true) {
+            int victim = -1;
+            CacheEntry victimEntry = null;
+            for (int way = 0; way < WAYS; way++) {
+                CacheEntry current = slots.get(base + way);
+                if (current == null) {
+                    victim = base + way;
+                    break;
+                }
+                if (tags.get(base + way) == hash && current.matches(hash, key, offset, length)) {
+                    return -1;
+                }
+            }
+
+            if (victim < 0 && frequency > ONE_OFF) {
+                int victimFrequency = frequency;
+                for (int way = 0; way < WAYS; way++) {
+                    CacheEntry current = slots.get(base + way);
+                    int currentFrequency = sketch.frequency(tags.get(base + way));
+                    if (current != null && currentFrequency < victimFrequency) {
+                        victim = base + way;
+                        victimEntry = current;
+                        victimFrequency = currentFrequency;
+                    }
+                }
+            }
+            if (victim < 0) {
+                rejections.increment();
+                return -1;
+            }
+            if (entry == null) {
+                entry = new CacheEntry(hash, Arrays.copyOfRange(key, offset, offset + length), value);
+            }
+            if (slots.compareAndSet(victim, victimEntry, entry)) {
+                tags.set(victim, hash);
+                if (victimEntry != null) {
+                    evictions.increment();
+                }
+                filled[0] = entry;
+                return victim;
+            }
+        }
+    }
+
+    private CacheEntry find(int hash, byte[] key, int offset, int length) {
+        int base = setOf(hash);
+        for (int way = 0; way < WAYS; way++) {
+            if (tags.get(base + way) == hash) {
+                CacheEntry entry = slots.get(base + way);
+                if (entry != null && entry.matches(hash, key, offset, length)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private int setOf(int hash) {
+        return (hash >>> 8 & setMask) * WAYS;
+    }
+
+    private static int stripeOf(int hash) {
+        return hash & (STRIPES - 1);
+    }
+
+    private record CacheEntry(int hash, byte[] key, byte[] value) {
+
+        boolean matches(int hash, byte[] key, int offset, int length) {
+            return this.hash == hash && Arrays.equals(this.key, 0, this.key.length, key, offset, offset + length);
+        }
+    }
+}
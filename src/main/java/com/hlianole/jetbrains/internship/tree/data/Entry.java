@@ -0,0 +1,15 @@
+package com.hlianole.jetbrains.internship.tree.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An immutable key-value pair returned by the range scans. Holds raw byte arrays
+ * */
+public record Entry(byte[] key, byte[] value) {
+
+    /**
+     * Orders the entries by key like the trees do, unsigned lexicographically
+     * */
+    public static final Comparator<Entry> KEY_ORDER = (first, second) -> Arrays.compareUnsigned(first.key, second.key);
+}
@@ -1,40 +1,78 @@
 package com.hlianole.jetbrains.internship.tree.data;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 /**
  * A wrapper class representing a key composed of raw bytes.
  * Keys a compared lexicographically using unsigned byte comparison.
+ * <p>
+ * The first 8 bytes of the key are cached as a big-endian {@code long} (padded with zeros),
+ * so most comparisons finish with one unsigned comparison of two primitives without touching the arrays
  * */
 public class Key {
 
+    private static final int PREFIX_LENGTH = Long.BYTES;
+    private static final VarHandle LONG_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
     private final byte[] str;
+    private final long prefix;
 
     public Key(byte[] key) {
         this.str = key;
+        this.prefix = prefix(key, 0, key.length);
     }
 
     /**
      * Compares this key to another key lexicographically using unsigned byte comparison.
+     * The cached prefixes are compared first, the rest of the keys is compared word-at-a-time
+     * by {@link Arrays#compareUnsigned(byte[], int, int, byte[], int, int)}
      *
      * @return 0 in case keys are similar.
      * Less than 0 in case this key is lex. less than another key.
      * Greater than 0 in case this key is greater than another key.
      * */
     public int compare(Key other) {
-        byte[] me = this.str;
-        byte[] oth = other.str;
-        int len = min(me.length, oth.length);
-
-        for (int i = 0; i < len; i++) {
-            int cmp = (oth[i] & 0xff) - (me[i] & 0xff);
-            if (cmp != 0) {
-                return cmp;
-            }
+        return compare(other.prefix, other.str, 0, other.str.length);
+    }
+
+    /**
+     * Compares this key to another key given as a slice of an array, without wrapping the slice into a {@link Key}.
+     * See {@link Key#compare(Key)}
+     *
+     * @param otherPrefix the prefix of the slice, see {@link Key#prefix(byte[], int, int)}
+     * */
+    public int compare(long otherPrefix, byte[] other, int offset, int length) {
+        if (prefix != otherPrefix) {
+            return Long.compareUnsigned(otherPrefix, prefix);
         }
 
-        return me.length - oth.length;
+        byte[] me = this.str;
+        int from = Math.min(PREFIX_LENGTH, Math.min(me.length, length));
+        return Arrays.compareUnsigned(other, offset + from, offset + length, me, from, me.length);
+    }
+
+    /**
+     * @return the raw bytes of the key
+     * */
+    public byte[] getBytes() {
+        return str;
     }
 
-    private int min(int a, int b) {
-        return a < b ? a : b;
+    /**
+     * @return the first 8 bytes of the key slice as a big-endian {@code long}, padded with zeros if the slice is shorter
+     * */
+    public static long prefix(byte[] key, int offset, int length) {
+        if (length >= PREFIX_LENGTH) {
+            return (long) LONG_BIG_ENDIAN.get(key, offset);
+        }
+
+        long prefix = 0;
+        for (int i = 0; i < length; i++) {
+            prefix |= (key[offset + i] & 0xffL) << (Long.SIZE - Byte.SIZE * (i + 1));
+        }
+        return prefix;
     }
 }
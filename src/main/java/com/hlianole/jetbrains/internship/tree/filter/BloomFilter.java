@@ -0,0 +1,125 @@
+package com.hlianole.jetbrains.internship.tree.filter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A blocked Bloom filter over byte array keys: all the bits of a key are set in one block of 512 bits,
+ * a cache line, chosen by the hash of the key. A lookup reads a single cache line whatever the number of bits.
+ * <p>
+ * Bits are only ever set, with an atomic OR, so keys can be added from any number of threads while others look up.
+ * A key added before a lookup started is always found
+ * */
+public final class BloomFilter {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle LONG_LITTLE_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final int BLOCK_WORDS = 8;
+    private static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+
+    /**
+     * The most blocks whose words still fit into a Java array, 8 GB of bits
+     * */
+    private static final int MAX_BLOCKS = 1 << 27;
+
+    /**
+     * Blocks are slightly less precise than a plain filter of the same size, so a few more bits are set per key
+     * */
+    private static final double BLOCK_PENALTY = 1.2;
+
+    private final long[] words;
+    private final int blockMask;
+    private final int bitsPerKey;
+
+    /**
+     * @param expectedKeys the number of keys the filter is sized for. The filter never exceeds 8 GB,
+     *                     so for more keys than fit into that it lets through more absent keys than the given rate
+     * @param falsePositiveRate the fraction of the absent keys the filter is expected to let through
+     * */
+    public BloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0) {
+            throw new IllegalArgumentException("Expected keys must be positive");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1)");
+        }
+
+        double bits = -expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) * BLOCK_PENALTY;
+        long blocks = Math.max(1, (long) Math.ceil(bits / BLOCK_BITS));
+        int powerOfTwo = (int) Math.min(MAX_BLOCKS, Long.highestOneBit(blocks * 2 - 1));
+        this.words = new long[powerOfTwo * BLOCK_WORDS];
+        this.blockMask = powerOfTwo - 1;
+        this.bitsPerKey = (int) Math.max(1, Math.min(16, Math.round(-Math.log(falsePositiveRate) / Math.log(2))));
+    }
+
+    /**
+     * Adds the key given as a slice of an array
+     * */
+    public void add(byte[] key, int offset, int length) {
+        long hash = hash(key, offset, length);
+        int block = blockOf(hash);
+        int bits = (int) hash;
+        for (int i = 0; i < bitsPerKey; i++) {
+            int bit = (bits >>> 23) & (BLOCK_BITS - 1);
+            WORDS.getAndBitwiseOr(words, block + (bit >>> 6), 1L << bit);
+            bits *= 0x9E3779B9;
+            bits ^= bits >>> 15;
+        }
+    }
+
+    /**
+     * @return {@code false} if the key given as a slice of an array was never added, {@code true} if it probably was
+     * */
+    public boolean mightContain(byte[] key, int offset, int length) {
+        long hash = hash(key, offset, length);
+        int block = blockOf(hash);
+        int bits = (int) hash;
+        for (int i = 0; i < bitsPerKey; i++) {
+            int bit = (bits >>> 23) & (BLOCK_BITS - 1);
+            if (((long) WORDS.getAcquire(words, block + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            bits *= 0x9E3779B9;
+            bits ^= bits >>> 15;
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of the filter in bytes
+     * */
+    public long sizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    private int blockOf(long hash) {
+        return ((int) (hash >>> 32) & blockMask) * BLOCK_WORDS;
+    }
+
+    /**
+     * Hashes the key 8 bytes at a time, mixing every word like the finalizer of MurmurHash3
+     * */
+    private static long hash(byte[] key, int offset, int length) {
+        long hash = length * 0x9E3779B97F4A7C15L;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            hash = mix(hash ^ (long) LONG_LITTLE_ENDIAN.get(key, offset + i));
+        }
+        long tail = 0;
+        for (int shift = 0; i < length; i++, shift += Byte.SIZE) {
+            tail |= (key[offset + i] & 0xFFL) << shift;
+        }
+        return mix(hash ^ tail);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
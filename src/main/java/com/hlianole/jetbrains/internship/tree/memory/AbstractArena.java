@@ -0,0 +1,220 @@
+package com.hlianole.jetbrains.internship.tree.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocates blocks of bytes in large pages, so the stored bytes cost no object per block.
+ * <p>
+ * Blocks are rounded up to a size class: multiples of 8 bytes up to 128 bytes, then four classes
+ * per power of two, so a block wastes at most a quarter of its size. Freed blocks are reused through
+ * per-class free lists linked through the first 8 bytes of the free blocks themselves.
+ * A block larger than a page gets a page of its own, which is dropped when the block is freed.
+ * <p>
+ * An address is the index of the page in the upper 32 bits and the offset in the page in the lower 32 bits.
+ * The subclasses store the pages. An arena is not thread-safe.
+ * */
+public abstract class AbstractArena implements AutoCloseable {
+
+    /**
+     * The address of an empty block
+     * */
+    public static final long NULL = -1;
+
+    protected static final int PAGE_SIZE = 1 << 20;
+
+    private static final int SMALL_SIZE = 128;
+    private static final int SMALL_STEP = 8;
+    private static final int SMALL_CLASSES = SMALL_SIZE / SMALL_STEP;
+    private static final int CLASSES_PER_DOUBLING = 4;
+    private static final int SMALL_SIZE_LOG = Integer.numberOfTrailingZeros(SMALL_SIZE);
+
+    private final long[] freeLists = new long[sizeClass(PAGE_SIZE) + 1];
+
+    private int pageCount;
+    private int currentPage = -1;
+    private int currentOffset;
+    private long reservedBytes;
+
+    protected AbstractArena() {
+        Arrays.fill(freeLists, NULL);
+    }
+
+    /**
+     * Creates the page with the given index
+     * */
+    protected abstract void addPage(int page, int size);
+
+    /**
+     * Drops the page with the given index
+     * */
+    protected abstract void removePage(int page);
+
+    /**
+     * Drops all the pages
+     * */
+    protected abstract void removePages();
+
+    protected abstract long getLong(long address);
+
+    protected abstract void putLong(long address, long value);
+
+    public abstract void write(long address, byte[] bytes);
+
+    /**
+     * Copies the block into the buffer at its position and advances the position by the length
+     * */
+    public abstract void copy(long address, int length, ByteBuffer out);
+
+    /**
+     * Compares a key given as a slice of an array to the key stored in the block lexicographically
+     * using unsigned byte comparison
+     *
+     * @param from the number of leading bytes already known to be equal
+     * @return less than 0 if the slice is less than the stored key, 0 if they are equal, greater than 0 otherwise
+     * */
+    public abstract int compare(long address, int length, int from, byte[] key, int offset, int keyLength);
+
+    protected abstract void read(long address, byte[] bytes);
+
+    /**
+     * @return the address of a new block of at least the given length, or {@link AbstractArena#NULL} for an empty block
+     * */
+    public long allocate(int length) {
+        if (length == 0) {
+            return NULL;
+        }
+        if (length > PAGE_SIZE) {
+            return address(newPage(length), 0);
+        }
+
+        int sizeClass = sizeClass(length);
+        long address = freeLists[sizeClass];
+        if (address != NULL) {
+            freeLists[sizeClass] = getLong(address);
+            return address;
+        }
+
+        int size = classSize(sizeClass);
+        if (currentPage < 0 || currentOffset + size > PAGE_SIZE) {
+            currentPage = newPage(PAGE_SIZE);
+            currentOffset = 0;
+        }
+        address = address(currentPage, currentOffset);
+        currentOffset += size;
+        return address;
+    }
+
+    /**
+     * Returns the block to the arena
+     *
+     * @param length the length the block was allocated with
+     * */
+    public void free(long address, int length) {
+        if (address == NULL) {
+            return;
+        }
+        if (length > PAGE_SIZE) {
+            removePage(page(address));
+            reservedBytes -= length;
+            return;
+        }
+
+        int sizeClass = sizeClass(length);
+        putLong(address, freeLists[sizeClass]);
+        freeLists[sizeClass] = address;
+    }
+
+    /**
+     * Reuses the block for the new length if it has the same size class, otherwise frees it and allocates a new one.
+     * The content of the block is not preserved
+     *
+     * @return the address of the block of the new length
+     * */
+    public long reallocate(long address, int length, int newLength) {
+        if (address != NULL && length <= PAGE_SIZE && newLength <= PAGE_SIZE
+                && newLength != 0 && sizeClass(length) == sizeClass(newLength)) {
+            return address;
+        }
+        free(address, length);
+        return allocate(newLength);
+    }
+
+    public byte[] read(long address, int length) {
+        byte[] bytes = new byte[length];
+        if (address != NULL) {
+            read(address, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return true if the block holds exactly the given bytes
+     * */
+    public boolean contentEquals(long address, int length, byte[] bytes) {
+        return length == bytes.length && compare(address, length, 0, bytes, 0, bytes.length) == 0;
+    }
+
+    /**
+     * @return the number of bytes reserved by the pages of the arena
+     * */
+    public long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Drops all the pages. The arena must not be used afterwards
+     * */
+    @Override
+    public void close() {
+        removePages();
+        pageCount = 0;
+        currentPage = -1;
+        reservedBytes = 0;
+        Arrays.fill(freeLists, NULL);
+    }
+
+    private int newPage(int size) {
+        addPage(pageCount, size);
+        reservedBytes += size;
+        return pageCount++;
+    }
+
+    /**
+     * @return the size class of a block of the given length, from 1 to {@link AbstractArena#PAGE_SIZE} bytes
+     * */
+    static int sizeClass(int length) {
+        if (length <= SMALL_SIZE) {
+            return (length - 1) / SMALL_STEP;
+        }
+        int log = Integer.SIZE - Integer.numberOfLeadingZeros(length - 1);
+        int base = 1 << (log - 1);
+        int step = base / CLASSES_PER_DOUBLING;
+        int index = (length - base - 1) / step;
+        return SMALL_CLASSES + (log - SMALL_SIZE_LOG - 1) * CLASSES_PER_DOUBLING + index;
+    }
+
+    /**
+     * @return the size of the blocks of the size class
+     * */
+    static int classSize(int sizeClass) {
+        if (sizeClass < SMALL_CLASSES) {
+            return (sizeClass + 1) * SMALL_STEP;
+        }
+        int large = sizeClass - SMALL_CLASSES;
+        int base = SMALL_SIZE << (large / CLASSES_PER_DOUBLING);
+        return base + (large % CLASSES_PER_DOUBLING + 1) * (base / CLASSES_PER_DOUBLING);
+    }
+
+    protected static long address(int page, int offset) {
+        return (long) page << Integer.SIZE | offset;
+    }
+
+    protected static int page(long address) {
+        return (int) (address >>> Integer.SIZE);
+    }
+
+    protected static int offset(long address) {
+        return (int) address;
+    }
+}
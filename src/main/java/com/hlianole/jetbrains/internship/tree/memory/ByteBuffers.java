@@ -0,0 +1,45 @@
+package com.hlianole.jetbrains.internship.tree.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Operations on keys stored in big-endian {@link ByteBuffer}s
+ * */
+public final class ByteBuffers {
+
+    private static final VarHandle LONG_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private ByteBuffers() {
+    }
+
+    /**
+     * Compares a key given as a slice of an array to the key stored in the buffer lexicographically
+     * using unsigned byte comparison, 8 bytes at a time
+     *
+     * @param index the index of the stored key in the buffer
+     * @param length the length of the stored key
+     * @param from the number of leading bytes already known to be equal
+     * @return less than 0 if the slice is less than the stored key, 0 if they are equal, greater than 0 otherwise
+     * */
+    public static int compare(ByteBuffer buffer, int index, int length, int from, byte[] key, int offset, int keyLength) {
+        int common = Math.min(length, keyLength);
+        int i = from;
+        for (; i + Long.BYTES <= common; i += Long.BYTES) {
+            long stored = buffer.getLong(index + i);
+            long other = (long) LONG_BIG_ENDIAN.get(key, offset + i);
+            if (stored != other) {
+                return Long.compareUnsigned(other, stored);
+            }
+        }
+        for (; i < common; i++) {
+            int comparison = Byte.toUnsignedInt(key[offset + i]) - Byte.toUnsignedInt(buffer.get(index + i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(keyLength, length);
+    }
+}
@@ -0,0 +1,93 @@
+package com.hlianole.jetbrains.internship.tree.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Extends {@link AbstractArena}
+ * <p>
+ * Keeps the pages in large {@code byte[]} slabs: the garbage collector sees one array per megabyte
+ * instead of two arrays per entry
+ * */
+public class HeapArena extends AbstractArena {
+
+    private static final VarHandle LONG_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private byte[][] pages = new byte[16][];
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void addPage(int page, int size) {
+        if (page == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length * 2);
+        }
+        pages[page] = new byte[size];
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void removePage(int page) {
+        pages[page] = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void removePages() {
+        pages = null;
+    }
+
+    @Override
+    protected long getLong(long address) {
+        return (long) LONG_BIG_ENDIAN.get(pages[page(address)], offset(address));
+    }
+
+    @Override
+    protected void putLong(long address, long value) {
+        LONG_BIG_ENDIAN.set(pages[page(address)], offset(address), value);
+    }
+
+    @Override
+    public void write(long address, byte[] bytes) {
+        if (address != NULL) {
+            System.arraycopy(bytes, 0, pages[page(address)], offset(address), bytes.length);
+        }
+    }
+
+    @Override
+    protected void read(long address, byte[] bytes) {
+        System.arraycopy(pages[page(address)], offset(address), bytes, 0, bytes.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void copy(long address, int length, ByteBuffer out) {
+        if (address != NULL) {
+            out.put(pages[page(address)], offset(address), length);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The bytes are compared by {@link Arrays#compareUnsigned(byte[], int, int, byte[], int, int)}
+     * */
+    @Override
+    public int compare(long address, int length, int from, byte[] key, int offset, int keyLength) {
+        if (address == NULL) {
+            return keyLength;
+        }
+        int base = offset(address);
+        return Arrays.compareUnsigned(key, offset + from, offset + keyLength, pages[page(address)], base + from, base + length);
+    }
+}
@@ -0,0 +1,105 @@
+package com.hlianole.jetbrains.internship.tree.memory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live bytes and entries of a tree against the number of bytes it may use.
+ * <p>
+ * An entry is charged its key and value arrays and the fixed objects around them: the node,
+ * the key and the value wrappers, with a compressed-oops layout. Recording is a few {@link LongAdder}
+ * additions, safe to call from any number of threads. The values are read without stopping the writers,
+ * so they are consistent only approximately
+ * */
+public final class MemoryBudget {
+
+    /**
+     * The node (48 B), the key wrapper (24 B), the value wrapper (16 B) and the headers of the two arrays (16 B each)
+     * */
+    public static final int ENTRY_OVERHEAD = 48 + 24 + 16 + 2 * 16;
+
+    private final long capacity;
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity the number of bytes the entries may use
+     * */
+    public MemoryBudget(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the bytes charged for an entry, the arrays rounded up to 8 bytes like the JVM aligns them
+     * */
+    public static long entrySize(int keyLength, int valueLength) {
+        return ENTRY_OVERHEAD + align(keyLength) + align(valueLength);
+    }
+
+    /**
+     * Records a new entry
+     * */
+    public void recordInsert(int keyLength, int valueLength) {
+        bytes.add(entrySize(keyLength, valueLength));
+        entries.increment();
+    }
+
+    /**
+     * Records the change of the value of an existing entry
+     * */
+    public void recordUpdate(int previousLength, int valueLength) {
+        bytes.add(align(valueLength) - align(previousLength));
+    }
+
+    /**
+     * Records a removed entry
+     *
+     * @param evicted true if the entry was removed to free the memory
+     * */
+    public void recordRemove(int keyLength, int valueLength, boolean evicted) {
+        bytes.add(-entrySize(keyLength, valueLength));
+        entries.decrement();
+        if (evicted) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * @return true if the entries use more bytes than the capacity
+     * */
+    public boolean isExceeded() {
+        return bytes.sum() > capacity;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes used by the entries
+     * */
+    public long usedBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return the number of entries in the tree
+     * */
+    public long entries() {
+        return entries.sum();
+    }
+
+    /**
+     * @return the number of entries removed to free the memory
+     * */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private static long align(int length) {
+        return (length + 7L) & ~7L;
+    }
+}
@@ -0,0 +1,132 @@
+package com.hlianole.jetbrains.internship.tree.memory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Extends {@link AbstractArena}
+ * <p>
+ * Keeps the pages in native {@link MemorySegment}s, so the stored bytes are neither scanned nor moved
+ * by the garbage collector and are not limited by {@code -XX:MaxDirectMemorySize}.
+ * The pages are allocated from a shared {@link Arena}, so they can be read by any thread.
+ * A block larger than a page gets an {@link Arena} of its own, freed as soon as the block is freed.
+ * Closing the arena frees all the memory at once
+ * */
+public class OffHeapArena extends AbstractArena {
+
+    private final Arena memory = Arena.ofShared();
+
+    private MemorySegment[] pages = new MemorySegment[16];
+
+    /**
+     * The arenas of the blocks larger than a page, {@code null} for the pages allocated from the shared arena
+     * */
+    private Arena[] largePages = new Arena[16];
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    protected void addPage(int page, int size) {
+        if (page == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length * 2);
+            largePages = Arrays.copyOf(largePages, largePages.length * 2);
+        }
+        if (size > PAGE_SIZE) {
+            largePages[page] = Arena.ofShared();
+            pages[page] = largePages[page].allocate(size, Long.BYTES);
+        } else {
+            pages[page] = memory.allocate(size, Long.BYTES);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only a page of a large block is ever removed, its memory is freed immediately
+     * */
+    @Override
+    protected void removePage(int page) {
+        largePages[page].close();
+        largePages[page] = null;
+        pages[page] = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The memory is freed immediately, a segment of the arena must not be accessed afterwards
+     * */
+    @Override
+    protected void removePages() {
+        for (Arena largePage : largePages) {
+            if (largePage != null) {
+                largePage.close();
+            }
+        }
+        memory.close();
+        pages = null;
+        largePages = null;
+    }
+
+    @Override
+    protected long getLong(long address) {
+        return pages[page(address)].get(ValueLayout.JAVA_LONG, offset(address));
+    }
+
+    @Override
+    protected void putLong(long address, long value) {
+        pages[page(address)].set(ValueLayout.JAVA_LONG, offset(address), value);
+    }
+
+    @Override
+    public void write(long address, byte[] bytes) {
+        if (address != NULL) {
+            MemorySegment.copy(bytes, 0, pages[page(address)], ValueLayout.JAVA_BYTE, offset(address), bytes.length);
+        }
+    }
+
+    @Override
+    protected void read(long address, byte[] bytes) {
+        MemorySegment.copy(pages[page(address)], ValueLayout.JAVA_BYTE, offset(address), bytes, 0, bytes.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * */
+    @Override
+    public void copy(long address, int length, ByteBuffer out) {
+        if (address != NULL) {
+            MemorySegment.copy(pages[page(address)], offset(address), MemorySegment.ofBuffer(out), 0, length);
+            out.position(out.position() + length);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The first differing byte is found with {@link MemorySegment#mismatch(MemorySegment, long, long, MemorySegment, long, long)}
+     * */
+    @Override
+    public int compare(long address, int length, int from, byte[] key, int offset, int keyLength) {
+        if (address == NULL) {
+            return keyLength;
+        }
+
+        MemorySegment page = pages[page(address)];
+        long start = offset(address);
+        long mismatch = MemorySegment.mismatch(MemorySegment.ofArray(key), offset + from, offset + keyLength,
+                page, start + from, start + length);
+        if (mismatch < 0) {
+            return 0;
+        }
+        if (from + mismatch == Math.min(length, keyLength)) {
+            return Integer.compare(keyLength, length);
+        }
+        return Byte.toUnsignedInt(key[offset + from + (int) mismatch])
+                - Byte.toUnsignedInt(page.get(ValueLayout.JAVA_BYTE, start + from + mismatch));
+    }
+}
@@ -0,0 +1,74 @@
+package com.hlianole.jetbrains.internship.tree.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of durations in nanoseconds with power-of-two buckets: the bucket {@code i}
+ * counts the durations in [2^(i-1), 2^i). Recording is one {@link LongAdder} increment,
+ * so threads recording at the same time do not contend.
+ * <p>
+ * The percentiles are the upper bounds of the buckets, accurate within a factor of two
+ * */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = Long.SIZE;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        buckets[BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 0))].increment();
+        total.add(nanos);
+    }
+
+    /**
+     * @return the number of recorded durations
+     * */
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of the recorded durations in nanoseconds
+     * */
+    public long totalNanos() {
+        return total.sum();
+    }
+
+    /**
+     * @param percentile the percentile in [0, 100]
+     * @return the upper bound in nanoseconds of the bucket containing the percentile, 0 if nothing was recorded
+     * */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in [0, 100]");
+        }
+
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (counts[i] > 0 && seen >= rank) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return 0;
+    }
+}
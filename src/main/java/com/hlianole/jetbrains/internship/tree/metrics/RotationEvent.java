@@ -0,0 +1,28 @@
+package com.hlianole.jetbrains.internship.tree.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event of a rotation. Disabled by default, as every other insertion rotates;
+ * enable it to find rotation storms
+ * */
+@Name("com.hlianole.tree.Rotation")
+@Label("Tree Rotation")
+@Category("Tree")
+@Description("A single or double AVL rotation")
+@Enabled(false)
+@StackTrace(false)
+public class RotationEvent extends jdk.jfr.Event {
+
+    @Label("Double")
+    public boolean doubleRotation;
+
+    @Label("Height")
+    @Description("The height of the subtree after the rotation")
+    public int height;
+}
@@ -0,0 +1,100 @@
+package com.hlianole.jetbrains.internship.tree.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * The counters of a tree: operation latencies, lock waits, rotations, entries and height.
+ * Recording is a few {@link LongAdder} increments, safe to call from any number of threads.
+ * The values are read without stopping the writers, so they are consistent only approximately
+ * */
+public final class TreeMetrics {
+
+    public enum Operation {
+        GET, PUT, REMOVE
+    }
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LatencyHistogram lockWaits = new LatencyHistogram();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+    private final IntSupplier height;
+
+    /**
+     * @param height reads the current height of the tree
+     * */
+    public TreeMetrics(IntSupplier height) {
+        this.height = height;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public void recordLatency(Operation operation, long nanos) {
+        latencies.get(operation).record(nanos);
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWaits.record(nanos);
+    }
+
+    public void recordRotation() {
+        rotations.increment();
+    }
+
+    /**
+     * Records the new entries, not the updates of the values of existing keys
+     * */
+    public void recordInserts(int count) {
+        inserts.add(count);
+        entries.add(count);
+    }
+
+    public void recordRemove() {
+        entries.decrement();
+    }
+
+    /**
+     * @return the number of completed operations
+     * */
+    public long count(Operation operation) {
+        return latencies.get(operation).count();
+    }
+
+    public LatencyHistogram latency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    /**
+     * @return the time writers waited to acquire the locks guarding the links they change
+     * */
+    public LatencyHistogram lockWaits() {
+        return lockWaits;
+    }
+
+    /**
+     * @return the number of rotations, a double rotation counts as one
+     * */
+    public long rotations() {
+        return rotations.sum();
+    }
+
+    public double rotationsPerInsert() {
+        long count = inserts.sum();
+        return count == 0 ? 0 : (double) rotations.sum() / count;
+    }
+
+    /**
+     * @return the number of entries in the tree
+     * */
+    public long entries() {
+        return entries.sum();
+    }
+
+    public int height() {
+        return height.getAsInt();
+    }
+}
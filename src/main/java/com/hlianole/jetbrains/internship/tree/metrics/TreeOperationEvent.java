@@ -0,0 +1,31 @@
+package com.hlianole.jetbrains.internship.tree.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A JDK Flight Recorder event of a tree operation. Only the operations slower than the threshold
+ * (1 ms by default) are recorded. The monitor contention of the writers is recorded by the JVM itself
+ * as {@code jdk.JavaMonitorEnter} events
+ * */
+@Name("com.hlianole.tree.Operation")
+@Label("Tree Operation")
+@Category("Tree")
+@Description("A get, put or remove of a tree")
+@Threshold("1 ms")
+@StackTrace(false)
+public class TreeOperationEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Key Length")
+    public int keyLength;
+
+    @Label("Tree Height")
+    public int height;
+}
@@ -3,65 +3,217 @@ package com.hlianole.jetbrains.internship.tree.node;
 import com.hlianole.jetbrains.internship.tree.data.Key;
 import com.hlianole.jetbrains.internship.tree.data.Value;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
- * Represents a node in a binary search tree structure.
+ * Represents a node in a binary search tree structure. Contains key ({@link Key}),
+ * value ({@link Value}) and height (Needed for the AVL tree implementation)
+ * <p>
+ * An absent child or parent is {@code null}. The class is final, so every call on the search path
+ * is resolved statically and inlined
+ * <p>
+ * The value is {@code null} if the key has been removed, but the node is still needed to route the searches
  * */
-public interface Node {
+public final class Node {
+
+    /**
+     * The version of the node which has been removed from the tree. See {@link Node#unlink()}
+     * */
+    public static final long UNLINKED = Long.MIN_VALUE;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Node.class, "value", Value.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Key key;
+    private volatile Value value;
+
+    private volatile Node left;
+    private volatile Node right;
+    private volatile Node parent;
+
+    private volatile int height = 1;
+    private volatile long version = 0;
+
+    /**
+     * The clock bit of a bounded tree, set by the lookups and cleared by the eviction sweep.
+     * Plain, because a lost update only gives the node one more or one less sweep before it is evicted.
+     * The field fits into the alignment padding of the node, so it costs no memory
+     * */
+    private boolean referenced;
+
+    public Node(Key key, Value value) {
+        this.key = key;
+        this.value = value;
+    }
 
     /**
-     * @return the left child of the node
+     * @return the left child of the node, or {@code null}
      * */
-    Node getLeft();
+    public Node getLeft() {
+        return left;
+    }
 
     /**
      * Sets the left child of the node
      * */
-    Node setLeft(Node node);
+    public Node setLeft(Node node) {
+        left = node;
+        return this;
+    }
 
     /**
-     * @return the right child of the node
+     * @return the right child of the node, or {@code null}
      * */
-    Node getRight();
+    public Node getRight() {
+        return right;
+    }
 
     /**
      * Sets the right child of the node
      * */
-    Node setRight(Node node);
+    public Node setRight(Node node) {
+        right = node;
+        return this;
+    }
 
     /**
-     * @return the parent of the node
+     * @return the parent of the node, or {@code null} for the root
      * */
-    Node getParent();
+    public Node getParent() {
+        return parent;
+    }
 
     /**
      * Sets the parent of the node
      * */
-    Node setParent(Node node);
+    public Node setParent(Node node) {
+        parent = node;
+        return this;
+    }
 
     /**
      * @return the value stored in the node
      * */
-    Value getValue();
+    public Value getValue() {
+        return value;
+    }
 
     /**
      * Sets the value of the node
      * */
-    Node setValue(Value value);
+    public Node setValue(Value value) {
+        this.value = value;
+        return this;
+    }
+
+    /**
+     * Atomically sets the value of the node if the current value is the expected one (compared by reference)
+     *
+     * @return true if the value was set
+     * */
+    public boolean compareAndSetValue(Value expected, Value value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+
+    /**
+     * @return the key stored in the node
+     * */
+    public Key getKey() {
+        return key;
+    }
 
     /**
      * Compares this node's key to another key. See {@link Key#compare(Key)}
      * */
-    int compareKey(Key key);
+    public int compareKey(Key key) {
+        return this.key.compare(key);
+    }
+
+    /**
+     * Compares this node's key to a key given as a slice of an array. See {@link Key#compare(long, byte[], int, int)}
+     * */
+    public int compareKey(long prefix, byte[] key, int offset, int length) {
+        return this.key.compare(prefix, key, offset, length);
+    }
 
     /**
      * @return the height of the node. Needed for the AVL tree implementation
      * */
-    int getHeight();
+    public int getHeight() {
+        return height;
+    }
 
     /**
      * Sets the height of the node. Needed for the AVL tree implementation
      * */
-    Node setHeight(int height);
+    public Node setHeight(int height) {
+        this.height = height;
+        return this;
+    }
 
-}
+    /**
+     * @return the version of the node. Needed for the optimistic (lock-free) reading.
+     * The version is odd while the node is shrinking, i.e. moving down during the rotation
+     * */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Marks the node as shrinking. Readers which see a shrinking node must wait until the change is finished.
+     * Must be called only by the thread which is changing the tree structure
+     * */
+    public Node beginChange() {
+        version++;
+        return this;
+    }
+
+    /**
+     * Finishes the change started by {@link Node#beginChange()} and publishes a new version of the node.
+     * Must be called only by the thread which is changing the tree structure
+     * */
+    public Node endChange() {
+        version++;
+        return this;
+    }
+
+    /**
+     * Sets the clock bit of the node, without writing the node if it is set already
+     * */
+    public void markReferenced() {
+        if (!referenced) {
+            referenced = true;
+        }
+    }
+
+    /**
+     * Clears the clock bit of the node
+     *
+     * @return true if it was set
+     * */
+    public boolean clearReferenced() {
+        if (referenced) {
+            referenced = false;
+            return true;
+        }
+        return false;
+    }
 
+    /**
+     * Marks the node as removed from the tree. The version of the node becomes {@link Node#UNLINKED} forever,
+     * so readers which are still in the node will notice the change and retry.
+     * Must be called only under the locks of the node and its parent
+     * */
+    public Node unlink() {
+        version = UNLINKED;
+        return this;
+    }
+}
@@ -0,0 +1,287 @@
+package com.hlianole.jetbrains.internship.tree.snapshot;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.memory.ByteBuffers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only snapshot file written by {@link SnapshotWriter}, memory-mapped with {@link FileChannel#map}.
+ * <p>
+ * Opening the file maps it and reads the footer, nothing else, so it takes the same time for any size of the file.
+ * A lookup binary searches the sparse index for the last indexed entry not greater than the key, then reads
+ * at most {@link SnapshotFile#INDEX_INTERVAL} entries forward, all straight from the mapping.
+ * <p>
+ * An entry is addressed by its offset in the file. The file is mapped in segments of 1 GiB,
+ * the rare keys crossing the border of two segments are copied before being compared.
+ * The snapshot is immutable, so it can be read by any number of threads
+ * */
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x41564C53;
+    static final int VERSION = 1;
+    static final int INDEX_INTERVAL = 64;
+    static final int ENTRY_HEADER = 2 * Integer.BYTES;
+
+    private static final int FOOTER_SIZE = 2 * Long.BYTES + 4 * Integer.BYTES;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private final MappedByteBuffer[] segments;
+    private final long entryCount;
+    private final long dataSize;
+    private final int indexSize;
+    private final int indexInterval;
+
+    private SnapshotFile(MappedByteBuffer[] segments, long fileSize) throws IOException {
+        this.segments = segments;
+        long footer = fileSize - FOOTER_SIZE;
+        if (getInt(footer + 2 * Long.BYTES + 3 * Integer.BYTES) != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        if (getInt(footer + 2 * Long.BYTES + 2 * Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported snapshot version");
+        }
+        this.entryCount = getLong(footer);
+        this.dataSize = getLong(footer + Long.BYTES);
+        this.indexSize = getInt(footer + 2 * Long.BYTES);
+        this.indexInterval = getInt(footer + 2 * Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Maps the snapshot file
+     *
+     * @throws IOException if the file cannot be read or is not a snapshot file
+     * */
+    public static SnapshotFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                throw new IOException("Not a snapshot file");
+            }
+
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+            }
+            return new SnapshotFile(segments, size);
+        }
+    }
+
+    /**
+     * @return the number of entries in the snapshot
+     * */
+    public long size() {
+        return entryCount;
+    }
+
+    /**
+     * @return the offset of the entry with the key given as a slice of the array, or -1 if there is no such key
+     * */
+    public long find(byte[] key, int offset, int length) {
+        int slot = slot(key, offset, length, true);
+        if (slot < 0) {
+            return -1;
+        }
+
+        long entry = indexedEntry(slot);
+        for (int i = 0; i < indexInterval && entry < dataSize; i++) {
+            int comparison = compare(entry, key, offset, length);
+            if (comparison == 0) {
+                return entry;
+            }
+            if (comparison < 0) {
+                return -1;
+            }
+            entry = next(entry);
+        }
+        return -1;
+    }
+
+    /**
+     * @param key the key to search for, or {@code null} to search for the first or the last entry
+     * @param above true to search for the least entry greater than the key, false for the greatest entry less than the key
+     * @param inclusive true if the entry with the key itself can be returned
+     * @return the offset of the found entry, or -1 if there is no such entry
+     * */
+    public long nearest(byte[] key, boolean above, boolean inclusive) {
+        if (entryCount == 0) {
+            return -1;
+        }
+
+        if (above) {
+            int slot = key == null ? 0 : slot(key, 0, key.length, true);
+            for (long entry = indexedEntry(Math.max(slot, 0)); entry < dataSize; entry = next(entry)) {
+                int comparison = key == null ? -1 : compare(entry, key, 0, key.length);
+                if (comparison < 0 || (comparison == 0 && inclusive)) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        int slot = key == null ? indexSize - 1 : slot(key, 0, key.length, inclusive);
+        if (slot < 0) {
+            return -1;
+        }
+        long candidate = indexedEntry(slot);
+        for (long entry = next(candidate); entry < dataSize; entry = next(entry)) {
+            int comparison = key == null ? 1 : compare(entry, key, 0, key.length);
+            if (comparison < 0 || (comparison == 0 && !inclusive)) {
+                break;
+            }
+            candidate = entry;
+        }
+        return candidate;
+    }
+
+    /**
+     * Iterates over the entries with keys in the range [fromKey, toKey) in ascending key order
+     *
+     * @param fromKey the lowest key (inclusive), or {@code null} to start from the first key
+     * @param toKey the highest key (exclusive), or {@code null} to iterate up to the last key
+     * */
+    public Iterator<Entry> scan(byte[] fromKey, byte[] toKey) {
+        long first = nearest(fromKey, true, true);
+        return new Iterator<>() {
+            private long entry = first;
+
+            @Override
+            public boolean hasNext() {
+                if (entry >= 0 && toKey != null && compare(entry, toKey, 0, toKey.length) <= 0) {
+                    entry = -1;
+                }
+                return entry >= 0;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry next = new Entry(key(entry), value(entry));
+                entry = SnapshotFile.this.next(entry);
+                if (entry >= dataSize) {
+                    entry = -1;
+                }
+                return next;
+            }
+        };
+    }
+
+    public byte[] key(long entry) {
+        byte[] key = new byte[getInt(entry)];
+        read(entry + ENTRY_HEADER, key);
+        return key;
+    }
+
+    public byte[] value(long entry) {
+        byte[] value = new byte[getInt(entry + Integer.BYTES)];
+        read(entry + ENTRY_HEADER + getInt(entry), value);
+        return value;
+    }
+
+    /**
+     * Compares a key given as a slice of an array to the key of the entry
+     *
+     * @return less than 0 if the slice is less than the key of the entry, 0 if they are equal, greater than 0 otherwise
+     * */
+    public int compare(long entry, byte[] key, int offset, int length) {
+        int keyLength = getInt(entry);
+        long position = entry + ENTRY_HEADER;
+        int segmentOffset = segmentOffset(position);
+        MappedByteBuffer segment = segments[segment(position)];
+        if (segmentOffset + keyLength <= segment.limit()) {
+            return ByteBuffers.compare(segment, segmentOffset, keyLength, 0, key, offset, length);
+        }
+
+        byte[] stored = new byte[keyLength];
+        read(position, stored);
+        return Arrays.compareUnsigned(key, offset, offset + length, stored, 0, keyLength);
+    }
+
+    /**
+     * @return the offset of the entry following the given one
+     * */
+    private long next(long entry) {
+        return entry + ENTRY_HEADER + getInt(entry) + getInt(entry + Integer.BYTES);
+    }
+
+    private long indexedEntry(int slot) {
+        return getLong(dataSize + (long) slot * Long.BYTES);
+    }
+
+    /**
+     * @return the last slot of the index with a key less than (or equal to, if inclusive) the key, or -1
+     * */
+    private int slot(byte[] key, int offset, int length, boolean inclusive) {
+        int low = 0;
+        int high = indexSize - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(indexedEntry(middle), key, offset, length);
+            if (comparison > 0 || (comparison == 0 && inclusive)) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private int getInt(long position) {
+        int offset = segmentOffset(position);
+        MappedByteBuffer segment = segments[segment(position)];
+        if (offset + Integer.BYTES <= segment.limit()) {
+            return segment.getInt(offset);
+        }
+        return (int) getNumber(position, Integer.BYTES);
+    }
+
+    private long getLong(long position) {
+        int offset = segmentOffset(position);
+        MappedByteBuffer segment = segments[segment(position)];
+        if (offset + Long.BYTES <= segment.limit()) {
+            return segment.getLong(offset);
+        }
+        return getNumber(position, Long.BYTES);
+    }
+
+    private long getNumber(long position, int bytes) {
+        long number = 0;
+        for (int i = 0; i < bytes; i++) {
+            number = number << Byte.SIZE | Byte.toUnsignedLong(segments[segment(position + i)].get(segmentOffset(position + i)));
+        }
+        return number;
+    }
+
+    private void read(long position, byte[] bytes) {
+        int done = 0;
+        while (done < bytes.length) {
+            MappedByteBuffer segment = segments[segment(position + done)];
+            int offset = segmentOffset(position + done);
+            int length = Math.min(bytes.length - done, segment.limit() - offset);
+            segment.get(offset, bytes, done, length);
+            done += length;
+        }
+    }
+
+    private static int segment(long position) {
+        return (int) (position >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentOffset(long position) {
+        return (int) (position & (SEGMENT_SIZE - 1));
+    }
+}
@@ -0,0 +1,90 @@
+package com.hlianole.jetbrains.internship.tree.snapshot;
+
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Writes entries sorted by key into a snapshot file read by {@link SnapshotFile}.
+ * <p>
+ * The file consists of the entries ({@code int} key length, {@code int} value length, key, value),
+ * followed by the sparse index (the {@code long} offset of every {@link SnapshotFile#INDEX_INTERVAL}-th entry)
+ * and a fixed-size footer. All numbers are big-endian.
+ * <p>
+ * The entries are streamed, only the sparse index is kept in memory. The file is written next to the target,
+ * forced to the disk and atomically moved into place, so a crash never leaves a partial snapshot behind
+ * */
+public final class SnapshotWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotWriter() {
+    }
+
+    /**
+     * @param entries the entries in strictly ascending key order
+     * @return the number of written entries
+     * @throws IllegalArgumentException if the entries are not sorted
+     * */
+    public static long write(Iterator<Entry> entries, Path path) throws IOException, IllegalArgumentException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+
+            long[] index = new long[16];
+            int indexSize = 0;
+            long offset = 0;
+            byte[] previous = null;
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (previous != null && Arrays.compareUnsigned(previous, entry.key()) >= 0) {
+                    throw new IllegalArgumentException("Entries must be sorted by key in strictly ascending order");
+                }
+                previous = entry.key();
+
+                if (count % SnapshotFile.INDEX_INTERVAL == 0) {
+                    if (indexSize == index.length) {
+                        index = Arrays.copyOf(index, index.length * 2);
+                    }
+                    index[indexSize++] = offset;
+                }
+                out.writeInt(entry.key().length);
+                out.writeInt(entry.value().length);
+                out.write(entry.key());
+                out.write(entry.value());
+                offset += SnapshotFile.ENTRY_HEADER + entry.key().length + entry.value().length;
+                count++;
+            }
+
+            for (int i = 0; i < indexSize; i++) {
+                out.writeLong(index[i]);
+            }
+            out.writeLong(count);
+            out.writeLong(offset);
+            out.writeInt(indexSize);
+            out.writeInt(SnapshotFile.INDEX_INTERVAL);
+            out.writeInt(SnapshotFile.VERSION);
+            out.writeInt(SnapshotFile.MAGIC);
+            out.flush();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+}
@@ -0,0 +1,224 @@
+package com.hlianole.jetbrains.internship.tree.vlog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only log of large values, kept in memory-mapped segment files of a directory.
+ * <p>
+ * A value is addressed by its segment, its offset in the segment and its length, see {@link ValueLog#append(byte[])}.
+ * Appending copies the value at the end of the active segment, so the writes reach the disk as sequential I/O.
+ * A full segment is sealed and a new one is created; segments are never written again once sealed.
+ * <p>
+ * Every segment counts its live bytes: appending adds the length of the value, {@link ValueLog#release(long, int)}
+ * subtracts it once the value is no longer referenced. A sealed segment without live bytes is deleted.
+ * A reader holding the address of a value of a deleted segment gets {@code null} and must look the address up again.
+ * The mapping of a deleted segment stays valid until the garbage collector clears it, so a read that already
+ * started is never torn.
+ * <p>
+ * The log is scratch space of a running process: the segments left by a previous process are deleted on open
+ * */
+public class ValueLog implements AutoCloseable {
+
+    private static final String PREFIX = "values-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentHashMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    private Segment active;
+    private int nextSegment;
+    private volatile boolean closed;
+
+    private ValueLog(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Creates the log in the directory, deleting the segments of a previous log
+     *
+     * @param segmentSize the size of a segment file, a larger value gets a segment of its own
+     * */
+    public static ValueLog open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stale) {
+                Files.delete(path);
+            }
+        }
+        return new ValueLog(directory, segmentSize);
+    }
+
+    /**
+     * Copies the value at the end of the active segment
+     *
+     * @return the address of the value, see {@link ValueLog#segment(long)} and {@link ValueLog#offset(long)}
+     * @throws UncheckedIOException if a new segment cannot be created
+     * */
+    public synchronized long append(byte[] value) throws UncheckedIOException {
+        if (closed) {
+            throw new IllegalStateException("The log is closed");
+        }
+
+        if (active == null || segmentSize - active.end < value.length) {
+            if (active != null) {
+                seal(active);
+            }
+            active = create(Math.max(segmentSize, value.length));
+        }
+
+        Segment segment = active;
+        int offset = segment.end;
+        segment.mapping.put(offset, value);
+        segment.end += value.length;
+        segment.live.addAndGet(value.length);
+        return address(segment.id, offset);
+    }
+
+    /**
+     * Reads a value appended to the log
+     *
+     * @return the value, or {@code null} if its segment was deleted
+     * */
+    public byte[] read(long address, int length) {
+        Segment segment = segments.get(segment(address));
+        if (segment == null) {
+            return null;
+        }
+
+        byte[] value = new byte[length];
+        segment.mapping.get(offset(address), value);
+        return value;
+    }
+
+    /**
+     * Marks the value as no longer referenced. Deletes its segment if it is sealed and has no more live bytes
+     * */
+    public void release(long address, int length) {
+        Segment segment = segments.get(segment(address));
+        if (segment != null && segment.live.addAndGet(-length) == 0 && segment.sealed) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * @return the ids of the sealed segments whose live bytes are less than the given fraction of their size
+     * */
+    public List<Integer> sparseSegments(double liveRatio) {
+        List<Integer> sparse = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.sealed && segment.live.get() < segment.mapping.capacity() * liveRatio) {
+                sparse.add(segment.id);
+            }
+        }
+        return sparse;
+    }
+
+    /**
+     * @return the total size of the segment files
+     * */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.mapping.capacity();
+        }
+        return size;
+    }
+
+    /**
+     * Deletes all the segments. Reading a value afterwards returns {@code null}, see {@link ValueLog#isClosed()}
+     * */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        active = null;
+        for (Segment segment : segments.values()) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * @return true if the log is closed or being closed, so a value that cannot be read will never be readable
+     * */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public static int segment(long address) {
+        return (int) (address >>> Integer.SIZE);
+    }
+
+    public static int offset(long address) {
+        return (int) address;
+    }
+
+    private static long address(int segment, int offset) {
+        return (long) segment << Integer.SIZE | Integer.toUnsignedLong(offset);
+    }
+
+    private Segment create(int size) {
+        int id = nextSegment++;
+        Path path = directory.resolve(String.format("%s%08d%s", PREFIX, id, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create a segment of the value log", e);
+        }
+    }
+
+    private void seal(Segment segment) {
+        segment.sealed = true;
+        if (segment.live.get() == 0) {
+            delete(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        if (segments.remove(segment.id, segment)) {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException ignored) {
+                // the file of a scratch segment is left behind and deleted by the next open
+            }
+        }
+    }
+
+    private static class Segment {
+
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer mapping;
+        private final AtomicLong live = new AtomicLong();
+
+        /**
+         * Only changed under the lock of the log
+         * */
+        private int end;
+        private volatile boolean sealed;
+
+        Segment(int id, Path path, MappedByteBuffer mapping) {
+            this.id = id;
+            this.path = path;
+            this.mapping = mapping;
+        }
+    }
+}
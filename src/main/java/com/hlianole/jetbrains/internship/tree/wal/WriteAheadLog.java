@@ -0,0 +1,349 @@
+package com.hlianole.jetbrains.internship.tree.wal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of puts and removes with group commit.
+ * <p>
+ * A record is the {@code int} key length, the {@code int} value length (-1 for a remove), the key, the value
+ * and the CRC32C of all of them. Appending only copies the record into a memory buffer and returns its log sequence
+ * number, the end offset of the record in the log. {@link WriteAheadLog#commit(long)} then makes the record
+ * as durable as the {@link SyncPolicy} requires.
+ * <p>
+ * Committing writers elect a leader: the first one swaps the buffer, writes it and forces the file outside
+ * the lock, while the others wait. Every record appended meanwhile goes into the next batch,
+ * so a single {@link FileChannel#force(boolean)} covers all the writers of a batch.
+ * <p>
+ * On open, the log is read from the start. A torn or corrupted tail left by a crash is cut off
+ * */
+public class WriteAheadLog implements AutoCloseable {
+
+    /**
+     * How a commit waits for the records to reach the disk
+     * */
+    public enum SyncPolicy {
+        /**
+         * Every commit returns after its record is forced to the disk. Concurrent commits share one force
+         * */
+        EVERY_WRITE,
+        /**
+         * Commits only hand the records to the operating system once the buffer is large enough,
+         * a background thread forces the file every sync interval. A crash loses at most one interval of writes
+         * */
+        PERIODIC,
+        /**
+         * Commits only hand the records to the operating system once the buffer is large enough.
+         * The file is forced on close
+         * */
+        NONE
+    }
+
+    /**
+     * Receives the records of the log on open, in the order they were appended
+     * */
+    public interface Replay {
+
+        void put(byte[] key, byte[] value);
+
+        void remove(byte[] key);
+    }
+
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+    private static final int RECORD_TRAILER = Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int REMOVE = -1;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32C checksum = new CRC32C();
+
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private long appended;
+    private long written;
+    private long durable;
+    private boolean flushing;
+    private IOException failure;
+
+    private WriteAheadLog(FileChannel channel, long end, SyncPolicy policy, Duration syncInterval) {
+        this.channel = channel;
+        this.policy = policy;
+        this.appended = end;
+        this.written = end;
+        this.durable = end;
+
+        if (policy == SyncPolicy.PERIODIC) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = syncInterval.toNanos();
+            flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Opens or creates the log, replaying its records
+     *
+     * @param syncInterval how often the file is forced with {@link SyncPolicy#PERIODIC}
+     * */
+    public static WriteAheadLog open(Path path, SyncPolicy policy, Duration syncInterval, Replay replay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = replay(channel, replay);
+            channel.truncate(end);
+            channel.position(end);
+            return new WriteAheadLog(channel, end, policy, syncInterval);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a put of the key
+     *
+     * @return the log sequence number of the record
+     * */
+    public long appendPut(byte[] key, byte[] value) throws UncheckedIOException {
+        return append(key, value);
+    }
+
+    /**
+     * Appends a remove of the key
+     *
+     * @return the log sequence number of the record
+     * */
+    public long appendRemove(byte[] key) throws UncheckedIOException {
+        return append(key, null);
+    }
+
+    /**
+     * Makes the records up to the log sequence number as durable as the {@link SyncPolicy} requires
+     * */
+    public void commit(long sequenceNumber) throws UncheckedIOException {
+        if (policy == SyncPolicy.EVERY_WRITE) {
+            flush(sequenceNumber, true);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (buffer.position() < BUFFER_SIZE / 2) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        flush(sequenceNumber, false);
+    }
+
+    /**
+     * Forces all the appended records to the disk and closes the file
+     * */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            // Interrupting a flush in progress would close the channel, so the running flush is waited for
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long end;
+        lock.lock();
+        try {
+            end = appended;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flush(end, true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private long append(byte[] key, byte[] value) {
+        int valueLength = value == null ? 0 : value.length;
+        int size = RECORD_HEADER + key.length + valueLength + RECORD_TRAILER;
+
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new UncheckedIOException("The log failed", failure);
+            }
+            if (buffer.remaining() < size) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+                buffer.flip();
+                buffer = grown.put(buffer);
+            }
+
+            int start = buffer.position();
+            buffer.putInt(key.length);
+            buffer.putInt(value == null ? REMOVE : value.length);
+            buffer.put(key);
+            if (value != null) {
+                buffer.put(value);
+            }
+            checksum.reset();
+            checksum.update(buffer.array(), start, buffer.position() - start);
+            buffer.putInt((int) checksum.getValue());
+
+            appended += size;
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and, if required, forces the records up to the log sequence number. The first waiting writer
+     * becomes the leader and flushes the whole buffer for everybody
+     * */
+    private void flush(long sequenceNumber, boolean force) {
+        lock.lock();
+        try {
+            while ((force ? durable : written) < sequenceNumber) {
+                if (failure != null) {
+                    throw new UncheckedIOException("The log failed", failure);
+                }
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+
+                flushing = true;
+                ByteBuffer batch = buffer;
+                buffer = spare;
+                long end = appended;
+                IOException error = null;
+                lock.unlock();
+                try {
+                    batch.flip();
+                    while (batch.hasRemaining()) {
+                        channel.write(batch);
+                    }
+                    if (force) {
+                        channel.force(false);
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                    if (error != null) {
+                        failure = error;
+                    }
+                    batch.clear();
+                    if (batch.capacity() == BUFFER_SIZE) {
+                        spare = batch;
+                    } else {
+                        spare = ByteBuffer.allocate(BUFFER_SIZE);
+                    }
+                    if (failure == null) {
+                        written = end;
+                        if (force) {
+                            durable = end;
+                        }
+                    }
+                    flushing = false;
+                    flushed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        long end;
+        lock.lock();
+        try {
+            end = appended;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flush(end, true);
+        } catch (UncheckedIOException ignored) {
+            // the failure is reported to the next writer
+        }
+    }
+
+    /**
+     * @return the end of the last valid record
+     * */
+    private static long replay(FileChannel channel, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), BUFFER_SIZE));
+        long size = channel.size();
+        long end = 0;
+        CRC32C checksum = new CRC32C();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        try {
+            while (end + RECORD_HEADER + RECORD_TRAILER <= size) {
+                int keyLength = in.readInt();
+                int valueLength = in.readInt();
+                long remaining = size - end - RECORD_HEADER - RECORD_TRAILER;
+                if (keyLength < 0 || valueLength < REMOVE || keyLength + (long) Math.max(valueLength, 0) > remaining) {
+                    break;
+                }
+
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                byte[] value = valueLength == REMOVE ? null : new byte[valueLength];
+                if (value != null) {
+                    in.readFully(value);
+                }
+
+                checksum.reset();
+                checksum.update(header.clear().putInt(keyLength).putInt(valueLength).flip());
+                checksum.update(key);
+                if (value != null) {
+                    checksum.update(value);
+                }
+                if (in.readInt() != (int) checksum.getValue()) {
+                    break;
+                }
+
+                if (value == null) {
+                    replay.remove(key);
+                } else {
+                    replay.put(key, value);
+                }
+                end += RECORD_HEADER + keyLength + (value == null ? 0 : valueLength) + RECORD_TRAILER;
+            }
+        } catch (EOFException ignored) {
+            // a torn record at the tail
+        }
+        return end;
+    }
+}
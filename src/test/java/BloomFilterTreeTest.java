@@ -0,0 +1,113 @@
+import com.hlianole.jetbrains.internship.tree.BloomFilterTree;
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.filter.BloomFilter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterTreeTest {
+
+    @Test
+    void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            byte[] key = ("key" + i).getBytes();
+            filter.add(key, 0, key.length);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            byte[] key = ("key" + i).getBytes();
+            assertTrue(filter.mightContain(key, 0, key.length));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            byte[] key = ("absent" + i).getBytes();
+            if (filter.mightContain(key, 0, key.length)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2000, falsePositives + " false positives");
+    }
+
+    @Test
+    void testPutAllOfSingleUseIterable() {
+        BloomFilterTree tree = new BloomFilterTree(new ConcurrentAVLTree(), 10_000, 0.01);
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(new Entry(("key" + i).getBytes(), ("value" + i).getBytes()));
+        }
+        Iterator<Entry> once = entries.iterator();
+
+        tree.putAll(() -> once);
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(("value" + i).getBytes(), tree.get(("key" + i).getBytes()).orElseThrow());
+        }
+    }
+
+    @Test
+    void testMissesSkipTheTree() {
+        ConcurrentAVLTree inner = new ConcurrentAVLTree();
+        inner.put("existing".getBytes(), "value".getBytes());
+        BloomFilterTree tree = new BloomFilterTree(inner, 10_000, 0.01);
+
+        assertArrayEquals("value".getBytes(), tree.get("existing".getBytes()).orElseThrow());
+        for (int i = 0; i < 1000; i++) {
+            tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(("value" + i).getBytes(), tree.get(("key" + i).getBytes()).orElseThrow());
+            assertTrue(tree.containsKey(ByteBuffer.wrap(("key" + i).getBytes())));
+            assertEquals(Optional.empty(), tree.get(("absent" + i).getBytes()));
+        }
+        assertTrue(tree.filteredLookups() > 950);
+        assertTrue(tree.falsePositives() < 50);
+
+        for (int i = 0; i < 1000; i++) {
+            tree.remove(("key" + i).getBytes());
+        }
+        long falsePositives = tree.falsePositives();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Optional.empty(), tree.get(("key" + i).getBytes()));
+        }
+        assertEquals(falsePositives + 1000, tree.falsePositives());
+
+        tree.rebuildFilter(10_000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Optional.empty(), tree.get(("key" + i).getBytes()));
+        }
+        assertTrue(tree.falsePositives() < falsePositives + 1050);
+        assertTrue(tree.containsKey("existing".getBytes()));
+    }
+
+    @Test
+    void testPutsDuringRebuild() throws Exception {
+        BloomFilterTree tree = new BloomFilterTree(new ConcurrentAVLTree(), 1000, 0.01);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                byte[] key = ("key" + i).getBytes();
+                tree.put(key, key);
+                assertTrue(tree.containsKey(key));
+            }
+        });
+        while (!writer.isDone()) {
+            tree.rebuildFilter(100_000);
+        }
+        writer.get();
+        executor.shutdown();
+
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(tree.containsKey(("key" + i).getBytes()));
+        }
+    }
+}
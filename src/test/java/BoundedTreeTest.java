@@ -0,0 +1,119 @@
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.memory.MemoryBudget;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedTreeTest {
+
+    @Test
+    void testTreesAreUnboundedByDefault() {
+        assertEquals(Optional.empty(), new ConcurrentAVLTree().memoryBudget());
+    }
+
+    @Test
+    void testAccounting() {
+        ConcurrentAVLTree tree = ConcurrentAVLTree.bounded(1 << 20);
+        MemoryBudget budget = tree.memoryBudget().orElseThrow();
+
+        tree.put("key1".getBytes(), new byte[10]);
+        tree.put("key2".getBytes(), new byte[20]);
+        tree.putIfAbsent("key3".getBytes(), new byte[30]);
+        assertEquals(3, budget.entries());
+        assertEquals(MemoryBudget.entrySize(4, 10) + MemoryBudget.entrySize(4, 20) + MemoryBudget.entrySize(4, 30),
+                budget.usedBytes());
+
+        tree.put("key1".getBytes(), new byte[100]);
+        tree.compute("key2".getBytes(), (key, value) -> null);
+        tree.remove("key3".getBytes());
+        tree.remove("missing".getBytes());
+        assertEquals(1, budget.entries());
+        assertEquals(MemoryBudget.entrySize(4, 100), budget.usedBytes());
+
+        tree.putAll(List.of(new Entry("key4".getBytes(), new byte[8]), new Entry("key5".getBytes(), new byte[8])));
+        assertEquals(3, budget.entries());
+        assertEquals(MemoryBudget.entrySize(4, 100) + 2 * MemoryBudget.entrySize(4, 8), budget.usedBytes());
+        assertEquals(0, budget.evictions());
+    }
+
+    @Test
+    void testEvictionKeepsTheReadKeys() {
+        long entrySize = MemoryBudget.entrySize(8, 16);
+        ConcurrentAVLTree tree = ConcurrentAVLTree.bounded(100 * entrySize);
+        MemoryBudget budget = tree.memoryBudget().orElseThrow();
+
+        for (int i = 0; i < 10_000; i++) {
+            tree.put(String.format("key%05d", i).getBytes(), new byte[16]);
+            for (int hot = 0; hot < Math.min(10, i + 1); hot++) {
+                assertTrue(tree.containsKey(String.format("key%05d", hot).getBytes()));
+            }
+            assertTrue(budget.usedBytes() <= budget.capacity());
+        }
+
+        assertEquals(100, budget.entries());
+        assertEquals(9900, budget.evictions());
+        List<byte[]> keys = keys(tree);
+        assertEquals(100, keys.size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue(Arrays.compareUnsigned(keys.get(i - 1), keys.get(i)) < 0);
+        }
+    }
+
+    @Test
+    void testEntryLargerThanTheCapacity() {
+        ConcurrentAVLTree tree = ConcurrentAVLTree.bounded(1000);
+        tree.put("small".getBytes(), new byte[8]);
+        tree.put("large".getBytes(), new byte[2000]);
+
+        MemoryBudget budget = tree.memoryBudget().orElseThrow();
+        assertEquals(1, budget.entries());
+        assertEquals(MemoryBudget.entrySize(5, 8), budget.usedBytes());
+        assertEquals(Optional.empty(), tree.get("large".getBytes()));
+        assertTrue(tree.containsKey("small".getBytes()));
+    }
+
+    @Test
+    void testConcurrentEviction() throws InterruptedException {
+        long capacity = 1000 * MemoryBudget.entrySize(8, 16);
+        ConcurrentAVLTree tree = ConcurrentAVLTree.bounded(capacity);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    byte[] key = String.format("%d-%06d", thread, i).getBytes();
+                    tree.put(key, new byte[16]);
+                    tree.get(key);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        MemoryBudget budget = tree.memoryBudget().orElseThrow();
+        assertTrue(budget.usedBytes() <= capacity);
+        assertEquals(budget.entries(), keys(tree).size());
+        assertEquals(budget.entries() * MemoryBudget.entrySize(8, 16), budget.usedBytes());
+        assertEquals(4 * 20_000, budget.entries() + budget.evictions());
+    }
+
+    private static List<byte[]> keys(ConcurrentAVLTree tree) {
+        List<byte[]> keys = new ArrayList<>();
+        Iterator<Entry> entries = tree.scan(null, null);
+        while (entries.hasNext()) {
+            keys.add(entries.next().key());
+        }
+        return keys;
+    }
+}
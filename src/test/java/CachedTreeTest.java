@@ -0,0 +1,142 @@
+import com.hlianole.jetbrains.internship.tree.CachedTree;
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.cache.CacheStats;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachedTreeTest {
+
+    private CachedTree tree;
+
+    @BeforeEach
+    public void setUp() {
+        tree = new CachedTree(new ConcurrentAVLTree(), 64);
+    }
+
+    @Test
+    void testWritesInvalidate() {
+        byte[] key = "key".getBytes();
+        tree.put(key, "value1".getBytes());
+        assertArrayEquals("value1".getBytes(), tree.get(key).orElseThrow());
+        assertArrayEquals("value1".getBytes(), tree.get(key).orElseThrow());
+        assertEquals(1, tree.stats().hits());
+
+        tree.put(key, "value2".getBytes());
+        assertArrayEquals("value2".getBytes(), tree.get(key).orElseThrow());
+        assertTrue(tree.replace(key, "value2".getBytes(), "value3".getBytes()));
+        assertArrayEquals("value3".getBytes(), tree.get(key).orElseThrow());
+        tree.merge(key, "!".getBytes(), (a, b) -> (new String(a) + new String(b)).getBytes());
+        assertArrayEquals("value3!".getBytes(), tree.get("xkeyx".getBytes(), 1, 3).orElseThrow());
+        tree.putAll(List.of(new Entry(key, "value4".getBytes())));
+        assertArrayEquals("value4".getBytes(), tree.get(ByteBuffer.wrap(key)).orElseThrow());
+        assertArrayEquals("value4".getBytes(), tree.remove(key).orElseThrow());
+        assertEquals(Optional.empty(), tree.get(key));
+        assertFalse(tree.containsKey(key));
+    }
+
+    @Test
+    void testHotKeysStayCached() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(10) == 0 ? random.nextInt(10_000) : random.nextInt(32);
+            assertArrayEquals(("value" + key).getBytes(), tree.get(("key" + key).getBytes()).orElseThrow());
+        }
+        CacheStats stats = tree.stats();
+        assertTrue(stats.hitRate() > 0.8, "hit rate " + stats.hitRate());
+        assertTrue(stats.rejections() > 0);
+    }
+
+    @Test
+    void testRejectedPutAllKeepsCaching() {
+        byte[] hot = "hot".getBytes();
+        assertThrows(IllegalArgumentException.class, () -> tree.putAll(List.of(
+                new Entry(hot, "value".getBytes()), new Entry(null, "value".getBytes()))));
+        tree.put(hot, "value".getBytes());
+
+        for (int i = 0; i < 10_000; i++) {
+            assertArrayEquals("value".getBytes(), tree.get(hot).orElseThrow());
+        }
+        assertEquals(9999, tree.stats().hits());
+    }
+
+    @Test
+    void testPutAllOfSingleUseIterable() {
+        byte[] key = "key".getBytes();
+        tree.put(key, "old".getBytes());
+        assertArrayEquals("old".getBytes(), tree.get(key).orElseThrow());
+        assertArrayEquals("old".getBytes(), tree.get(key).orElseThrow());
+
+        Iterator<Entry> once = List.of(new Entry(key, "new".getBytes())).iterator();
+        tree.putAll(() -> once);
+        assertArrayEquals("new".getBytes(), tree.get(key).orElseThrow());
+        assertArrayEquals("new".getBytes(), tree.get(key).orElseThrow());
+    }
+
+    @RepeatedTest(5)
+    void testNoStaleReads() throws Exception {
+        int keys = 16;
+        int readers = 3;
+        for (int i = 0; i < keys; i++) {
+            tree.put(new byte[]{(byte) i}, toBytes(0));
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        Future<?> writer = executor.submit(() -> {
+            for (int version = 1; version <= 20_000; version++) {
+                tree.put(new byte[]{(byte) (version % keys)}, toBytes(version));
+            }
+            done.set(true);
+        });
+        Future<?>[] checks = new Future<?>[readers];
+        for (int r = 0; r < readers; r++) {
+            checks[r] = executor.submit(() -> {
+                long[] seen = new long[keys];
+                Random random = new Random();
+                while (!done.get()) {
+                    int key = random.nextInt(keys);
+                    long version = toLong(tree.get(new byte[]{(byte) key}).orElseThrow());
+                    assertTrue(version >= seen[key], "went back from " + seen[key] + " to " + version);
+                    seen[key] = version;
+                }
+            });
+        }
+        writer.get();
+        for (Future<?> check : checks) {
+            check.get();
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < keys; i++) {
+            int last = 20_000 - (20_000 - i) % keys;
+            assertEquals(last, toLong(tree.get(new byte[]{(byte) i}).orElseThrow()));
+        }
+    }
+
+    private static byte[] toBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static long toLong(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+}
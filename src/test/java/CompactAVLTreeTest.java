@@ -0,0 +1,260 @@
+import com.hlianole.jetbrains.internship.tree.CompactAVLTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactAVLTreeTest {
+
+    private CompactAVLTree tree;
+
+    @BeforeEach
+    public void setUp() {
+        tree = new CompactAVLTree();
+    }
+
+    @Test
+    void testGetAndPut() {
+        assertEquals(Optional.empty(), tree.get("key".getBytes()));
+
+        tree.put("key".getBytes(), "value".getBytes());
+        tree.put("".getBytes(), "empty".getBytes());
+        assertArrayEquals("value".getBytes(), tree.get("key".getBytes()).orElseThrow());
+        assertArrayEquals("empty".getBytes(), tree.get("".getBytes()).orElseThrow());
+
+        tree.put("key".getBytes(), "a much longer value".getBytes());
+        assertArrayEquals("a much longer value".getBytes(), tree.get("key".getBytes()).orElseThrow());
+
+        ByteBuffer out = ByteBuffer.allocate(8);
+        assertEquals(19, tree.getInto("key".getBytes(), out));
+        assertEquals(0, out.position());
+        assertEquals(5, tree.getInto("".getBytes(), out));
+        assertEquals(5, out.position());
+    }
+
+    @Test
+    void testAgainstTreeMap() {
+        Random random = new Random(42);
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] key = new byte[random.nextInt(12)];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = (byte) (random.nextInt(4) * 85);
+            }
+            if (random.nextInt(3) == 0) {
+                assertEquals(Optional.ofNullable(expected.remove(key)).map(Arrays::toString),
+                        tree.remove(key).map(Arrays::toString));
+            } else {
+                byte[] value = new byte[random.nextInt(300)];
+                random.nextBytes(value);
+                tree.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        Iterator<Entry> scan = tree.scan(null, null);
+        for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+            Entry next = scan.next();
+            assertArrayEquals(entry.getKey(), next.key());
+            assertArrayEquals(entry.getValue(), next.value());
+        }
+        assertFalse(scan.hasNext());
+
+        byte[] key = {(byte) 170};
+        assertArrayEquals(expected.lowerKey(key), tree.lower(key).orElseThrow());
+        assertArrayEquals(expected.higherKey(key), tree.higher(key).orElseThrow());
+    }
+
+    @Test
+    void testPrefixCompression() {
+        tree = new CompactAVLTree((byte) '/');
+        Random random = new Random(42);
+        byte[] alphabet = {0, '/', 'a', 'b', (byte) 255};
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 100_000; i++) {
+                byte[] key = new byte[random.nextInt(14)];
+                for (int j = 0; j < key.length; j++) {
+                    key[j] = alphabet[random.nextInt(alphabet.length)];
+                }
+                if (random.nextInt(3) == 0) {
+                    assertEquals(Optional.ofNullable(expected.remove(key)).map(Arrays::toString),
+                            tree.remove(key).map(Arrays::toString));
+                } else {
+                    tree.put(key, key);
+                    expected.put(key, key);
+                }
+            }
+
+            Iterator<Entry> scan = tree.scan(null, null);
+            for (byte[] key : expected.keySet()) {
+                assertArrayEquals(key, scan.next().key());
+            }
+            assertFalse(scan.hasNext());
+
+            for (int i = 0; i < 1000; i++) {
+                byte[] key = new byte[random.nextInt(14)];
+                for (int j = 0; j < key.length; j++) {
+                    key[j] = alphabet[random.nextInt(alphabet.length)];
+                }
+                assertEquals(Optional.ofNullable(expected.floorKey(key)).map(Arrays::toString),
+                        tree.floor(key).map(Arrays::toString));
+                assertEquals(Optional.ofNullable(expected.higherKey(key)).map(Arrays::toString),
+                        tree.higher(key).map(Arrays::toString));
+            }
+
+            for (byte[] key : expected.keySet().toArray(new byte[0][])) {
+                if (random.nextBoolean()) {
+                    assertArrayEquals(key, tree.remove(key).orElseThrow());
+                    expected.remove(key);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testCombinedPuts() throws Exception {
+        int threads = 8;
+        int keysPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Future<?>[] writers = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers[t] = executor.submit(() -> {
+                for (int i = 0; i < keysPerThread; i++) {
+                    byte[] key = ("key" + thread + "-" + i).getBytes();
+                    tree.put(key, key);
+                }
+            });
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        CompletableFuture<?>[] puts = new CompletableFuture<?>[keysPerThread];
+        try (ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < keysPerThread; i++) {
+                byte[] key = ("async" + i).getBytes();
+                puts[i] = CompletableFuture.supplyAsync(() -> tree.putAsync(key, key), virtualThreads)
+                        .thenCompose(put -> put);
+            }
+            CompletableFuture.allOf(puts).get();
+        }
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < keysPerThread; i++) {
+                byte[] key = ("key" + t + "-" + i).getBytes();
+                assertArrayEquals(key, tree.get(key).orElseThrow());
+            }
+        }
+        for (int i = 0; i < keysPerThread; i++) {
+            byte[] key = ("async" + i).getBytes();
+            assertArrayEquals(key, tree.get(key).orElseThrow());
+        }
+
+        tree.putAsync("async0".getBytes(), "first".getBytes());
+        tree.putAsync("async0".getBytes(), "second".getBytes()).get();
+        assertArrayEquals("second".getBytes(), tree.get("async0".getBytes()).orElseThrow());
+    }
+
+    @Test
+    void testPutAfterQueuedPutAsync() throws Exception {
+        byte[] key = "key".getBytes();
+        for (int i = 0; i < 200; i++) {
+            CountDownLatch release = new CountDownLatch(1);
+            Thread holder = holdWriteLock(release);
+            CompletableFuture<Void> queued = tree.putAsync(key, "old".getBytes());
+            release.countDown();
+            holder.join();
+            tree.put(key, ("new" + i).getBytes());
+            queued.get();
+
+            assertArrayEquals(("new" + i).getBytes(), tree.get(key).orElseThrow());
+        }
+    }
+
+    @Test
+    void testRemoveAndComputeAfterQueuedPutAsync() throws Exception {
+        byte[] key = "key".getBytes();
+        for (int i = 0; i < 200; i++) {
+            CountDownLatch release = new CountDownLatch(1);
+            Thread holder = holdWriteLock(release);
+            CompletableFuture<Void> queued = tree.putAsync(key, "old".getBytes());
+            release.countDown();
+            holder.join();
+            assertArrayEquals("old".getBytes(), tree.remove(key).orElseThrow());
+            queued.get();
+            assertEquals(Optional.empty(), tree.get(key));
+
+            release = new CountDownLatch(1);
+            holder = holdWriteLock(release);
+            queued = tree.putAsync(key, "old".getBytes());
+            release.countDown();
+            holder.join();
+            assertArrayEquals("old!".getBytes(), tree.compute(key,
+                    (k, value) -> value == null ? null : (new String(value) + "!").getBytes()).orElseThrow());
+            queued.get();
+            assertArrayEquals("old!".getBytes(), tree.get(key).orElseThrow());
+        }
+    }
+
+    /**
+     * Starts a thread holding the write lock of the tree in a compute until the latch is released
+     * */
+    private Thread holdWriteLock(CountDownLatch release) throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> tree.compute("other".getBytes(), (k, value) -> {
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return k;
+        }));
+        holder.start();
+        locked.await();
+        return holder;
+    }
+
+    @Test
+    void testCompute() {
+        for (int i = 0; i < 100; i++) {
+            tree.put(String.format("key%03d", i).getBytes(), "value".getBytes());
+        }
+
+        assertEquals(Optional.empty(), tree.putIfAbsent("key100".getBytes(), "value".getBytes()));
+        assertArrayEquals("value".getBytes(), tree.putIfAbsent("key000".getBytes(), "other".getBytes()).orElseThrow());
+        assertTrue(tree.replace("key001".getBytes(), "value".getBytes(), "other".getBytes()));
+        assertArrayEquals("valuevalue".getBytes(), tree.merge("key002".getBytes(), "value".getBytes(),
+                (old, v) -> (new String(old) + new String(v)).getBytes()).orElseThrow());
+
+        for (int i = 0; i < 100; i += 2) {
+            assertEquals(Optional.empty(), tree.compute(String.format("key%03d", i).getBytes(), (k, v) -> null));
+        }
+        Iterator<Entry> scan = tree.scan(null, null);
+        for (int i = 1; i <= 100; i += 2) {
+            assertArrayEquals(String.format("key%03d", i).getBytes(), scan.next().key());
+        }
+        assertArrayEquals("key100".getBytes(), scan.next().key());
+        assertFalse(scan.hasNext());
+        assertArrayEquals("other".getBytes(), tree.get("key001".getBytes()).orElseThrow());
+    }
+}
@@ -1,8 +1,18 @@
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -145,4 +155,510 @@ public class ConcurrentAVLTreeTest {
         executor.shutdown();
     }
 
+    @RepeatedTest(10)
+    void testConcurrentPuts() throws InterruptedException {
+        int threadCount = 8;
+        int iterations = 1024;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        AtomicInteger errors = new AtomicInteger(0);
+
+        for (int t = 0; t < threadCount; t++) {
+            final int threadId = t;
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        String key = "key" + (i * threadCount + threadId);
+                        String value = "value" + (i * threadCount + threadId);
+                        tree.put(key.getBytes(), value.getBytes());
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    errors.incrementAndGet();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        executor.shutdown();
+
+        for (int i = 0; i < iterations * threadCount; i++) {
+            Optional<byte[]> result = tree.get(("key" + i).getBytes());
+
+            assertTrue(result.isPresent());
+            assertArrayEquals(("value" + i).getBytes(), result.get());
+        }
+        assertTrue(tree.getRightDepth() < 20);
+    }
+
+    @Test
+    void testLookupsByKeySlicesAndBuffers() {
+        for (int i = 0; i < 100; i++) {
+            tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+
+        byte[] frame = "header:key42:trailer".getBytes();
+        assertArrayEquals("value42".getBytes(), tree.get(frame, 7, 5).orElseThrow());
+        assertTrue(tree.containsKey(frame, 7, 5));
+        assertFalse(tree.containsKey(frame, 7, 3));
+        assertFalse(tree.containsKey(frame, 7, 6));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(frame, 18, 5));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(frame.length).put(frame).position(7).limit(12);
+        assertArrayEquals("value42".getBytes(), tree.get(direct).orElseThrow());
+        assertTrue(tree.containsKey(direct));
+        assertEquals(7, direct.position());
+        assertTrue(tree.containsKey(ByteBuffer.wrap(frame, 7, 5)));
+        assertFalse(tree.containsKey(ByteBuffer.wrap(frame, 0, 6)));
+
+        ByteBuffer out = ByteBuffer.allocate(16);
+        assertEquals(7, tree.getInto("key42".getBytes(), out));
+        assertEquals(7, out.position());
+        assertArrayEquals("value42".getBytes(), Arrays.copyOf(out.array(), 7));
+        assertEquals(-1, tree.getInto("key100".getBytes(), out));
+        assertEquals(7, tree.getInto(direct, out.position(12)));
+        assertEquals(12, out.position());
+    }
+
+    @Test
+    void testKeyOrderIsUnsignedLexicographic() {
+        tree.put("key10".getBytes(), "value10".getBytes());
+        tree.put("key1".getBytes(), "value1".getBytes());
+        tree.put("key2".getBytes(), "value2".getBytes());
+        tree.put(new byte[] {(byte) 0xff}, "high".getBytes());
+
+        assertArrayEquals("key1".getBytes(), tree.firstKey().orElseThrow());
+        assertArrayEquals(new byte[] {(byte) 0xff}, tree.lastKey().orElseThrow());
+        assertArrayEquals("key10".getBytes(), tree.higher("key1".getBytes()).orElseThrow());
+        assertArrayEquals("key2".getBytes(), tree.higher("key10".getBytes()).orElseThrow());
+    }
+
+    @Test
+    void testKeysWithSharedPrefixes() {
+        String prefix = "tenant/table/row/";
+        for (int i = 0; i < 128; i++) {
+            tree.put((prefix + String.format("%03d", i)).getBytes(), ("value" + i).getBytes());
+        }
+        tree.put(new byte[] {'a', 'b'}, "short".getBytes());
+        tree.put(new byte[] {'a', 'b', 0}, "zero".getBytes());
+        tree.put(new byte[] {'a', 'b', (byte) 0x80}, "high".getBytes());
+
+        for (int i = 0; i < 128; i++) {
+            assertArrayEquals(("value" + i).getBytes(), tree.get((prefix + String.format("%03d", i)).getBytes()).orElseThrow());
+        }
+        assertArrayEquals((prefix + "011").getBytes(), tree.higher((prefix + "010").getBytes()).orElseThrow());
+        assertArrayEquals(new byte[] {'a', 'b', 0}, tree.higher(new byte[] {'a', 'b'}).orElseThrow());
+        assertArrayEquals(new byte[] {'a', 'b', (byte) 0x80}, tree.higher(new byte[] {'a', 'b', 0}).orElseThrow());
+        assertArrayEquals("short".getBytes(), tree.get(new byte[] {'a', 'b'}).orElseThrow());
+    }
+
+    @Test
+    void testNavigation() {
+        for (int i = 0; i < 128; i += 2) {
+            tree.put(String.format("key%03d", i).getBytes(), ("value" + i).getBytes());
+        }
+
+        assertArrayEquals("key010".getBytes(), tree.floor("key010".getBytes()).orElseThrow());
+        assertArrayEquals("key010".getBytes(), tree.floor("key011".getBytes()).orElseThrow());
+        assertArrayEquals("key010".getBytes(), tree.ceiling("key010".getBytes()).orElseThrow());
+        assertArrayEquals("key012".getBytes(), tree.ceiling("key011".getBytes()).orElseThrow());
+        assertArrayEquals("key012".getBytes(), tree.higher("key010".getBytes()).orElseThrow());
+        assertArrayEquals("key008".getBytes(), tree.lower("key010".getBytes()).orElseThrow());
+
+        assertEquals(Optional.empty(), tree.lower("key000".getBytes()));
+        assertEquals(Optional.empty(), tree.higher("key126".getBytes()));
+        assertEquals(Optional.empty(), tree.floor("a".getBytes()));
+        assertEquals(Optional.empty(), tree.ceiling("z".getBytes()));
+
+        assertArrayEquals("key000".getBytes(), tree.firstKey().orElseThrow());
+        assertArrayEquals("key126".getBytes(), tree.lastKey().orElseThrow());
+    }
+
+    @Test
+    void testNavigationInAnEmptyTree() {
+        assertEquals(Optional.empty(), tree.firstKey());
+        assertEquals(Optional.empty(), tree.lastKey());
+        assertEquals(Optional.empty(), tree.floor("key".getBytes()));
+        assertFalse(tree.scan(null, null).hasNext());
+    }
+
+    @Test
+    void testScan() {
+        for (int i = 0; i < 128; i++) {
+            tree.put(String.format("key%03d", i).getBytes(), ("value" + i).getBytes());
+        }
+
+        Iterator<Entry> iterator = tree.scan("key010".getBytes(), "key020".getBytes());
+        for (int i = 10; i < 20; i++) {
+            assertTrue(iterator.hasNext());
+            Entry entry = iterator.next();
+            assertArrayEquals(String.format("key%03d", i).getBytes(), entry.key());
+            assertArrayEquals(("value" + i).getBytes(), entry.value());
+        }
+        assertFalse(iterator.hasNext());
+
+        int count = 0;
+        for (Iterator<Entry> all = tree.scan(null, null); all.hasNext(); all.next()) {
+            count++;
+        }
+        assertEquals(128, count);
+    }
+
+    @RepeatedTest(10)
+    void testScanWhileWriting() throws InterruptedException {
+        int iterations = 2048;
+        for (int i = 0; i < iterations; i += 2) {
+            tree.put(String.format("key%05d", i).getBytes(), ("value" + i).getBytes());
+        }
+
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i < iterations; i += 2) {
+                tree.put(String.format("key%05d", i).getBytes(), ("value" + i).getBytes());
+            }
+        });
+        writer.start();
+
+        List<String> scanned = new ArrayList<>();
+        for (Iterator<Entry> iterator = tree.scan(null, null); iterator.hasNext(); ) {
+            scanned.add(new String(iterator.next().key()));
+        }
+        writer.join();
+
+        for (int i = 1; i < scanned.size(); i++) {
+            assertTrue(scanned.get(i - 1).compareTo(scanned.get(i)) < 0);
+        }
+        for (int i = 0; i < iterations; i += 2) {
+            assertTrue(scanned.contains(String.format("key%05d", i)));
+        }
+    }
+
+    @Test
+    void testStream() {
+        for (int i = 0; i < 10_000; i++) {
+            tree.put(String.format("key%05d", i).getBytes(), ("value" + i).getBytes());
+        }
+        tree.remove("key00500".getBytes());
+
+        List<String> sequential = tree.stream().map(entry -> new String(entry.key())).toList();
+        List<String> parallel = tree.parallelStream().map(entry -> new String(entry.key())).toList();
+        assertEquals(9999, sequential.size());
+        assertEquals(sequential, parallel);
+        for (int i = 1; i < sequential.size(); i++) {
+            assertTrue(sequential.get(i - 1).compareTo(sequential.get(i)) < 0);
+        }
+        assertEquals(tree.stream().mapToLong(entry -> entry.value().length).sum(),
+                tree.parallelStream().mapToLong(entry -> entry.value().length).sum());
+    }
+
+    @Test
+    void testSpliteratorSplitsAtSubtreeRoots() {
+        assertFalse(tree.spliterator().tryAdvance(entry -> fail("The tree is empty")));
+        assertNull(tree.spliterator().trySplit());
+
+        for (int i = 0; i < 1023; i++) {
+            tree.put(String.format("key%04d", i).getBytes(), "value".getBytes());
+        }
+        Spliterator<Entry> suffix = tree.spliterator();
+        assertTrue(suffix.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL));
+        assertEquals(Entry.KEY_ORDER, suffix.getComparator());
+        long estimate = suffix.estimateSize();
+        assertTrue(estimate >= 1023);
+
+        Spliterator<Entry> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        assertTrue(suffix.estimateSize() < estimate && prefix.estimateSize() < estimate);
+        long prefixCount = countAll(prefix);
+        long suffixCount = countAll(suffix);
+        assertEquals(1023, prefixCount + suffixCount);
+        assertTrue(prefixCount > 256 && suffixCount > 256);
+        assertNull(suffix.trySplit());
+    }
+
+    @RepeatedTest(5)
+    void testParallelStreamWhileWriting() throws InterruptedException {
+        int iterations = 20_000;
+        for (int i = 0; i < iterations; i += 2) {
+            tree.put(String.format("key%05d", i).getBytes(), ("value" + i).getBytes());
+        }
+
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i < iterations; i += 2) {
+                tree.put(String.format("key%05d", i).getBytes(), ("value" + i).getBytes());
+            }
+        });
+        writer.start();
+        List<String> streamed = tree.parallelStream().map(entry -> new String(entry.key())).toList();
+        writer.join();
+
+        for (int i = 1; i < streamed.size(); i++) {
+            assertTrue(streamed.get(i - 1).compareTo(streamed.get(i)) < 0);
+        }
+        for (int i = 0; i < iterations; i += 2) {
+            assertTrue(Collections.binarySearch(streamed, String.format("key%05d", i)) >= 0);
+        }
+    }
+
+    private static long countAll(Spliterator<Entry> spliterator) {
+        long[] count = new long[1];
+        spliterator.forEachRemaining(entry -> count[0]++);
+        return count[0];
+    }
+
+    @Test
+    void testPutAllIntoAnEmptyTree() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 127; i >= 0; i--) {
+            entries.add(new Entry(("key" + i).getBytes(), ("value" + i).getBytes()));
+        }
+        entries.add(new Entry("key0".getBytes(), "New value".getBytes()));
+
+        tree.putAll(entries);
+
+        for (int i = 1; i < 128; i++) {
+            Optional<byte[]> result = tree.get(("key" + i).getBytes());
+
+            assertTrue(result.isPresent());
+            assertArrayEquals(("value" + i).getBytes(), result.get());
+        }
+        assertArrayEquals("New value".getBytes(), tree.get("key0".getBytes()).orElseThrow());
+        assertTrue(tree.getRightDepth() <= 8);
+    }
+
+    @Test
+    void testPutAllIntoNotEmptyTree() {
+        tree.put("key".getBytes(), "value".getBytes());
+        tree.putAll(List.of(
+                new Entry("key".getBytes(), "New value".getBytes()),
+                new Entry("another key".getBytes(), "another value".getBytes())
+        ));
+
+        assertArrayEquals("New value".getBytes(), tree.get("key".getBytes()).orElseThrow());
+        assertArrayEquals("another value".getBytes(), tree.get("another key".getBytes()).orElseThrow());
+    }
+
+    @Test
+    void testFromSorted() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 128; i++) {
+            entries.add(new Entry(String.format("key%03d", i).getBytes(), ("value" + i).getBytes()));
+        }
+
+        ConcurrentAVLTree built = ConcurrentAVLTree.fromSorted(entries);
+
+        for (int i = 0; i < 128; i++) {
+            Optional<byte[]> result = built.get(String.format("key%03d", i).getBytes());
+
+            assertTrue(result.isPresent());
+            assertArrayEquals(("value" + i).getBytes(), result.get());
+        }
+        built.put("key128".getBytes(), "value128".getBytes());
+        assertArrayEquals("key128".getBytes(), built.lastKey().orElseThrow());
+    }
+
+    @Test
+    void testFromUnsorted() {
+        List<Entry> entries = List.of(
+                new Entry("key2".getBytes(), "value2".getBytes()),
+                new Entry("key1".getBytes(), "value1".getBytes())
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> ConcurrentAVLTree.fromSorted(entries));
+    }
+
+    @Test
+    void testRemove() {
+        byte[] key = "key".getBytes();
+        byte[] value = "value".getBytes();
+
+        tree.put(key, value);
+        Optional<byte[]> removed = tree.remove(key);
+
+        assertTrue(removed.isPresent());
+        assertArrayEquals(value, removed.get());
+        assertEquals(Optional.empty(), tree.get(key));
+        assertEquals(Optional.empty(), tree.remove(key));
+    }
+
+    @Test
+    void testRemoveWithExpectedValue() {
+        byte[] key = "key".getBytes();
+
+        tree.put(key, "value".getBytes());
+
+        assertFalse(tree.remove(key, "another value".getBytes()));
+        assertTrue(tree.get(key).isPresent());
+        assertTrue(tree.remove(key, "value".getBytes()));
+        assertEquals(Optional.empty(), tree.get(key));
+    }
+
+    @Test
+    void testPutAfterRemove() {
+        byte[] key = "key".getBytes();
+        byte[] newValue = "New value".getBytes();
+
+        tree.put(key, "value".getBytes());
+        tree.remove(key);
+        tree.put(key, newValue);
+
+        assertArrayEquals(newValue, tree.get(key).orElseThrow());
+    }
+
+    @Test
+    void testMultipleRemovals() {
+        for (int i = 0; i < 256; i++) {
+            tree.put(String.format("key%03d", i).getBytes(), ("value" + i).getBytes());
+        }
+        for (int i = 0; i < 256; i += 2) {
+            assertTrue(tree.remove(String.format("key%03d", i).getBytes()).isPresent());
+        }
+
+        for (int i = 0; i < 256; i++) {
+            assertEquals(i % 2 == 1, tree.get(String.format("key%03d", i).getBytes()).isPresent());
+        }
+        assertArrayEquals("key001".getBytes(), tree.firstKey().orElseThrow());
+        assertArrayEquals("key255".getBytes(), tree.lastKey().orElseThrow());
+        assertArrayEquals("key003".getBytes(), tree.ceiling("key002".getBytes()).orElseThrow());
+        assertArrayEquals("key001".getBytes(), tree.floor("key002".getBytes()).orElseThrow());
+
+        int count = 0;
+        for (Iterator<Entry> iterator = tree.scan(null, null); iterator.hasNext(); iterator.next()) {
+            count++;
+        }
+        assertEquals(128, count);
+        assertTrue(tree.getRightDepth() < 10);
+
+        for (int i = 1; i < 256; i += 2) {
+            tree.remove(String.format("key%03d", i).getBytes());
+        }
+        assertEquals(0, tree.getRightDepth());
+    }
+
+    @RepeatedTest(10)
+    void testConcurrentRemovals() throws InterruptedException {
+        int threadCount = 8;
+        int iterations = 512;
+
+        for (int i = 0; i < iterations * threadCount; i++) {
+            tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        AtomicInteger errors = new AtomicInteger(0);
+
+        for (int t = 0; t < threadCount; t++) {
+            final int threadId = t;
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        int key = i * threadCount + threadId;
+                        if (key % 2 == 0) {
+                            assertTrue(tree.remove(("key" + key).getBytes()).isPresent());
+                        } else {
+                            assertTrue(tree.get(("key" + key).getBytes()).isPresent());
+                        }
+                    }
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    errors.incrementAndGet();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        executor.shutdown();
+
+        for (int i = 0; i < iterations * threadCount; i++) {
+            assertEquals(i % 2 == 1, tree.get(("key" + i).getBytes()).isPresent());
+        }
+    }
+
+    @Test
+    void testPutIfAbsentAndReplace() {
+        byte[] key = "key".getBytes();
+        assertEquals(Optional.empty(), tree.putIfAbsent(key, "first".getBytes()));
+        assertArrayEquals("first".getBytes(), tree.putIfAbsent(key, "second".getBytes()).orElseThrow());
+        assertArrayEquals("first".getBytes(), tree.get(key).orElseThrow());
+
+        assertFalse(tree.replace(key, "second".getBytes(), "third".getBytes()));
+        assertTrue(tree.replace(key, "first".getBytes(), "third".getBytes()));
+        assertArrayEquals("third".getBytes(), tree.get(key).orElseThrow());
+        assertFalse(tree.replace("missing".getBytes(), "third".getBytes(), "fourth".getBytes()));
+        assertEquals(Optional.empty(), tree.get("missing".getBytes()));
+    }
+
+    @Test
+    void testComputeAndMerge() {
+        for (int i = 0; i < 100; i++) {
+            tree.put(String.format("key%03d", i).getBytes(), "value".getBytes());
+        }
+
+        byte[] key = "key050".getBytes();
+        assertArrayEquals("value!".getBytes(), tree.compute(key, (k, v) -> (new String(v) + "!").getBytes()).orElseThrow());
+        assertEquals(Optional.empty(), tree.compute(key, (k, v) -> null));
+        assertEquals(Optional.empty(), tree.get(key));
+        assertEquals(Optional.empty(), tree.compute(key, (k, v) -> v));
+        assertArrayEquals("new".getBytes(), tree.compute(key, (k, v) -> v == null ? "new".getBytes() : v).orElseThrow());
+        assertArrayEquals("new".getBytes(), tree.get(key).orElseThrow());
+
+        byte[] missing = "missing".getBytes();
+        assertArrayEquals("a".getBytes(), tree.merge(missing, "a".getBytes(), (old, v) -> null).orElseThrow());
+        assertArrayEquals("ab".getBytes(), tree.merge(missing, "b".getBytes(),
+                (old, v) -> (new String(old) + new String(v)).getBytes()).orElseThrow());
+        assertEquals(Optional.empty(), tree.merge(missing, "c".getBytes(), (old, v) -> null));
+        assertEquals(Optional.empty(), tree.get(missing));
+
+        ConcurrentAVLTree empty = new ConcurrentAVLTree();
+        assertArrayEquals("value".getBytes(), empty.compute(key, (k, v) -> "value".getBytes()).orElseThrow());
+        assertArrayEquals(key, empty.firstKey().orElseThrow());
+    }
+
+    @RepeatedTest(10)
+    void testConcurrentMerge() throws InterruptedException {
+        int threadCount = 8;
+        int iterations = 1024;
+        int counters = 16;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        AtomicInteger errors = new AtomicInteger(0);
+
+        for (int t = 0; t < threadCount; t++) {
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        tree.merge(("counter" + i % counters).getBytes(), toBytes(1), (old, one) -> toBytes(toLong(old) + 1));
+                    }
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    errors.incrementAndGet();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        executor.shutdown();
+
+        for (int i = 0; i < counters; i++) {
+            assertEquals((long) threadCount * iterations / counters, toLong(tree.get(("counter" + i).getBytes()).orElseThrow()));
+        }
+    }
+
+    private static byte[] toBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).order(ByteOrder.BIG_ENDIAN).putLong(0, value).array();
+    }
+
+    private static long toLong(byte[] value) {
+        return ByteBuffer.wrap(value).getLong();
+    }
 }
@@ -0,0 +1,191 @@
+import com.hlianole.jetbrains.internship.tree.DurableTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import com.hlianole.jetbrains.internship.tree.wal.WriteAheadLog.SyncPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DurableTreeTest {
+
+    private static final Duration INTERVAL = Duration.ofMillis(10);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReopen() throws IOException {
+        Path log = directory.resolve("tree.log");
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.NONE, INTERVAL)) {
+            for (int i = 0; i < 1000; i++) {
+                tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+            }
+            tree.put("key1".getBytes(), "updated".getBytes());
+            assertArrayEquals("value2".getBytes(), tree.remove("key2".getBytes()).orElseThrow());
+            assertTrue(tree.remove("key3".getBytes(), "value3".getBytes()));
+            assertFalse(tree.remove("key4".getBytes(), "wrong".getBytes()));
+            tree.putAll(List.of(new Entry("key2".getBytes(), "again".getBytes()), new Entry("new".getBytes(), "value".getBytes())));
+        }
+
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.PERIODIC, INTERVAL)) {
+            assertArrayEquals("updated".getBytes(), tree.get("key1".getBytes()).orElseThrow());
+            assertArrayEquals("again".getBytes(), tree.get("key2".getBytes()).orElseThrow());
+            assertEquals(Optional.empty(), tree.get("key3".getBytes()));
+            assertArrayEquals("value4".getBytes(), tree.get("key4".getBytes()).orElseThrow());
+            assertArrayEquals("value".getBytes(), tree.get("new".getBytes()).orElseThrow());
+            assertArrayEquals("key0".getBytes(), tree.firstKey().orElseThrow());
+            assertArrayEquals("new".getBytes(), tree.lastKey().orElseThrow());
+        }
+    }
+
+    @Test
+    void testCloseWhileFlushing() throws IOException {
+        for (int run = 0; run < 50; run++) {
+            Path log = directory.resolve("tree" + run + ".log");
+            try (DurableTree tree = DurableTree.open(log, SyncPolicy.PERIODIC, Duration.ofNanos(1000))) {
+                for (int i = 0; i < 2000; i++) {
+                    tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+                }
+            }
+
+            try (DurableTree tree = DurableTree.open(log, SyncPolicy.NONE, INTERVAL)) {
+                assertArrayEquals("value1999".getBytes(), tree.get("key1999".getBytes()).orElseThrow());
+            }
+        }
+    }
+
+    @Test
+    void testComputeIsLogged() throws IOException {
+        Path log = directory.resolve("tree.log");
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL)) {
+            tree.put("key1".getBytes(), "value1".getBytes());
+            tree.put("key2".getBytes(), "value2".getBytes());
+            assertEquals(Optional.empty(), tree.putIfAbsent("key3".getBytes(), "value3".getBytes()));
+            assertTrue(tree.replace("key1".getBytes(), "value1".getBytes(), "replaced".getBytes()));
+            assertEquals(Optional.empty(), tree.compute("key2".getBytes(), (key, value) -> null));
+            assertArrayEquals("value3!".getBytes(), tree.merge("key3".getBytes(), "!".getBytes(),
+                    (old, value) -> (new String(old) + new String(value)).getBytes()).orElseThrow());
+        }
+
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.NONE, INTERVAL)) {
+            assertArrayEquals("replaced".getBytes(), tree.get("key1".getBytes()).orElseThrow());
+            assertEquals(Optional.empty(), tree.get("key2".getBytes()));
+            assertArrayEquals("value3!".getBytes(), tree.get("key3".getBytes()).orElseThrow());
+        }
+    }
+
+    @Test
+    void testFailedLogLeavesTreeUnchanged() throws IOException {
+        Path log = directory.resolve("tree.log");
+        DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL);
+        tree.put("key".getBytes(), "value".getBytes());
+        tree.close();
+        // The flush to the closed channel fails the log, every later append is rejected
+        assertThrows(UncheckedIOException.class, () -> tree.put("key".getBytes(), "value".getBytes()));
+
+        assertThrows(UncheckedIOException.class, () -> tree.remove("key".getBytes()));
+        assertThrows(UncheckedIOException.class, () -> tree.remove("key".getBytes(), "value".getBytes()));
+        assertThrows(UncheckedIOException.class, () -> tree.compute("key".getBytes(), (key, value) -> null));
+        assertThrows(UncheckedIOException.class, () -> tree.compute("key".getBytes(), (key, value) -> "other".getBytes()));
+        assertArrayEquals("value".getBytes(), tree.get("key".getBytes()).orElseThrow());
+    }
+
+    @Test
+    void testPutAllOfSingleUseIterable() throws IOException {
+        Path log = directory.resolve("tree.log");
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new Entry(("key" + i).getBytes(), ("value" + i).getBytes()));
+        }
+        Iterator<Entry> once = entries.iterator();
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL)) {
+            tree.putAll(() -> once);
+            assertArrayEquals("value99".getBytes(), tree.get("key99".getBytes()).orElseThrow());
+        }
+
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.NONE, INTERVAL)) {
+            for (int i = 0; i < 100; i++) {
+                assertArrayEquals(("value" + i).getBytes(), tree.get(("key" + i).getBytes()).orElseThrow());
+            }
+        }
+    }
+
+    @Test
+    void testTornTailIsCutOff() throws IOException {
+        Path log = directory.resolve("tree.log");
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL)) {
+            tree.put("key1".getBytes(), "value1".getBytes());
+            tree.put("key2".getBytes(), "value2".getBytes());
+        }
+        long size = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 4, 0, 0, 0, 6, 'k', 'e'}, StandardOpenOption.APPEND);
+
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL)) {
+            assertEquals(size, Files.size(log));
+            assertArrayEquals("value2".getBytes(), tree.get("key2".getBytes()).orElseThrow());
+            tree.put("key3".getBytes(), "value3".getBytes());
+        }
+
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(log, bytes);
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL)) {
+            assertEquals(size, Files.size(log));
+            assertEquals(Optional.empty(), tree.get("key3".getBytes()));
+            assertArrayEquals("value1".getBytes(), tree.get("key1".getBytes()).orElseThrow());
+        }
+    }
+
+    @Test
+    void testConcurrentPuts() throws Exception {
+        Path log = directory.resolve("tree.log");
+        int threads = 8;
+        int puts = 500;
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < puts; i++) {
+                        tree.put(("key" + thread + "-" + i).getBytes(), ("value" + i).getBytes());
+                        if (i % 5 == 0) {
+                            tree.remove(("key" + thread + "-" + i).getBytes());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+        }
+
+        try (DurableTree tree = DurableTree.open(log, SyncPolicy.EVERY_WRITE, INTERVAL)) {
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < puts; i++) {
+                    Optional<byte[]> value = tree.get(("key" + t + "-" + i).getBytes());
+                    if (i % 5 == 0) {
+                        assertEquals(Optional.empty(), value);
+                    } else {
+                        assertArrayEquals(("value" + i).getBytes(), value.orElseThrow());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import com.hlianole.jetbrains.internship.load.KeyChooser;
+import com.hlianole.jetbrains.internship.load.LoadDriver;
+import com.hlianole.jetbrains.internship.load.LoadOptions;
+import com.hlianole.jetbrains.internship.load.LoadReport;
+import com.hlianole.jetbrains.internship.load.LogLinearHistogram;
+import com.hlianole.jetbrains.internship.load.TreeType;
+import com.hlianole.jetbrains.internship.load.Workload;
+import com.hlianole.jetbrains.internship.load.Workload.Operation;
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadDriverTest {
+
+    @Test
+    void testHistogramPercentiles() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        assertEquals(0, histogram.percentile(99));
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000_000, histogram.max());
+        assertEquals(50_000_000, histogram.percentile(50), 50_000_000 * 0.04);
+        assertEquals(99_000_000, histogram.percentile(99), 99_000_000 * 0.04);
+        assertEquals(99_900_000, histogram.percentile(99.9), 99_900_000 * 0.04);
+        assertEquals(100_000_000, histogram.percentile(100));
+
+        LogLinearHistogram other = new LogLinearHistogram();
+        other.record(5);
+        other.record(Long.MAX_VALUE);
+        histogram.add(other);
+        assertEquals(100_002, histogram.count());
+        assertEquals(5, histogram.percentile(0));
+        assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(-1));
+    }
+
+    @Test
+    void testKeyChooser() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (KeyChooser.Distribution distribution : KeyChooser.Distribution.values()) {
+            KeyChooser chooser = new KeyChooser(distribution, 1000);
+            for (int i = 0; i < 10_000; i++) {
+                long key = chooser.next(random, 2000);
+                assertTrue(key >= 0 && key < 2000);
+            }
+        }
+
+        KeyChooser latest = new KeyChooser(KeyChooser.Distribution.LATEST, 1000);
+        int recent = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (latest.next(random, 2000) >= 1990) {
+                recent++;
+            }
+        }
+        assertTrue(recent > 3000, recent + " of the reads hit the 10 newest keys");
+    }
+
+    @Test
+    void testParseOptions() {
+        LoadOptions options = LoadOptions.parse(new String[] {
+                "--tree", "compact", "--workload", "update-heavy", "--distribution", "latest", "--records", "10",
+                "--threads", "3", "--virtual", "--rate", "1000", "--warmup", "0.5", "--duration", "2",
+                "--value-size", "8"
+        });
+        assertEquals(TreeType.COMPACT, options.tree());
+        assertEquals(Workload.UPDATE_HEAVY, options.workload());
+        assertEquals(KeyChooser.Distribution.LATEST, options.distribution());
+        assertEquals(10, options.records());
+        assertEquals(3, options.threads());
+        assertTrue(options.virtualThreads());
+        assertEquals(1000, options.rate());
+        assertEquals(Duration.ofMillis(500), options.warmup());
+        assertEquals(Duration.ofSeconds(2), options.duration());
+        assertEquals(8, options.valueSize());
+
+        assertThrows(IllegalArgumentException.class, () -> LoadOptions.parse(new String[] {"--unknown", "1"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadOptions.parse(new String[] {"--threads", "many"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadOptions.parse(new String[] {"--threads", "0"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadOptions.parse(new String[] {"--records"}));
+    }
+
+    @Test
+    void testClosedLoopInserts() throws InterruptedException {
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        LoadOptions options = new LoadOptions(TreeType.AVL, Workload.INSERT_ONLY, KeyChooser.Distribution.UNIFORM,
+                1000, 2, false, 0, Duration.ZERO, Duration.ofMillis(200), 16);
+        LoadReport report = LoadDriver.run(tree, options);
+
+        long inserts = report.responseTimes().get(Operation.INSERT).count();
+        assertTrue(inserts > 0);
+        assertEquals(inserts, report.operations());
+        assertTrue(report.throughput() > 0);
+        for (long i = 0; i < 1000 + inserts; i++) {
+            assertTrue(tree.containsKey(LoadDriver.key(i)));
+        }
+    }
+
+    @Test
+    void testOpenLoopKeepsTheRate() throws InterruptedException {
+        LoadOptions options = new LoadOptions(TreeType.AVL, Workload.SCAN, KeyChooser.Distribution.ZIPFIAN,
+                10_000, 2, true, 2000, Duration.ofMillis(100), Duration.ofMillis(500), 16);
+        LoadReport report = LoadDriver.run(options);
+
+        assertEquals(1000, report.operations(), 100);
+        assertTrue(report.responseTimes().get(Operation.SCAN).count() > 800);
+        for (Operation operation : Operation.values()) {
+            assertTrue(report.responseTimes().get(operation).percentile(50)
+                    >= report.serviceTimes().get(operation).percentile(50));
+        }
+    }
+}
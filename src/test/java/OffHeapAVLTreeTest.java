@@ -0,0 +1,126 @@
+import com.hlianole.jetbrains.internship.tree.OffHeapAVLTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapAVLTreeTest {
+
+    private OffHeapAVLTree tree;
+
+    @BeforeEach
+    public void setUp() {
+        tree = new OffHeapAVLTree();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        tree.close();
+    }
+
+    @Test
+    void testGetAndPut() {
+        assertEquals(Optional.empty(), tree.get("key".getBytes()));
+
+        tree.put("key".getBytes(), "value".getBytes());
+        tree.put("".getBytes(), "empty".getBytes());
+        assertArrayEquals("value".getBytes(), tree.get("key".getBytes()).orElseThrow());
+        assertArrayEquals("empty".getBytes(), tree.get("".getBytes()).orElseThrow());
+
+        tree.put("key".getBytes(), "a much longer value".getBytes());
+        assertArrayEquals("a much longer value".getBytes(), tree.get("key".getBytes()).orElseThrow());
+        tree.put("key".getBytes(), new byte[0]);
+        assertArrayEquals(new byte[0], tree.get("key".getBytes()).orElseThrow());
+    }
+
+    @Test
+    void testLargeValues() {
+        byte[] large = new byte[3 << 20];
+        new Random(1).nextBytes(large);
+
+        tree.put("large".getBytes(), large);
+        assertArrayEquals(large, tree.get("large".getBytes()).orElseThrow());
+
+        ByteBuffer out = ByteBuffer.allocateDirect(large.length);
+        assertEquals(large.length, tree.getInto("large".getBytes(), out));
+        assertEquals(large.length, out.position());
+        assertTrue(tree.remove("large".getBytes(), large));
+        assertFalse(tree.containsKey("large".getBytes()));
+    }
+
+    @Test
+    void testAgainstTreeMap() {
+        Random random = new Random(42);
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] key = new byte[random.nextInt(12)];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = (byte) (random.nextInt(4) * 85);
+            }
+            if (random.nextInt(3) == 0) {
+                assertEquals(Optional.ofNullable(expected.remove(key)).map(Arrays::toString),
+                        tree.remove(key).map(Arrays::toString));
+            } else {
+                byte[] value = new byte[random.nextInt(64)];
+                random.nextBytes(value);
+                tree.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        Iterator<Entry> scan = tree.scan(null, null);
+        for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+            Entry next = scan.next();
+            assertArrayEquals(entry.getKey(), next.key());
+            assertArrayEquals(entry.getValue(), next.value());
+        }
+        assertFalse(scan.hasNext());
+
+        byte[] key = {(byte) 170};
+        assertArrayEquals(expected.floorKey(key), tree.floor(key).orElseThrow());
+        assertArrayEquals(expected.ceilingKey(key), tree.ceiling(key).orElseThrow());
+        assertArrayEquals(expected.firstKey(), tree.firstKey().orElseThrow());
+        assertArrayEquals(expected.lastKey(), tree.lastKey().orElseThrow());
+    }
+
+    @Test
+    void testScanRange() {
+        for (int i = 0; i < 1000; i++) {
+            tree.put(String.format("key%04d", i).getBytes(), ("value" + i).getBytes());
+        }
+
+        Iterator<Entry> scan = tree.scan("key0100".getBytes(), "key0900".getBytes());
+        for (int i = 100; i < 900; i++) {
+            assertArrayEquals(String.format("key%04d", i).getBytes(), scan.next().key());
+        }
+        assertFalse(scan.hasNext());
+    }
+
+    @Test
+    void testClosedTree() {
+        tree.put("key".getBytes(), "value".getBytes());
+        assertTrue(tree.offHeapBytes() > 0);
+
+        tree.close();
+        assertEquals(0, tree.offHeapBytes());
+        assertThrows(IllegalStateException.class, () -> tree.get("key".getBytes()));
+        assertThrows(IllegalStateException.class, () -> tree.put("key".getBytes(), "value".getBytes()));
+
+        CompletableFuture<Void> put = tree.putAsync("key".getBytes(), "value".getBytes());
+        ExecutionException failure = assertThrows(ExecutionException.class, put::get);
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+    }
+}
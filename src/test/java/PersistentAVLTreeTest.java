@@ -0,0 +1,141 @@
+import com.hlianole.jetbrains.internship.tree.PersistentAVLTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentAVLTreeTest {
+
+    private PersistentAVLTree tree;
+
+    @BeforeEach
+    public void setUp() {
+        tree = new PersistentAVLTree();
+    }
+
+    @Test
+    void testAgainstTreeMap() {
+        Random random = new Random(42);
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] key = new byte[random.nextInt(12)];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = (byte) (random.nextInt(4) * 85);
+            }
+            switch (random.nextInt(4)) {
+                case 0 -> assertEquals(Optional.ofNullable(expected.remove(key)).map(Arrays::toString),
+                        tree.remove(key).map(Arrays::toString));
+                case 1 -> {
+                    assertEquals(Optional.ofNullable(expected.ceilingKey(key)).map(Arrays::toString),
+                            tree.ceiling(key).map(Arrays::toString));
+                    assertEquals(Optional.ofNullable(expected.lowerKey(key)).map(Arrays::toString),
+                            tree.lower(key).map(Arrays::toString));
+                }
+                default -> {
+                    byte[] value = new byte[random.nextInt(20)];
+                    random.nextBytes(value);
+                    tree.put(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+
+        Iterator<Entry> scan = tree.scan(null, null);
+        for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+            Entry next = scan.next();
+            assertArrayEquals(entry.getKey(), next.key());
+            assertArrayEquals(entry.getValue(), next.value());
+        }
+        assertFalse(scan.hasNext());
+        assertArrayEquals(expected.firstKey(), tree.firstKey().orElseThrow());
+        assertArrayEquals(expected.lastKey(), tree.lastKey().orElseThrow());
+    }
+
+    @Test
+    void testSnapshotIsFrozen() {
+        for (int i = 0; i < 1000; i++) {
+            tree.put(String.format("key%04d", i).getBytes(), "old".getBytes());
+        }
+        PersistentAVLTree snapshot = tree.snapshot();
+        Iterator<Entry> scan = tree.scan("key0100".getBytes(), "key0200".getBytes());
+
+        for (int i = 0; i < 1000; i += 2) {
+            tree.remove(String.format("key%04d", i).getBytes());
+        }
+        tree.put("key0001".getBytes(), "new".getBytes());
+        snapshot.put("key9999".getBytes(), "only in the snapshot".getBytes());
+
+        assertArrayEquals("old".getBytes(), snapshot.get("key0000".getBytes()).orElseThrow());
+        assertArrayEquals("old".getBytes(), snapshot.get("key0001".getBytes()).orElseThrow());
+        assertEquals(Optional.empty(), tree.get("key0000".getBytes()));
+        assertArrayEquals("new".getBytes(), tree.get("key0001".getBytes()).orElseThrow());
+        assertEquals(Optional.empty(), tree.get("key9999".getBytes()));
+
+        for (int i = 100; i < 200; i++) {
+            assertArrayEquals(String.format("key%04d", i).getBytes(), scan.next().key());
+        }
+        assertFalse(scan.hasNext());
+    }
+
+    @Test
+    void testPutAllIsAtomic() throws Exception {
+        List<Entry> batch = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            batch.add(new Entry(("key" + i).getBytes(), "value".getBytes()));
+        }
+        batch.add(new Entry("key0".getBytes(), "last".getBytes()));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> tree.putAll(batch));
+        while (!writer.isDone()) {
+            boolean last = tree.get("key999".getBytes()).isPresent();
+            boolean first = tree.get("key0".getBytes()).isPresent();
+            assertTrue(first || !last);
+        }
+        writer.get();
+        executor.shutdown();
+
+        assertArrayEquals("last".getBytes(), tree.get("key0".getBytes()).orElseThrow());
+        assertArrayEquals("value".getBytes(), tree.get("key999".getBytes()).orElseThrow());
+    }
+
+    @Test
+    void testConcurrentPuts() throws Exception {
+        int threads = 8;
+        int puts = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < puts; i++) {
+                    tree.put(("key" + thread + "-" + i).getBytes(), ("value" + i).getBytes());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        int count = 0;
+        for (Iterator<Entry> scan = tree.scan(null, null); scan.hasNext(); scan.next()) {
+            count++;
+        }
+        assertEquals(threads * puts, count);
+    }
+}
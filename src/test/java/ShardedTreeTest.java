@@ -0,0 +1,151 @@
+import com.hlianole.jetbrains.internship.tree.ShardedTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedTreeTest {
+
+    @Test
+    void testAgainstTreeMap() {
+        ShardedTree tree = new ShardedTree(8);
+        Random random = new Random(42);
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] key = new byte[random.nextInt(4)];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = (byte) (random.nextInt(8) * 32);
+            }
+            switch (random.nextInt(4)) {
+                case 0 -> assertEquals(Optional.ofNullable(expected.remove(key)).map(Arrays::toString),
+                        tree.remove(key).map(Arrays::toString));
+                case 1 -> {
+                    assertEquals(Optional.ofNullable(expected.higherKey(key)).map(Arrays::toString),
+                            tree.higher(key).map(Arrays::toString));
+                    assertEquals(Optional.ofNullable(expected.floorKey(key)).map(Arrays::toString),
+                            tree.floor(key).map(Arrays::toString));
+                }
+                default -> {
+                    tree.put(key, new byte[]{(byte) i});
+                    expected.put(key, new byte[]{(byte) i});
+                }
+            }
+        }
+
+        Iterator<Entry> scan = tree.scan(null, null);
+        for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+            Entry next = scan.next();
+            assertArrayEquals(entry.getKey(), next.key());
+            assertArrayEquals(entry.getValue(), next.value());
+        }
+        assertFalse(scan.hasNext());
+        assertArrayEquals(expected.firstKey(), tree.firstKey().orElseThrow());
+        assertArrayEquals(expected.lastKey(), tree.lastKey().orElseThrow());
+    }
+
+    @Test
+    void testNavigationAcrossEmptyShards() {
+        ShardedTree tree = new ShardedTree(16);
+        assertEquals(Optional.empty(), tree.firstKey());
+        assertFalse(tree.scan(null, null).hasNext());
+
+        byte[] low = {0x01};
+        byte[] high = {(byte) 0xf0};
+        tree.put(low, low);
+        tree.put(high, high);
+
+        assertArrayEquals(high, tree.higher(low).orElseThrow());
+        assertArrayEquals(low, tree.lower(high).orElseThrow());
+        assertArrayEquals(high, tree.ceiling(new byte[]{0x70}).orElseThrow());
+        assertArrayEquals(low, tree.floor(new byte[]{0x70}).orElseThrow());
+        assertEquals(Optional.empty(), tree.higher(high));
+
+        Iterator<Entry> scan = tree.scan(new byte[]{0x01}, new byte[]{(byte) 0xf0});
+        assertArrayEquals(low, scan.next().key());
+        assertFalse(scan.hasNext());
+    }
+
+    @Test
+    void testSkewedShardsAreRebalanced() {
+        ShardedTree tree = new ShardedTree(4);
+        for (int i = 0; i < 100_000; i++) {
+            tree.put(String.format("key%06d", i).getBytes(), "value".getBytes());
+        }
+
+        long[] sizes = tree.shardSizes();
+        assertEquals(100_000, Arrays.stream(sizes).sum());
+        for (long size : sizes) {
+            assertTrue(size < 100_000 * 3 / 4, Arrays.toString(sizes));
+        }
+        for (int i = 0; i < 100_000; i += 997) {
+            assertTrue(tree.containsKey(String.format("key%06d", i).getBytes()));
+        }
+    }
+
+    @Test
+    void testBoundariesFromSamples() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(String.format("key%04d", i).getBytes());
+        }
+        ShardedTree tree = new ShardedTree(4, samples);
+        for (byte[] key : samples) {
+            tree.put(key, key);
+        }
+
+        assertArrayEquals(new long[]{250, 250, 250, 250}, tree.shardSizes());
+        assertArrayEquals("key0249".getBytes(), tree.lower("key0250".getBytes()).orElseThrow());
+    }
+
+    @Test
+    void testConcurrentWritesWhileRebalancing() throws Exception {
+        ShardedTree tree = new ShardedTree(4);
+        int threads = 4;
+        int puts = 25_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < puts; i++) {
+                    tree.put(String.format("key%d-%06d", thread, i).getBytes(), "value".getBytes());
+                }
+            }));
+        }
+        Future<?> reader = executor.submit(() -> {
+            for (int i = 0; i < 20; i++) {
+                byte[] previous = null;
+                for (Iterator<Entry> scan = tree.scan(null, null); scan.hasNext(); ) {
+                    byte[] key = scan.next().key();
+                    assertTrue(previous == null || Arrays.compareUnsigned(previous, key) < 0);
+                    previous = key;
+                }
+            }
+        });
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        reader.get();
+        executor.shutdown();
+
+        assertEquals((long) threads * puts, Arrays.stream(tree.shardSizes()).sum());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < puts; i++) {
+                assertTrue(tree.containsKey(String.format("key%d-%06d", t, i).getBytes()));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.SnapshotTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTreeTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSnapshotAndOpen() throws IOException {
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] key = String.format("key%05d", i * 2).getBytes();
+            byte[] value = ("value" + i).getBytes();
+            tree.put(key, value);
+            expected.put(key, value);
+        }
+
+        Path file = directory.resolve("tree.snapshot");
+        tree.snapshot(file);
+
+        try (SnapshotTree opened = SnapshotTree.open(file)) {
+            for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+                assertArrayEquals(entry.getValue(), opened.get(entry.getKey()).orElseThrow());
+            }
+            assertEquals(Optional.empty(), opened.get("key00001".getBytes()));
+            assertEquals(Optional.empty(), opened.get("a".getBytes()));
+            assertEquals(Optional.empty(), opened.get("z".getBytes()));
+
+            assertArrayEquals("key00000".getBytes(), opened.firstKey().orElseThrow());
+            assertArrayEquals("key19998".getBytes(), opened.lastKey().orElseThrow());
+            assertArrayEquals("key00200".getBytes(), opened.floor("key00201".getBytes()).orElseThrow());
+            assertArrayEquals("key00202".getBytes(), opened.ceiling("key00201".getBytes()).orElseThrow());
+            assertArrayEquals("key00202".getBytes(), opened.higher("key00200".getBytes()).orElseThrow());
+            assertArrayEquals("key00198".getBytes(), opened.lower("key00200".getBytes()).orElseThrow());
+            assertEquals(Optional.empty(), opened.lower("key00000".getBytes()));
+
+            Iterator<Entry> scan = opened.scan("key01000".getBytes(), "key02000".getBytes());
+            for (int i = 1000; i < 2000; i += 2) {
+                assertArrayEquals(String.format("key%05d", i).getBytes(), scan.next().key());
+            }
+            assertFalse(scan.hasNext());
+        }
+    }
+
+    @Test
+    void testWritesGoOnTopOfTheSnapshot() throws IOException {
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        for (int i = 0; i < 100; i++) {
+            tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+        Path file = directory.resolve("tree.snapshot");
+        tree.snapshot(file);
+
+        try (SnapshotTree opened = SnapshotTree.open(file)) {
+            opened.put("key1".getBytes(), "updated".getBytes());
+            opened.put("new".getBytes(), "value".getBytes());
+            assertArrayEquals("value2".getBytes(), opened.remove("key2".getBytes()).orElseThrow());
+            assertEquals(Optional.empty(), opened.remove("key2".getBytes()));
+            assertFalse(opened.remove("key3".getBytes(), "wrong".getBytes()));
+            assertTrue(opened.remove("key3".getBytes(), "value3".getBytes()));
+
+            assertArrayEquals("updated".getBytes(), opened.get("key1".getBytes()).orElseThrow());
+            assertArrayEquals("value".getBytes(), opened.get("new".getBytes()).orElseThrow());
+            assertEquals(Optional.empty(), opened.get("key2".getBytes()));
+            assertArrayEquals("key30".getBytes(), opened.higher("key29".getBytes()).orElseThrow());
+            assertArrayEquals("key29".getBytes(), opened.lower("key30".getBytes()).orElseThrow());
+
+            Path merged = directory.resolve("merged.snapshot");
+            opened.snapshot(merged);
+            try (SnapshotTree reopened = SnapshotTree.open(merged)) {
+                Iterator<Entry> expected = opened.scan(null, null);
+                Iterator<Entry> actual = reopened.scan(null, null);
+                int count = 0;
+                while (expected.hasNext()) {
+                    Entry entry = expected.next();
+                    assertArrayEquals(entry.key(), actual.next().key());
+                    count++;
+                }
+                assertFalse(actual.hasNext());
+                assertEquals(99, count);
+            }
+        }
+    }
+
+    @Test
+    void testAgainstTreeMap() throws IOException {
+        Random random = new Random(42);
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        for (int i = 0; i < 5000; i++) {
+            byte[] key = randomKey(random);
+            tree.put(key, key);
+            expected.put(key, key);
+        }
+        Path file = directory.resolve("tree.snapshot");
+        tree.snapshot(file);
+
+        try (SnapshotTree opened = SnapshotTree.open(file)) {
+            for (int i = 0; i < 20_000; i++) {
+                byte[] key = randomKey(random);
+                switch (random.nextInt(4)) {
+                    case 0 -> {
+                        opened.put(key, new byte[]{(byte) i});
+                        expected.put(key, new byte[]{(byte) i});
+                    }
+                    case 1 -> assertEquals(Optional.ofNullable(expected.remove(key)).map(Arrays::toString),
+                            opened.remove(key).map(Arrays::toString));
+                    case 2 -> assertEquals(Optional.ofNullable(expected.get(key)).map(Arrays::toString),
+                            opened.get(key).map(Arrays::toString));
+                    default -> {
+                        assertEquals(Optional.ofNullable(expected.floorKey(key)).map(Arrays::toString),
+                                opened.floor(key).map(Arrays::toString));
+                        assertEquals(Optional.ofNullable(expected.higherKey(key)).map(Arrays::toString),
+                                opened.higher(key).map(Arrays::toString));
+                    }
+                }
+            }
+
+            Iterator<Entry> scan = opened.scan(null, null);
+            for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+                Entry next = scan.next();
+                assertArrayEquals(entry.getKey(), next.key());
+                assertArrayEquals(entry.getValue(), next.value());
+            }
+            assertFalse(scan.hasNext());
+        }
+    }
+
+    @Test
+    void testEmptySnapshot() throws IOException {
+        Path file = directory.resolve("empty.snapshot");
+        new ConcurrentAVLTree().snapshot(file);
+
+        try (SnapshotTree opened = SnapshotTree.open(file)) {
+            assertEquals(Optional.empty(), opened.get("key".getBytes()));
+            assertEquals(Optional.empty(), opened.firstKey());
+            assertFalse(opened.scan(null, null).hasNext());
+        }
+    }
+
+    @Test
+    void testOpenNotASnapshot() throws IOException {
+        Path file = Files.write(directory.resolve("garbage"), new byte[100]);
+        assertThrows(IOException.class, () -> SnapshotTree.open(file));
+    }
+
+    private static byte[] randomKey(Random random) {
+        byte[] key = new byte[random.nextInt(6)];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (random.nextInt(4) * 85);
+        }
+        return key;
+    }
+}
@@ -1,5 +1,4 @@
 import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
-import com.hlianole.jetbrains.internship.tree.node.EmptyNode;
 import com.hlianole.jetbrains.internship.tree.node.Node;
 
 public class TestingTree extends ConcurrentAVLTree {
@@ -7,7 +6,7 @@ public class TestingTree extends ConcurrentAVLTree {
     public int getRightDepth() {
         Node current = root;
         int depth = 0;
-        while (current != EmptyNode.getInstance()) {
+        while (current != null) {
             depth++;
             current = current.getRight();
         }
@@ -0,0 +1,98 @@
+import com.hlianole.jetbrains.internship.tree.ConcurrentAVLTree;
+import com.hlianole.jetbrains.internship.tree.metrics.LatencyHistogram;
+import com.hlianole.jetbrains.internship.tree.metrics.TreeMetrics;
+import com.hlianole.jetbrains.internship.tree.metrics.TreeMetrics.Operation;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeMetricsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testMetricsAreNotRecordedByDefault() {
+        assertEquals(Optional.empty(), new ConcurrentAVLTree().metrics());
+    }
+
+    @Test
+    void testMetrics() {
+        ConcurrentAVLTree tree = ConcurrentAVLTree.withMetrics();
+        for (int i = 0; i < 1000; i++) {
+            tree.put(String.format("key%04d", i).getBytes(), "value".getBytes());
+        }
+        tree.put("key0000".getBytes(), "updated".getBytes());
+        for (int i = 0; i < 100; i++) {
+            tree.remove(String.format("key%04d", i).getBytes());
+        }
+        tree.remove("missing".getBytes());
+        tree.get("key0500".getBytes());
+        tree.containsKey("key0501".getBytes());
+
+        TreeMetrics metrics = tree.metrics().orElseThrow();
+        assertEquals(1001, metrics.count(Operation.PUT));
+        assertEquals(101, metrics.count(Operation.REMOVE));
+        assertEquals(2, metrics.count(Operation.GET));
+        assertEquals(900, metrics.entries());
+        assertTrue(metrics.rotations() > 0);
+        assertTrue(metrics.rotationsPerInsert() > 0 && metrics.rotationsPerInsert() < 2);
+        assertTrue(metrics.height() >= 10 && metrics.height() <= 15);
+        assertTrue(metrics.lockWaits().count() >= 1000);
+        assertTrue(metrics.latency(Operation.PUT).percentile(99) > 0);
+    }
+
+    @Test
+    void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(100, histogram.count());
+        assertEquals(99 * 100 + 1_000_000, histogram.totalNanos());
+        assertEquals(128, histogram.percentile(50));
+        assertEquals(128, histogram.percentile(99));
+        assertEquals(1 << 20, histogram.percentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(101));
+    }
+
+    @Test
+    void testFlightRecorderEvents() throws IOException {
+        Path file = directory.resolve("tree.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.hlianole.tree.Operation").withThreshold(Duration.ZERO);
+            recording.enable("com.hlianole.tree.Rotation");
+            recording.start();
+
+            ConcurrentAVLTree tree = new ConcurrentAVLTree();
+            for (int i = 0; i < 100; i++) {
+                tree.put(("key" + i).getBytes(), "value".getBytes());
+            }
+            tree.get("key1".getBytes());
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<RecordedEvent> operations = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.hlianole.tree.Operation"))
+                .toList();
+        assertEquals(100, operations.stream().filter(event -> event.getString("operation").equals("PUT")).count());
+        assertEquals(1, operations.stream().filter(event -> event.getString("operation").equals("GET")).count());
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("com.hlianole.tree.Rotation")));
+    }
+}
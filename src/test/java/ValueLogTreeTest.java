@@ -0,0 +1,141 @@
+import com.hlianole.jetbrains.internship.tree.ValueLogTree;
+import com.hlianole.jetbrains.internship.tree.data.Entry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueLogTreeTest {
+
+    private static final int THRESHOLD = 64;
+    private static final int SEGMENT_SIZE = 1 << 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAgainstTreeMap() throws IOException {
+        Random random = new Random(42);
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(Arrays::compareUnsigned);
+
+        try (ValueLogTree tree = ValueLogTree.open(directory, THRESHOLD, SEGMENT_SIZE, Duration.ofDays(1))) {
+            for (int i = 0; i < 20_000; i++) {
+                byte[] key = ("key" + random.nextInt(1000)).getBytes();
+                switch (random.nextInt(4)) {
+                    case 0 -> assertEquals(Optional.ofNullable(expected.remove(key)).map(Arrays::toString),
+                            tree.remove(key).map(Arrays::toString));
+                    case 1 -> assertEquals(Optional.ofNullable(expected.get(key)).map(Arrays::toString),
+                            tree.get(key).map(Arrays::toString));
+                    default -> {
+                        byte[] value = new byte[random.nextInt(2 * THRESHOLD)];
+                        random.nextBytes(value);
+                        tree.put(key, value);
+                        expected.put(key, value);
+                    }
+                }
+                if (i % 5000 == 0) {
+                    tree.compact();
+                }
+            }
+
+            tree.compact();
+            Iterator<Entry> scan = tree.scan(null, null);
+            for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+                Entry next = scan.next();
+                assertArrayEquals(entry.getKey(), next.key());
+                assertArrayEquals(entry.getValue(), next.value());
+            }
+            assertFalse(scan.hasNext());
+        }
+    }
+
+    @Test
+    void testCompactionShrinksTheLog() throws IOException {
+        byte[] value = new byte[1024];
+        try (ValueLogTree tree = ValueLogTree.open(directory, THRESHOLD, SEGMENT_SIZE, Duration.ofDays(1))) {
+            for (int i = 0; i < 1024; i++) {
+                value[0] = (byte) i;
+                tree.put(("key" + i).getBytes(), value);
+            }
+            long full = tree.valueLogBytes();
+            for (int i = 0; i < 1024; i++) {
+                if (i % 4 != 0) {
+                    tree.remove(("key" + i).getBytes());
+                }
+            }
+
+            tree.compact();
+            assertTrue(tree.valueLogBytes() <= full / 2, tree.valueLogBytes() + " of " + full);
+            for (int i = 0; i < 1024; i += 4) {
+                value[0] = (byte) i;
+                assertArrayEquals(value, tree.get(("key" + i).getBytes()).orElseThrow());
+            }
+            assertTrue(tree.containsKey("key0".getBytes()));
+            assertFalse(tree.containsKey("key1".getBytes()));
+        }
+    }
+
+    @Test
+    void testConcurrentCompaction() throws Exception {
+        int threads = 4;
+        try (ValueLogTree tree = ValueLogTree.open(directory, THRESHOLD, SEGMENT_SIZE, Duration.ofMillis(1))) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            Future<?>[] writers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers[t] = executor.submit(() -> {
+                    Random random = new Random(thread);
+                    for (int i = 0; i < 20_000; i++) {
+                        byte[] key = ("key" + thread + "-" + random.nextInt(64)).getBytes();
+                        byte[] value = new byte[THRESHOLD + random.nextInt(512)];
+                        Arrays.fill(value, (byte) value.length);
+                        tree.put(key, value);
+                        byte[] read = tree.get(key).orElseThrow();
+                        assertArrayEquals(value, read);
+                    }
+                });
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            executor.shutdown();
+
+            Iterator<Entry> scan = tree.scan(null, null);
+            int entries = 0;
+            while (scan.hasNext()) {
+                byte[] value = scan.next().value();
+                assertEquals((byte) value.length, value[0]);
+                entries++;
+            }
+            assertEquals(threads * 64, entries);
+        }
+    }
+
+    @Test
+    void testReadAfterCloseThrows() throws IOException {
+        byte[] value = new byte[4 * THRESHOLD];
+        ValueLogTree tree = ValueLogTree.open(directory, THRESHOLD, SEGMENT_SIZE, Duration.ofDays(1));
+        tree.put("key".getBytes(), value);
+        Iterator<Entry> scan = tree.scan(null, null);
+        tree.close();
+
+        assertThrows(IllegalStateException.class, () -> tree.get("key".getBytes()));
+        assertThrows(IllegalStateException.class, () -> {
+            scan.hasNext();
+            scan.next();
+        });
+    }
+}